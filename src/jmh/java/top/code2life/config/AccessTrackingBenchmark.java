@@ -0,0 +1,61 @@
+package top.code2life.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of sampled access tracking on Environment lookups, sample rate 0 means tracking disabled
+ *
+ * @author Code2Life
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessTrackingBenchmark {
+
+    @Param({"0", "1", "16", "64"})
+    public int sampleRate;
+
+    private StandardEnvironment env;
+    private FeatureGate featureGate;
+
+    @Setup
+    public void setup() {
+        env = new StandardEnvironment();
+        // system sources dominate lookup time, leave them out to expose the tracking overhead
+        env.getPropertySources().remove(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME);
+        env.getPropertySources().remove(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME);
+        Map<String, Object> props = new HashMap<>(64);
+        for (int i = 0; i < 50; i++) {
+            props.put("bench.module.key" + i, "value-" + i);
+        }
+        props.put("my.feature.enabled", "true");
+        env.getPropertySources().addLast(new MapPropertySource("bench", props));
+        ConfigurationPropertySources.attach(env);
+        if (sampleRate > 0) {
+            env.getPropertySources().addFirst(new AccessTrackingPropertySource(env, sampleRate, AccessTrackingPropertySource.DEFAULT_MAX_KEYS, null));
+        }
+        featureGate = new FeatureGate(env);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getProperty() {
+        return env.getProperty("bench.module.key42");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean isFeatureEnabled() {
+        return featureGate.isFeatureEnabled("my.feature.enabled");
+    }
+}
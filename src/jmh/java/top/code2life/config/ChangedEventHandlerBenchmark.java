@@ -0,0 +1,137 @@
+package top.code2life.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static top.code2life.config.DynamicConfigBeanPostProcessor.CONFIG_CHANGE_LISTENER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_CONFIG_PROPS_BINDER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_FIELD_BINDER_MAP;
+
+/**
+ * Benchmark of processing one ConfigurationChangedEvent, with N {@literal @}Value field binders of the changed key
+ * and M {@literal @}ConfigurationProperties binders, one of them matches the changed key,
+ * and L {@literal @}OnConfigChange listeners, one of them matches the changed key
+ *
+ * @author Code2Life
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangedEventHandlerBenchmark {
+
+    @Param({"1", "100"})
+    public int fieldBinders;
+
+    @Param({"1", "50"})
+    public int propsBinders;
+
+    @Param({"1", "500"})
+    public int changeListeners;
+
+    private AnnotationConfigApplicationContext context;
+    private ConfigurationChangedEventHandler handler;
+    private ConfigurationChangedEvent event;
+    private Map<String, Object> props;
+
+    /**
+     * binders only keep weak references of beans
+     */
+    private final List<Object> beans = new ArrayList<>();
+
+    @Setup
+    public void setup() throws NoSuchFieldException, NoSuchMethodException {
+        props = new HashMap<>(4);
+        props.put("bench.value", "v0");
+        props.put("bench.props0.name", "n0");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("bench", props));
+        context.register(BenchConfiguration.class);
+        context.refresh();
+
+        // reset static binder registry
+        new DynamicConfigBeanPostProcessor();
+        Field valueField = ValueHolder.class.getDeclaredField("value");
+        List<ValueBeanFieldBinder> binders = new ArrayList<>(fieldBinders);
+        for (int i = 0; i < fieldBinders; i++) {
+            ValueHolder bean = new ValueHolder();
+            beans.add(bean);
+            binders.add(new ValueBeanFieldBinder("${bench.value}", valueField, bean, "valueHolder" + i));
+        }
+        DYNAMIC_FIELD_BINDER_MAP.put("bench.value", binders);
+        for (int i = 0; i < propsBinders; i++) {
+            BenchProperties bean = new BenchProperties();
+            beans.add(bean);
+            DYNAMIC_CONFIG_PROPS_BINDER_MAP.put("bench.props" + i, new ValueBeanFieldBinder("bench.props" + i, null, bean, "benchProps" + i));
+        }
+        Method listenerMethod = ListenerHolder.class.getDeclaredMethod("onChange", Map.class);
+        for (int i = 0; i < changeListeners; i++) {
+            ListenerHolder bean = new ListenerHolder();
+            beans.add(bean);
+            String prefix = i == 0 ? "bench" : "bench-other" + i;
+            CONFIG_CHANGE_LISTENER_MAP.computeIfAbsent(prefix, k -> new ArrayList<>())
+                    .add(new ConfigChangeListenerMethod(prefix, listenerMethod, bean, "listenerHolder" + i));
+        }
+        handler = new ConfigurationChangedEventHandler(context, context.getBeanFactory(), context);
+
+        Map<String, Object> diff = new HashMap<>(4);
+        diff.put("bench.value", "v1");
+        diff.put("bench.props0.name", "n1");
+        props.putAll(diff);
+        MapPropertySource source = new MapPropertySource("bench", props);
+        event = new ConfigurationChangedEvent("/tmp/bench.yml", source, source, diff);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        beans.clear();
+    }
+
+    @Benchmark
+    public void handleEvent() {
+        handler.handleEvent(event);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableConfigurationProperties
+    static class BenchConfiguration {
+    }
+
+    public static class ValueHolder {
+        private String value;
+    }
+
+    public static class ListenerHolder {
+        private int changes;
+
+        public void onChange(Map<String, Object> diff) {
+            changes += diff.size();
+        }
+    }
+
+    @ConfigurationProperties(prefix = "bench.props0")
+    public static class BenchProperties {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package top.code2life.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.env.OriginTrackedMapPropertySource;
+import org.springframework.core.env.PropertySource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of key normalization, placeholder extraction and config tree prefixing
+ *
+ * @author Code2Life
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationUtilsBenchmark {
+
+    @Param({"10", "1000"})
+    public int keys;
+
+    private OriginTrackedMapPropertySource configTreeSource;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> map = new HashMap<>(keys * 2);
+        for (int i = 0; i < keys; i++) {
+            map.put("someModule.nestedKey" + i, "value-" + i);
+        }
+        configTreeSource = new OriginTrackedMapPropertySource("Config resource 'file [/tmp/conf/app]'", map, true);
+    }
+
+    @Benchmark
+    public String toKebabCaseCamel() {
+        return ConfigurationUtils.toKebabCase("myProp.someNestedValue.anotherCamelCaseKey");
+    }
+
+    @Benchmark
+    public String toKebabCaseAlreadyKebab() {
+        return ConfigurationUtils.toKebabCase("my-prop.some-nested-value.another-kebab-case-key");
+    }
+
+    @Benchmark
+    public List<String> extractValueFromExpr() {
+        return ConfigurationUtils.extractValueFromExpr("${myProp.host:localhost}:${my-prop.port:8080}/${myProp.contextPath}");
+    }
+
+    @Benchmark
+    public PropertySource<?> addConfigPropPrefix() {
+        return ConfigurationUtils.addConfigPropPrefix(configTreeSource, "app.config-tree");
+    }
+}
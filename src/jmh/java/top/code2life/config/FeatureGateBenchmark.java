@@ -0,0 +1,64 @@
+package top.code2life.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of FeatureGate conversion and lookups, with and without the cached property source
+ *
+ * @author Code2Life
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureGateBenchmark {
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private FeatureGate featureGate;
+    private Set<String> enabledUsers;
+
+    @Setup
+    public void setup() {
+        StandardEnvironment env = new StandardEnvironment();
+        Map<String, Object> props = new HashMap<>(4);
+        props.put("my.feature.enabled", "true");
+        props.put("my.feature.beta-users", "user1, user2, user3, user4, user5");
+        env.getPropertySources().addFirst(new MapPropertySource("bench", props));
+        if (cached) {
+            env.getPropertySources().addFirst(new CachedPropertySource(env, CachedPropertySource.DEFAULT_MAX_SIZE, ps -> true));
+        }
+        featureGate = new FeatureGate(env);
+        enabledUsers = featureGate.convert(env.getProperty("my.feature.beta-users"));
+    }
+
+    @Benchmark
+    public Set<String> convert() {
+        return featureGate.convert("user1, user2, user3, user4, user5");
+    }
+
+    @Benchmark
+    public boolean isFeatureEnabledForEntity() {
+        return featureGate.isFeatureEnabled(enabledUsers, "user4");
+    }
+
+    @Benchmark
+    public boolean isFeatureEnabled() {
+        return featureGate.isFeatureEnabled("my.feature.enabled");
+    }
+
+    @Benchmark
+    public boolean isFeatureEnabledMissing() {
+        return featureGate.isFeatureEnabled("my.feature.not-configured");
+    }
+}
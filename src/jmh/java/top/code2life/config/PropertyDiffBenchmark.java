@@ -0,0 +1,52 @@
+package top.code2life.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.origin.OriginTrackedValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of computing diff between previous and current property sources,
+ * about 1% keys are modified, added or removed in current property source.
+ *
+ * @author Code2Life
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyDiffBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int keys;
+
+    private Map<Object, OriginTrackedValue> previous;
+    private Map<Object, OriginTrackedValue> current;
+
+    @Setup
+    public void setup() {
+        previous = new HashMap<>(keys * 2);
+        current = new HashMap<>(keys * 2);
+        int step = Math.max(keys / 100, 1);
+        for (int i = 0; i < keys; i++) {
+            String key = "bench.module" + (i % 16) + ".key" + i;
+            previous.put(key, OriginTrackedValue.of("value-" + i));
+            if (i % step != 0) {
+                current.put(key, OriginTrackedValue.of("value-" + i));
+            } else if (i % 3 == 0) {
+                current.put(key, OriginTrackedValue.of("changed-" + i));
+            } else if (i % 3 == 1) {
+                current.put("bench.added.key" + i, OriginTrackedValue.of("added-" + i));
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> getPropertyDiff() {
+        return ConfigurationChangedEvent.getPropertyDiff(previous, current);
+    }
+}
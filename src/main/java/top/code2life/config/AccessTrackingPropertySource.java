@@ -0,0 +1,228 @@
+package top.code2life.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static top.code2life.config.ConfigurationUtils.ATTACHED_PROPERTY_SOURCE_NAME;
+import static top.code2life.config.ConfigurationUtils.normalizePropKey;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PROPERTY_SOURCE_META_MAP;
+
+/**
+ * Optional sampled read tracker placed at the top of the property sources chain,
+ * enabled by 'dynamic-config.access-tracking.enabled=true'.
+ * It never provides any value of its own, one of every 'sample-rate' lookups is counted by a LongAdder of the key,
+ * the number of tracked keys is bounded by 'max-keys', so the overhead is a thread local flag and one random number
+ * in most lookups. Counts and rates are estimated by multiplying the sample rate.
+ * <p>
+ * With the attached ConfigurationPropertySources, the Environment visits this tracker directly and again through
+ * the attached source for one lookup. The first visit flags the re-entrance, so the nested visit is not counted,
+ * lookups through the attached source only, such as binding, are counted once as well.
+ * <p>
+ * eg: AccessTrackingPropertySource.find(environment).getTopKeys(20)
+ *
+ * @author Code2Life
+ * @see DynamicConfigPropertiesWatcher
+ */
+public class AccessTrackingPropertySource extends PropertySource<Map<String, LongAdder>> {
+
+    static final String ACCESS_TRACKING_PROPERTY_SOURCE_NAME = "dynamicConfigAccessTracking";
+    static final String ACCESS_TRACKING_ENABLED_PROPERTY = "dynamic-config.access-tracking.enabled";
+    static final String ACCESS_TRACKING_SAMPLE_RATE_PROPERTY = "dynamic-config.access-tracking.sample-rate";
+    static final String ACCESS_TRACKING_MAX_KEYS_PROPERTY = "dynamic-config.access-tracking.max-keys";
+    static final int DEFAULT_SAMPLE_RATE = 16;
+    static final int DEFAULT_MAX_KEYS = 10000;
+
+    private final ConfigurableEnvironment env;
+    private final int sampleMask;
+    private final int maxKeys;
+    private final CachedPropertySource cachedPropertySource;
+    /**
+     * [0]: name of the lookup which visits this tracker again through the attached source on current thread
+     */
+    private final ThreadLocal<String[]> reentrance = ThreadLocal.withInitial(() -> new String[1]);
+    /**
+     * Whether the attached ConfigurationPropertySources exists, refreshed on every sampled lookup
+     */
+    private volatile boolean attached;
+    private final LongAdder overflow = new LongAdder();
+    private volatile long trackingSince = System.currentTimeMillis();
+
+    AccessTrackingPropertySource(ConfigurableEnvironment env, int sampleRate, int maxKeys, CachedPropertySource cachedPropertySource) {
+        super(ACCESS_TRACKING_PROPERTY_SOURCE_NAME, new ConcurrentHashMap<>(64));
+        this.env = env;
+        // round up to power of two, so that sampling is a bit mask
+        int rate = Math.max(sampleRate, 1);
+        this.sampleMask = rate == 1 ? 0 : (Integer.highestOneBit(rate - 1) << 1) - 1;
+        this.maxKeys = maxKeys;
+        this.cachedPropertySource = cachedPropertySource;
+        this.attached = env != null && env.getPropertySources().contains(ATTACHED_PROPERTY_SOURCE_NAME);
+    }
+
+    /**
+     * Find the tracker installed in Environment
+     *
+     * @param environment Spring Environment
+     * @return the tracker, null if access tracking is not enabled
+     */
+    public static AccessTrackingPropertySource find(Environment environment) {
+        if (!(environment instanceof ConfigurableEnvironment)) {
+            return null;
+        }
+        PropertySource<?> ps = ((ConfigurableEnvironment) environment).getPropertySources().get(ACCESS_TRACKING_PROPERTY_SOURCE_NAME);
+        return ps instanceof AccessTrackingPropertySource ? (AccessTrackingPropertySource) ps : null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        if (cachedPropertySource != null && cachedPropertySource.isResolving()) {
+            // delegated lookup of a cache miss, counted by the visit before it
+            return null;
+        }
+        String[] flag = reentrance.get();
+        if (flag[0] != null) {
+            // the cache answers values found, only lookups of missing keys reach the attached source
+            boolean reentered = flag[0].equals(name) && (cachedPropertySource == null || cachedPropertySource.isKnownMissing(name));
+            flag[0] = null;
+            if (reentered) {
+                return null;
+            }
+        }
+        if (isSampled()) {
+            attached = env != null && env.getPropertySources().contains(ATTACHED_PROPERTY_SOURCE_NAME);
+            count(name);
+        }
+        if (attached && ConfigurationPropertyName.isValid(name)) {
+            flag[0] = name;
+        }
+        return null;
+    }
+
+    /**
+     * Count a read of the key if it's sampled
+     *
+     * @param name property key
+     */
+    void record(String name) {
+        if (isSampled()) {
+            count(name);
+        }
+    }
+
+    private boolean isSampled() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    private void count(String name) {
+        if (cachedPropertySource != null && cachedPropertySource.isResolving()) {
+            // delegated lookup of a cache miss, already counted
+            return;
+        }
+        String key = normalizePropKey(name);
+        if (key == null) {
+            return;
+        }
+        LongAdder counter = source.get(key);
+        if (counter == null) {
+            if (source.size() >= maxKeys) {
+                overflow.increment();
+                return;
+            }
+            counter = source.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Most frequently read keys since tracking started or reset
+     *
+     * @param n max number of keys
+     * @return keys ordered by estimated reads, descending
+     */
+    public List<KeyReads> getTopKeys(int n) {
+        double seconds = Math.max((System.currentTimeMillis() - trackingSince) / 1000.0, 0.001);
+        long rate = sampleMask + 1L;
+        return source.entrySet().stream()
+                .map(e -> new KeyReads(e.getKey(), e.getValue().sum() * rate, e.getValue().sum() * rate / seconds))
+                .sorted(Comparator.comparingLong(KeyReads::getEstimatedReads).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Keys defined in watched config files but never sampled since tracking started or reset
+     *
+     * @return normalized keys never sampled
+     */
+    public Set<String> getNeverReadKeys() {
+        List<PropertySource<?>> fileSources = new ArrayList<>();
+        for (List<PropertySourceMeta> metaList : PROPERTY_SOURCE_META_MAP.values()) {
+            for (PropertySourceMeta meta : metaList) {
+                fileSources.add(meta.getPropertySource());
+            }
+        }
+        return getNeverReadKeys(fileSources);
+    }
+
+    /**
+     * Keys defined in the property sources but never sampled since tracking started or reset,
+     * keys rarely read may show up here as well with a high sample rate
+     *
+     * @param propertySources property sources whose keys should be checked, eg: config files
+     * @return normalized keys never sampled
+     */
+    public Set<String> getNeverReadKeys(Iterable<PropertySource<?>> propertySources) {
+        Set<String> result = new TreeSet<>();
+        for (PropertySource<?> ps : propertySources) {
+            if (!(ps instanceof EnumerablePropertySource)) {
+                continue;
+            }
+            for (String name : ((EnumerablePropertySource<?>) ps).getPropertyNames()) {
+                String key = normalizePropKey(name);
+                if (key != null && !source.containsKey(key)) {
+                    result.add(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of sampled reads dropped because too many keys are tracked
+     *
+     * @return estimated reads not tracked
+     */
+    public long getOverflowReads() {
+        return overflow.sum() * (sampleMask + 1L);
+    }
+
+    public void reset() {
+        source.clear();
+        overflow.reset();
+        trackingSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Estimated read count and rate of a key
+     */
+    @Data
+    @AllArgsConstructor
+    public static class KeyReads {
+
+        private String key;
+
+        private long estimatedReads;
+
+        private double readsPerSecond;
+    }
+}
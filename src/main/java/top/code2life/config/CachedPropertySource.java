@@ -0,0 +1,212 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.source.ConfigurationProperty;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static top.code2life.config.ConfigurationUtils.ATTACHED_PROPERTY_SOURCE_NAME;
+
+/**
+ * Optional read-through cache placed at the top of the property sources chain,
+ * enabled by 'dynamic-config.cache.enabled=true'.
+ * The first lookup of a key walks the remaining property sources and remembers the raw value,
+ * including the fact that the key is absent, following lookups are served by one hash lookup.
+ * Cached keys are invalidated by the diff of each configuration change, so only values of property sources whose
+ * changes are diffed are cached, values of other sources, such as system properties, are resolved on every lookup.
+ * 'random.*' keys are never cached, they are left to RandomValuePropertySource.
+ * Keys absent in all property sources are cached as well, a key added to other sources later is found after
+ * it's invalidated. Since a null value lets the chain continue, negative results are only short-circuited
+ * by callers aware of this cache, such as FeatureGate.
+ * <p>
+ * Keys resolved through the attached ConfigurationPropertySources are cached in the relaxed uniform form
+ * (lower case, without '-' and '_'), which is the same equality rule Spring Boot uses for ConfigurationPropertyName.
+ * Other keys are resolved by exact name, so they are cached by exact name too.
+ *
+ * @author Code2Life
+ * @see DynamicConfigPropertiesWatcher
+ */
+@Slf4j
+class CachedPropertySource extends PropertySource<Map<String, Object>> {
+
+    static final String CACHED_PROPERTY_SOURCE_NAME = "dynamicConfigCachedProperties";
+    static final String CACHE_ENABLED_PROPERTY = "dynamic-config.cache.enabled";
+    static final String CACHE_MAX_SIZE_PROPERTY = "dynamic-config.cache.max-size";
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Keys resolved by RandomValuePropertySource, a new value for each lookup
+     */
+    private static final String RANDOM_PREFIX = "random.";
+
+    /**
+     * Prefix of keys cached by exact name, never appears in uniform keys
+     */
+    private static final String EXACT_KEY_PREFIX = "_";
+
+    private final ConfigurableEnvironment env;
+    private final int maxSize;
+    private final AtomicLong generation = new AtomicLong();
+    private final Predicate<PropertySource<?>> diffed;
+
+    /**
+     * [0]: current thread is resolving on behalf of this cache, [1]: the resolved value could be cached
+     */
+    private final ThreadLocal<boolean[]> resolving = ThreadLocal.withInitial(() -> new boolean[2]);
+
+    /**
+     * Whether the attached ConfigurationPropertySources exists, refreshed on every cache miss
+     */
+    private volatile boolean attached;
+
+    /**
+     * @param diffed whether changes of a property source are diffed, values of other sources are not cached
+     */
+    CachedPropertySource(ConfigurableEnvironment env, int maxSize, Predicate<PropertySource<?>> diffed) {
+        super(CACHED_PROPERTY_SOURCE_NAME, new ConcurrentHashMap<>(64));
+        this.env = env;
+        this.maxSize = maxSize;
+        this.diffed = diffed;
+        this.attached = env.getPropertySources().contains(ATTACHED_PROPERTY_SOURCE_NAME);
+    }
+
+    static CachedPropertySource find(Environment environment) {
+        if (!(environment instanceof ConfigurableEnvironment)) {
+            return null;
+        }
+        PropertySource<?> ps = ((ConfigurableEnvironment) environment).getPropertySources().get(CACHED_PROPERTY_SOURCE_NAME);
+        return ps instanceof CachedPropertySource ? (CachedPropertySource) ps : null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        boolean[] flag = resolving.get();
+        if (flag[0] || name.startsWith(RANDOM_PREFIX)) {
+            // re-entered from the delegated lookup, or a random value, let the chain continue
+            return null;
+        }
+        String cacheKey = cacheKey(name);
+        Object cached = source.get(cacheKey);
+        if (cached == null) {
+            long gen = generation.get();
+            flag[0] = true;
+            flag[1] = true;
+            try {
+                PropertySource<?> attachedSource = env.getPropertySources().get(ATTACHED_PROPERTY_SOURCE_NAME);
+                if ((attachedSource != null) != attached) {
+                    attached = attachedSource != null;
+                    cacheKey = cacheKey(name);
+                }
+                cached = resolve(attachedSource, name);
+            } finally {
+                flag[0] = false;
+            }
+            if (!flag[1]) {
+                return cached;
+            }
+            cached = cached == null ? NULL_VALUE : cached;
+            if (source.size() >= maxSize) {
+                log.debug("cached property source is full, evict all cached values");
+                source.clear();
+            }
+            source.put(cacheKey, cached);
+            if (generation.get() != gen) {
+                // invalidated while resolving, the resolved value may be stale
+                source.remove(cacheKey);
+            }
+        }
+        return cached == NULL_VALUE ? null : cached;
+    }
+
+    /**
+     * Check if the key has been looked up before and confirmed absent in all property sources
+     *
+     * @param name property key
+     * @return true if the negative lookup result is cached
+     */
+    boolean isKnownMissing(String name) {
+        return source.get(cacheKey(name)) == NULL_VALUE;
+    }
+
+    /**
+     * Check if current thread is walking the property sources on behalf of this cache
+     *
+     * @return true if the lookup is delegated by this cache
+     */
+    boolean isResolving() {
+        return resolving.get()[0];
+    }
+
+    void invalidate(Collection<String> keys) {
+        generation.incrementAndGet();
+        for (String key : keys) {
+            source.remove(uniformKey(key));
+            source.remove(EXACT_KEY_PREFIX + key);
+        }
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        source.clear();
+    }
+
+    /**
+     * Walk the property sources like the attached source does if it exists, marks the value not cacheable
+     * if it's found in a property source whose changes are not diffed
+     */
+    private Object resolve(PropertySource<?> attachedSource, String name) {
+        if (attachedSource != null && ConfigurationPropertyName.isValid(name)) {
+            ConfigurationPropertyName propertyName = ConfigurationPropertyName.of(name);
+            for (ConfigurationPropertySource cps : ConfigurationPropertySources.get(env)) {
+                ConfigurationProperty property = cps.getConfigurationProperty(propertyName);
+                if (property != null) {
+                    Object underlying = cps.getUnderlyingSource();
+                    resolving.get()[1] = underlying instanceof PropertySource && diffed.test((PropertySource<?>) underlying);
+                    return property.getValue();
+                }
+            }
+            return null;
+        }
+        for (PropertySource<?> ps : env.getPropertySources()) {
+            if (ps == this) {
+                continue;
+            }
+            Object val = ps.getProperty(name);
+            if (val != null) {
+                resolving.get()[1] = diffed.test(ps);
+                return val;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Relaxed uniform key if the name is resolved through the attached source, otherwise the exact name
+     */
+    private String cacheKey(String name) {
+        return attached && ConfigurationPropertyName.isValid(name) ? uniformKey(name) : EXACT_KEY_PREFIX + name;
+    }
+
+    private static String uniformKey(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '-' && c != '_') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
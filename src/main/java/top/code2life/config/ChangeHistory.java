@@ -0,0 +1,110 @@
+package top.code2life.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.*;
+
+/**
+ * Bounded history of applied changes of one property source, only changed keys are kept,
+ * so memory is proportional to the churn instead of the size of config files.
+ * Version 0 is the content loaded at startup, each applied change or rollback increases the version.
+ *
+ * @author Code2Life
+ * @see DynamicConfigPropertiesWatcher#rollback(String, int, int)
+ */
+public class ChangeHistory {
+
+    static final String HISTORY_MAX_VERSIONS_PROPERTY = "dynamic-config.history.max-versions";
+    static final int DEFAULT_MAX_VERSIONS = 20;
+
+    private final int maxVersions;
+    private final Deque<Version> versions;
+    private int currentVersion = 0;
+
+    ChangeHistory(int maxVersions) {
+        this.maxVersions = Math.max(maxVersions, 1);
+        this.versions = new ArrayDeque<>(Math.min(this.maxVersions, 16));
+    }
+
+    /**
+     * Record an applied change, the oldest version is dropped if history is full
+     *
+     * @param oldValues previous raw values of changed keys, null means the key was absent
+     * @param newValues current raw values of changed keys, null means the key is removed
+     * @param origin    what caused the change, file or rollback
+     * @return the new version
+     */
+    synchronized int record(Map<String, Object> oldValues, Map<String, Object> newValues, String origin) {
+        currentVersion++;
+        if (versions.size() >= maxVersions) {
+            versions.pollFirst();
+        }
+        versions.addLast(new Version(currentVersion, System.currentTimeMillis(), origin, oldValues, newValues));
+        return currentVersion;
+    }
+
+    /**
+     * Compute the values to restore to get back to the content of certain version
+     *
+     * @param version target version
+     * @return raw values of keys to restore, null means the key should be removed
+     * @throws IllegalArgumentException if the version is not current or earlier retained versions
+     */
+    synchronized Map<String, Object> inverseDiffTo(int version) {
+        if (version >= currentVersion || version < 0) {
+            throw new IllegalArgumentException("can not roll back to version " + version + ", current version is " + currentVersion);
+        }
+        if (versions.isEmpty() || versions.peekFirst().getVersion() > version + 1) {
+            throw new IllegalArgumentException("version " + version + " is no longer kept in change history");
+        }
+        Map<String, Object> result = new HashMap<>(8);
+        Iterator<Version> iterator = versions.descendingIterator();
+        while (iterator.hasNext()) {
+            Version v = iterator.next();
+            if (v.getVersion() <= version) {
+                break;
+            }
+            // walking from the latest version, older values overwrite newer ones
+            result.putAll(v.getOldValues());
+        }
+        return result;
+    }
+
+    public synchronized int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * Retained versions, the latest last
+     *
+     * @return copy of retained versions
+     */
+    public synchronized List<Version> getVersions() {
+        return new ArrayList<>(versions);
+    }
+
+    /**
+     * One applied change of a property source
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Version {
+
+        private int version;
+
+        /**
+         * Epoch millis when the change was applied
+         */
+        private long timestamp;
+
+        /**
+         * 'file' for changes from config files, 'rollback' for rollbacks
+         */
+        private String origin;
+
+        private Map<String, Object> oldValues;
+
+        private Map<String, Object> newValues;
+    }
+}
@@ -0,0 +1,349 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Change source backed by a local append-only log of property patches, for high-churn keys tuned by other processes,
+ * such as rate limits set by an autoscaler. The log is read incrementally from the last consumed offset, each batch
+ * is delivered as one patch, so that its ConfigurationChangedEvent only diffs the keys of the batch.
+ * <p>
+ * A batch is a group of lines ended by 'COMMIT', incomplete batches are read after they are committed:
+ * <pre>
+ * SET rate-limit.orders=120
+ * UNSET rate-limit.search
+ * COMMIT
+ * </pre>
+ * When the consumed log exceeds 'dynamic-config.changelog.compact-threshold' bytes, current properties are written to
+ * the snapshot file ('.snapshot' appended to the log path) and the log is truncated. After restarting, the snapshot is
+ * loaded and only the log tail is replayed. Writers should append by {@link #append(Path, Map)} or hold a
+ * {@link FileLock} of the log while appending, so that batches are never truncated by compaction.
+ * <p>
+ * Several processes may consume the same log, a consumer which finds the log compacted by another one
+ * (the snapshot file is replaced, or the log is shorter than the consumed offset) loads the snapshot and the log again,
+ * and delivers them as a whole, so that batches folded into the snapshot are never lost.
+ *
+ * @author Code2Life
+ * @see ConfigChangeSource
+ */
+@Slf4j
+@ConditionalOnProperty(name = ChangelogConfigChangeSource.CHANGELOG_FILE_PROPERTY)
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class ChangelogConfigChangeSource implements ConfigChangeSource {
+
+    static final String NAME = "changelog";
+    static final String CHANGELOG_FILE_PROPERTY = "dynamic-config.changelog.file";
+    static final String CHANGELOG_POLL_INTERVAL_PROPERTY = "dynamic-config.changelog.poll-interval";
+    static final String CHANGELOG_COMPACT_THRESHOLD_PROPERTY = "dynamic-config.changelog.compact-threshold";
+    static final long DEFAULT_POLL_INTERVAL = 100;
+    static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024;
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final String CHANGELOG_THREAD = "config-watcher-changelog";
+    private static final String SET = "SET";
+    private static final String UNSET = "UNSET";
+    private static final String COMMIT = "COMMIT";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final long pollInterval;
+    private final long compactThreshold;
+
+    /**
+     * Current properties of the source, only accessed by the changelog thread after started
+     */
+    private final Map<String, String> properties = new LinkedHashMap<>(64);
+    private long offset;
+
+    /**
+     * Identity of the loaded or written snapshot file, null if absent, a different one means it's replaced by others
+     */
+    private String snapshotStamp;
+    private ConfigChangeSink sink;
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    ChangelogConfigChangeSource(Environment env) {
+        this(Paths.get(env.getRequiredProperty(CHANGELOG_FILE_PROPERTY)),
+                env.getProperty(CHANGELOG_POLL_INTERVAL_PROPERTY, Long.class, DEFAULT_POLL_INTERVAL),
+                env.getProperty(CHANGELOG_COMPACT_THRESHOLD_PROPERTY, Long.class, DEFAULT_COMPACT_THRESHOLD));
+    }
+
+    /**
+     * @param logFile          path of the changelog, read once it exists
+     * @param pollInterval     interval of checking appended batches in milliseconds
+     * @param compactThreshold consumed bytes of the log to trigger compaction, 0 to never compact
+     */
+    public ChangelogConfigChangeSource(Path logFile, long pollInterval, long compactThreshold) {
+        this.logFile = logFile.toAbsolutePath();
+        this.snapshotFile = Paths.get(this.logFile + SNAPSHOT_SUFFIX);
+        this.pollInterval = pollInterval;
+        this.compactThreshold = compactThreshold;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    public synchronized void start(ConfigChangeSink sink) throws IOException {
+        this.sink = sink;
+        loadSnapshot();
+        long snapshotOffset = offset;
+        // the tail is replayed into the initial properties, delivered as a whole
+        readBatches(false);
+        sink.publish(properties);
+        log.info("changelog {} is loaded, properties: {}, replayed bytes: {}", logFile, properties.size(), offset - snapshotOffset);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, CHANGELOG_THREAD);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Append one batch to the changelog, holding the lock of the log so that it won't be lost by compaction
+     *
+     * @param logFile path of the changelog, created if not exists
+     * @param patch   changed keys and their new values, null value means removing the key, keys and values
+     *                should not contain line breaks
+     */
+    public static void append(Path logFile, Map<String, ?> patch) throws IOException {
+        StringBuilder batch = new StringBuilder(patch.size() * 32);
+        patch.forEach((key, value) -> {
+            String str = value == null ? null : value.toString();
+            if (key.indexOf('\n') >= 0 || key.indexOf('=') >= 0 || (str != null && str.indexOf('\n') >= 0)) {
+                throw new IllegalArgumentException("invalid changelog entry: " + key);
+            }
+            batch.append(str == null ? UNSET + " " + key : SET + " " + key + "=" + str).append('\n');
+        });
+        batch.append(COMMIT).append('\n');
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            FileLock lock = lock(channel);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static FileLock lock(FileChannel channel) throws IOException {
+        while (true) {
+            try {
+                return channel.lock();
+            } catch (OverlappingFileLockException ex) {
+                // held by another channel of current process, file locks are per process
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    void poll() {
+        try {
+            if (isCompactedByOthers()) {
+                reload();
+            } else {
+                readBatches(true);
+            }
+            if (compactThreshold > 0 && offset >= compactThreshold) {
+                compact();
+            }
+        } catch (Exception ex) {
+            log.warn("could not read changelog {}: {}", logFile, ex.getMessage());
+        }
+    }
+
+    /**
+     * Read committed batches after the consumed offset
+     *
+     * @param deliver deliver each batch as a patch, or only apply them to current properties
+     */
+    private void readBatches(boolean deliver) throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            readBatches(channel, deliver);
+        }
+    }
+
+    private void readBatches(FileChannel channel, boolean deliver) throws IOException {
+        long size = channel.size();
+        if (size <= offset) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        Map<String, String> batch = new LinkedHashMap<>(8);
+        long position = offset;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String command = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                line.reset();
+                if (parseLine(command, batch)) {
+                    applyBatch(batch, deliver);
+                    batch = new LinkedHashMap<>(8);
+                    // only committed batches move the offset forward
+                    offset = position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * @return true if the batch is committed
+     */
+    private boolean parseLine(String line, Map<String, String> batch) {
+        if (line.isEmpty()) {
+            return false;
+        }
+        if (COMMIT.equals(line)) {
+            return true;
+        }
+        if (line.startsWith(SET + " ")) {
+            String entry = line.substring(SET.length() + 1);
+            int eq = entry.indexOf('=');
+            if (eq > 0) {
+                batch.put(entry.substring(0, eq), entry.substring(eq + 1));
+                return false;
+            }
+        } else if (line.startsWith(UNSET + " ")) {
+            batch.put(line.substring(UNSET.length() + 1), null);
+            return false;
+        }
+        log.warn("invalid line of changelog {} skipped: {}", logFile, line);
+        return false;
+    }
+
+    private void applyBatch(Map<String, String> batch, boolean deliver) {
+        batch.forEach((key, value) -> {
+            if (value == null) {
+                properties.remove(key);
+            } else {
+                properties.put(key, value);
+            }
+        });
+        if (deliver && !batch.isEmpty()) {
+            sink.patch(batch);
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        snapshotStamp = snapshotStamp();
+        if (snapshotStamp == null) {
+            return;
+        }
+        Map<String, String> snapshot = new LinkedHashMap<>(64);
+        for (String line : Files.readAllLines(snapshotFile, StandardCharsets.UTF_8)) {
+            parseLine(line, snapshot);
+        }
+        applyBatch(snapshot, false);
+    }
+
+    private boolean isCompactedByOthers() throws IOException {
+        if (!Objects.equals(snapshotStamp, snapshotStamp())) {
+            return true;
+        }
+        return offset > 0 && Files.exists(logFile) && Files.size(logFile) < offset;
+    }
+
+    /**
+     * Load the snapshot compacted by others and the whole log again, then deliver them as a whole.
+     * The log may not be truncated yet, replaying batches already in the snapshot leads to the same properties.
+     */
+    private void reload() throws IOException {
+        log.info("changelog {} is compacted by others, load the snapshot and the log again", logFile);
+        properties.clear();
+        offset = 0;
+        loadSnapshot();
+        readBatches(false);
+        sink.publish(properties);
+    }
+
+    private String snapshotStamp() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(snapshotFile, BasicFileAttributes.class);
+            return attributes.fileKey() + "@" + attributes.lastModifiedTime().toMillis() + "#" + attributes.size();
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Write current properties to the snapshot then truncate the log, under the lock of the log.
+     * The snapshot is replaced before truncating, if the process crashes in between, the whole log is
+     * replayed on the snapshot, which leads to the same properties.
+     */
+    private void compact() throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = lock(channel);
+            try {
+                if (isCompactedByOthers()) {
+                    reload();
+                    return;
+                }
+                readBatches(channel, true);
+                if (channel.size() != offset) {
+                    log.debug("changelog {} has an incomplete batch, compaction is postponed", logFile);
+                    return;
+                }
+                StringBuilder content = new StringBuilder(properties.size() * 32);
+                properties.forEach((key, value) -> content.append(SET).append(' ').append(key).append('=').append(value).append('\n'));
+                content.append(COMMIT).append('\n');
+                Path tmpFile = Paths.get(snapshotFile + ".tmp");
+                Files.write(tmpFile, content.toString().getBytes(StandardCharsets.UTF_8));
+                Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                snapshotStamp = snapshotStamp();
+                channel.truncate(0);
+                log.info("changelog {} is compacted, consumed bytes: {}, properties: {}", logFile, offset, properties.size());
+                offset = 0;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+}
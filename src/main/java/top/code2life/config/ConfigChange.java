@@ -0,0 +1,34 @@
+package top.code2life.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * One changed key emitted by {@link ReactiveConfigChanges}
+ *
+ * @author Code2Life
+ */
+@Data
+@AllArgsConstructor
+public class ConfigChange {
+
+    /**
+     * Changed key, normalized into kebab case
+     */
+    private String key;
+
+    /**
+     * Effective value after the change, placeholders resolved, null means the key is deleted
+     */
+    private Object value;
+
+    /**
+     * Path of the file that changed
+     */
+    private String path;
+
+    /**
+     * Config epoch published with this change, see {@link ConfigSnapshot#getEpoch()}
+     */
+    private long epoch;
+}
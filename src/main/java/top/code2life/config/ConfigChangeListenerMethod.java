@@ -0,0 +1,48 @@
+package top.code2life.config;
+
+import lombok.Data;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+@Data
+class ConfigChangeListenerMethod {
+
+    /**
+     * Normalized prefix of {@literal @}OnConfigChange, empty for all keys
+     */
+    private String prefix;
+
+    /**
+     * Reference of the bean instance
+     */
+    private WeakReference<Object> beanRef;
+
+    /**
+     * Method to invoke, parameters are Map of changed keys and/or ConfigurationChangedEvent
+     */
+    private Method method;
+
+    /**
+     * name of the Spring bean
+     */
+    private String beanName;
+
+    ConfigChangeListenerMethod(String prefix, Method method, Object bean, String beanName) {
+        this.beanRef = new WeakReference<>(bean);
+        this.prefix = prefix;
+        this.method = method;
+        this.beanName = beanName;
+    }
+
+    void invoke(Object bean, Map<String, Object> changes, ConfigurationChangedEvent event) throws InvocationTargetException, IllegalAccessException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Object[] args = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            args[i] = Map.class.isAssignableFrom(parameterTypes[i]) ? changes : event;
+        }
+        method.invoke(bean, args);
+    }
+}
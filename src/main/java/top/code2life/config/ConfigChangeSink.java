@@ -0,0 +1,36 @@
+package top.code2life.config;
+
+import java.util.Map;
+
+/**
+ * Receiver of changes from one {@link ConfigChangeSource}, backed by a property source with higher precedence
+ * than config files. Deliveries only hand values off to the reload pipeline, they never wait for dynamic beans
+ * being updated, pending deliveries of a source are coalesced when the pipeline is busy.
+ *
+ * @author Code2Life
+ * @see ConfigChangeSource
+ */
+public interface ConfigChangeSink {
+
+    /**
+     * Replace all properties of the source, keys absent from the map are removed
+     *
+     * @param properties raw property map, values are converted when bound, null values are ignored
+     */
+    void publish(Map<String, ?> properties);
+
+    /**
+     * Update part of the properties of the source, applied on its current content, including rollbacks
+     *
+     * @param changes changed keys and their new values, null value means removing the key
+     */
+    void patch(Map<String, ?> changes);
+
+    /**
+     * Read a watched config file again, regardless of its modified time, for sources which know a file is rewritten
+     *
+     * @param location path of the config file, null to read all watched config files again
+     * @throws IllegalArgumentException if the file is not under any watched config location
+     */
+    void reload(String location);
+}
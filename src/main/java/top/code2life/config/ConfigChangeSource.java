@@ -0,0 +1,36 @@
+package top.code2life.config;
+
+/**
+ * Origin of configuration changes, delivering them into the reload pipeline of {@link DynamicConfigPropertiesWatcher}
+ * through the given {@link ConfigChangeSink}. Changes of a source go through the same diff, apply and notify stages
+ * as config files, so that dynamic beans, listeners, snapshots and change history see them the same way.
+ * <p>
+ * Spring beans of this type are started by the watcher after all singletons are instantiated,
+ * others could be started by {@link DynamicConfigPropertiesWatcher#startChangeSource(ConfigChangeSource)}.
+ * Push-based sources should deliver changes as soon as they arrive, instead of being polled.
+ *
+ * @author Code2Life
+ * @see ConfigChangeSink
+ * @see InMemoryConfigChangeSource
+ */
+public interface ConfigChangeSource {
+
+    /**
+     * @return unique name of the source, also the path of its changes, such as ConfigurationChangedEvent.getPath()
+     */
+    String getName();
+
+    /**
+     * Start delivering changes, called once, it should not block the caller
+     *
+     * @param sink receiver of changes, thread-safe
+     * @throws Exception if the source can not be started, other sources are not affected
+     */
+    void start(ConfigChangeSink sink) throws Exception;
+
+    /**
+     * Stop delivering changes and release resources, called when the watcher is destroyed
+     */
+    default void stop() {
+    }
+}
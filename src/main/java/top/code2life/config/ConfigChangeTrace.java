@@ -0,0 +1,137 @@
+package top.code2life.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format of recorded configuration changes, file layout:
+ * magic 'DCTR', version, then appended entries of
+ * [timestamp, path, readNanos, parseNanos, diffNanos, diff size, (key, removed flag, value)...].
+ * Values are stored as strings, strings are length-prefixed UTF-8 bytes.
+ *
+ * @author Code2Life
+ * @see ConfigChangeTraceRecorder
+ * @see ConfigChangeTraceReplayer
+ */
+public final class ConfigChangeTrace {
+
+    static final int MAGIC = 0x44435452;
+    static final int VERSION = 1;
+
+    private ConfigChangeTrace() {
+    }
+
+    /**
+     * Read all entries of a trace file
+     *
+     * @param traceFile the recorded trace file
+     * @return entries in recorded order
+     * @throws IOException if the file can not be read or it's not a trace file
+     */
+    public static List<Entry> read(Path traceFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(traceFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a dynamic config trace file: " + traceFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported trace file version: " + version);
+            }
+            while (true) {
+                long timestamp;
+                try {
+                    timestamp = in.readLong();
+                } catch (EOFException eof) {
+                    break;
+                }
+                entries.add(readEntry(in, timestamp));
+            }
+        }
+        return entries;
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.getTimestamp());
+        writeString(out, entry.getPath());
+        out.writeLong(entry.getReadNanos());
+        out.writeLong(entry.getParseNanos());
+        out.writeLong(entry.getDiffNanos());
+        out.writeInt(entry.getDiff().size());
+        for (Map.Entry<String, Object> change : entry.getDiff().entrySet()) {
+            writeString(out, change.getKey());
+            Object value = change.getValue();
+            out.writeBoolean(value == null);
+            if (value != null) {
+                writeString(out, value.toString());
+            }
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in, long timestamp) throws IOException {
+        String path = readString(in);
+        long readNanos = in.readLong();
+        long parseNanos = in.readLong();
+        long diffNanos = in.readLong();
+        int size = in.readInt();
+        Map<String, Object> diff = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            boolean removed = in.readBoolean();
+            diff.put(key, removed ? null : readString(in));
+        }
+        return new Entry(timestamp, path, readNanos, parseNanos, diffNanos, diff);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One recorded ConfigurationChangedEvent
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+
+        /**
+         * Epoch millis when the change was published
+         */
+        private long timestamp;
+
+        private String path;
+
+        private long readNanos;
+
+        private long parseNanos;
+
+        private long diffNanos;
+
+        /**
+         * Changed keys and new values, null means the key was removed
+         */
+        private Map<String, Object> diff;
+    }
+}
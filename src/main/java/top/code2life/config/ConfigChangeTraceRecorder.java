@@ -0,0 +1,83 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append each ConfigurationChangedEvent to the trace file specified by 'dynamic-config.trace.file',
+ * the trace could be replayed by ConfigChangeTraceReplayer without any file system change.
+ *
+ * @author Code2Life
+ * @see ConfigChangeTrace
+ */
+@Slf4j
+@ConditionalOnProperty(name = ConfigChangeTraceRecorder.TRACE_FILE_PROPERTY)
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+class ConfigChangeTraceRecorder implements DisposableBean {
+
+    static final String TRACE_FILE_PROPERTY = "dynamic-config.trace.file";
+
+    private final Path traceFile;
+    private DataOutputStream out;
+
+    ConfigChangeTraceRecorder(Environment env) {
+        this.traceFile = Paths.get(env.getRequiredProperty(TRACE_FILE_PROPERTY));
+    }
+
+    /**
+     * Record changes after they have been processed by dynamic beans, so that stage timings are available
+     *
+     * @param event config changed event
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ConfigurationChangedEvent.class)
+    public synchronized void record(ConfigurationChangedEvent event) {
+        ReloadRecord record = event.getReloadRecord();
+        ConfigChangeTrace.Entry entry = new ConfigChangeTrace.Entry(event.getTimestamp(), event.getPath(),
+                record == null ? 0 : record.getReadNanos(), record == null ? 0 : record.getParseNanos(),
+                record == null ? 0 : record.getDiffNanos(), event.getDiff());
+        try {
+            if (out == null) {
+                out = open();
+            }
+            ConfigChangeTrace.writeEntry(out, entry);
+            out.flush();
+        } catch (IOException ex) {
+            log.warn("can not record config change to trace file {}: {}", traceFile, ex.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private DataOutputStream open() throws IOException {
+        if (traceFile.getParent() != null) {
+            Files.createDirectories(traceFile.getParent());
+        }
+        boolean newFile = !Files.exists(traceFile) || Files.size(traceFile) == 0;
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(traceFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (newFile) {
+            ConfigChangeTrace.writeHeader(stream);
+        }
+        log.info("config changes will be recorded to trace file: {}", traceFile);
+        return stream;
+    }
+}
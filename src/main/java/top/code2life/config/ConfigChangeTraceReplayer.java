@@ -0,0 +1,133 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PLACEHOLDER_DEPENDENCY_INDEX;
+
+/**
+ * Feed recorded config changes into ConfigurationChangedEventHandler, with no file system involved.
+ * Changed values are put into a property source with highest precedence, removed keys are taken out of it,
+ * so removed keys fall back to values of the other property sources.
+ * <p>
+ * eg:
+ * ConfigChangeTraceReplayer replayer = new ConfigChangeTraceReplayer(env, context.getBean(ConfigurationChangedEventHandler.class));
+ * List{@literal <}ReloadRecord{@literal >} records = replayer.replay(ConfigChangeTrace.read(traceFile), 10);
+ * replayer.reset();
+ *
+ * @author Code2Life
+ * @see ConfigChangeTrace
+ */
+@Slf4j
+public class ConfigChangeTraceReplayer {
+
+    static final String REPLAY_PROPERTY_SOURCE_NAME = "dynamicConfigReplay";
+
+    private final ConfigurableEnvironment env;
+    private final ConfigurationChangedEventHandler handler;
+    private final Map<String, Object> replayProps = new ConcurrentHashMap<>(16);
+    private final Set<String> replayedKeys = ConcurrentHashMap.newKeySet();
+
+    public ConfigChangeTraceReplayer(ConfigurableEnvironment env, ConfigurationChangedEventHandler handler) {
+        this.env = env;
+        this.handler = handler;
+    }
+
+    /**
+     * Replay entries in order
+     *
+     * @param entries recorded entries
+     * @param speed   1 for original speed, greater for accelerated, 0 or negative to replay without waiting
+     * @return bind statistics of each entry, in nanoseconds
+     * @throws InterruptedException if interrupted while waiting for the next entry
+     */
+    public List<ReloadRecord> replay(List<ConfigChangeTrace.Entry> entries, double speed) throws InterruptedException {
+        installReplayPropertySource();
+        List<ReloadRecord> result = new ArrayList<>(entries.size());
+        long previousTimestamp = -1;
+        for (ConfigChangeTrace.Entry entry : entries) {
+            if (speed > 0 && previousTimestamp > 0) {
+                long waitMillis = (long) ((entry.getTimestamp() - previousTimestamp) / speed);
+                if (waitMillis > 0) {
+                    Thread.sleep(waitMillis);
+                }
+            }
+            previousTimestamp = entry.getTimestamp();
+            result.add(replayEntry(entry));
+        }
+        return result;
+    }
+
+    /**
+     * Remove replayed values from Environment, cached values and placeholder dependencies of replayed keys
+     * are restored as well, values of bound beans are not restored
+     */
+    public void reset() {
+        MutablePropertySources propertySources = env.getPropertySources();
+        propertySources.remove(REPLAY_PROPERTY_SOURCE_NAME);
+        replayProps.clear();
+        PLACEHOLDER_DEPENDENCY_INDEX.rebuild(propertySources);
+        CachedPropertySource cache = CachedPropertySource.find(env);
+        if (cache != null) {
+            cache.invalidate(replayedKeys);
+        }
+        replayedKeys.clear();
+    }
+
+    private ReloadRecord replayEntry(ConfigChangeTrace.Entry entry) {
+        ReloadRecord record = new ReloadRecord(REPLAY_PROPERTY_SOURCE_NAME, entry.getPath());
+        record.setReadNanos(entry.getReadNanos());
+        record.setParseNanos(entry.getParseNanos());
+        record.setDiffNanos(entry.getDiffNanos());
+        MapPropertySource previous = new MapPropertySource(REPLAY_PROPERTY_SOURCE_NAME, new HashMap<>(replayProps));
+        Map<String, Object> diff = new HashMap<>(entry.getDiff());
+        replayedKeys.addAll(diff.keySet());
+        diff.forEach((key, value) -> {
+            if (value == null) {
+                replayProps.remove(key);
+            } else {
+                replayProps.put(key, value);
+            }
+        });
+        PLACEHOLDER_DEPENDENCY_INDEX.refresh(diff.keySet(), env.getPropertySources());
+        CachedPropertySource cache = CachedPropertySource.find(env);
+        if (cache != null) {
+            cache.invalidate(diff.keySet());
+        }
+        MapPropertySource current = new MapPropertySource(REPLAY_PROPERTY_SOURCE_NAME, new HashMap<>(replayProps));
+        ConfigurationChangedEvent event = new ConfigurationChangedEvent(entry.getPath(), previous, current, diff);
+        event.setReloadRecord(record);
+        long begin = System.nanoTime();
+        handler.handleEvent(event);
+        record.setBindNanos(System.nanoTime() - begin);
+        record.setDiffSize(diff.size());
+        record.setEvents(1);
+        record.setOutcome(ReloadRecord.Outcome.APPLIED);
+        record.setFinishedAt(System.currentTimeMillis());
+        log.debug("replayed config changes of {}, keys: {}", entry.getPath(), diff.size());
+        return record;
+    }
+
+    private void installReplayPropertySource() {
+        MutablePropertySources propertySources = env.getPropertySources();
+        if (propertySources.contains(REPLAY_PROPERTY_SOURCE_NAME)) {
+            return;
+        }
+        MapPropertySource replaySource = new MapPropertySource(REPLAY_PROPERTY_SOURCE_NAME, replayProps);
+        // keep the cache on top, so that replayed values are cached and invalidated as well
+        if (propertySources.contains(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME)) {
+            propertySources.addAfter(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME, replaySource);
+        } else {
+            propertySources.addFirst(replaySource);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package top.code2life.config;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Version manifest written by deploy tooling next to config files, watched instead of the files themselves.
+ * Only files whose hash is changed are read again, other files are never read or stat-ed.
+ * <p>
+ * The format is compatible with the output of sha256sum, plus an optional version line,
+ * hashes are compared as opaque strings, paths are relative to the directory of the manifest:
+ * <pre>
+ * version 2024-06-01.3
+ * 9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08  application.yml
+ * 60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752  secrets/db-password
+ * </pre>
+ *
+ * @author Code2Life
+ * @see FileSystemConfigChangeSource
+ */
+@Getter
+class ConfigManifest {
+
+    static final String MANIFEST_FILE_PROPERTY = "dynamic-config.manifest.file-name";
+    static final String MANIFEST_POLL_INTERVAL_PROPERTY = "dynamic-config.manifest.poll-interval";
+    static final long DEFAULT_POLL_INTERVAL = 5000;
+
+    private static final String VERSION_PREFIX = "version ";
+
+    /**
+     * Version of the manifest, null if not specified, then hashes are always compared
+     */
+    private final String version;
+
+    /**
+     * Relative path to hash
+     */
+    private final Map<String, String> hashes;
+
+    private final long modifiedTime;
+
+    private final long size;
+
+    ConfigManifest(String version, Map<String, String> hashes, long modifiedTime, long size) {
+        this.version = version;
+        this.hashes = hashes;
+        this.modifiedTime = modifiedTime;
+        this.size = size;
+    }
+
+    static ConfigManifest read(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        return parse(lines, attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    static ConfigManifest parse(List<String> lines, long modifiedTime, long size) {
+        String version = null;
+        Map<String, String> hashes = new LinkedHashMap<>(lines.size() * 2);
+        for (String rawLine : lines) {
+            String line = rawLine.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith(VERSION_PREFIX)) {
+                version = line.substring(VERSION_PREFIX.length()).trim();
+                continue;
+            }
+            String[] parts = line.split("\\s+", 2);
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("invalid manifest line, expected '<hash> <path>': " + line);
+            }
+            // sha256sum marks binary mode by '*' before the path
+            String path = parts[1].startsWith("*") ? parts[1].substring(1) : parts[1];
+            hashes.put(path, parts[0]);
+        }
+        return new ConfigManifest(version, Collections.unmodifiableMap(hashes), modifiedTime, size);
+    }
+
+    /**
+     * @return true if the manifest file is not touched since this one is read, so that it needs not to be parsed again
+     */
+    boolean isSameFile(long modifiedTime, long size) {
+        return this.modifiedTime == modifiedTime && this.size == size;
+    }
+
+    /**
+     * Files to be read again when this manifest replaces the previous one,
+     * nothing changes if both manifests have the same version
+     *
+     * @return relative paths of files whose hash is changed or newly added, in manifest order
+     */
+    List<String> changedFiles(ConfigManifest previous) {
+        if (version != null && version.equals(previous.version)) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(4);
+        hashes.forEach((path, hash) -> {
+            if (!hash.equals(previous.hashes.get(path))) {
+                result.add(path);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,20 @@
+package top.code2life.config;
+
+/**
+ * Observer of the configuration reload pipeline, any bean implementing this interface
+ * will be notified after each config file reload, whether or not values are changed.
+ * Callbacks are invoked on the config watcher thread, implementations should return quickly.
+ *
+ * @author Code2Life
+ * @see ReloadRecord
+ */
+public interface ConfigReloadObserver {
+
+    /**
+     * Called when a config file reload is finished
+     *
+     * @param record stage timings and statistics of the reload
+     */
+    default void onReloadCompleted(ReloadRecord record) {
+    }
+}
@@ -0,0 +1,33 @@
+package top.code2life.config;
+
+/**
+ * Fine-grained tracing hooks of the reload pipeline, invoked inline on each stage.
+ * Callers check {@link #isEnabled()} before measuring, so the default no-op tracer costs nothing.
+ *
+ * @author Code2Life
+ * @see JfrConfigReloadTracer
+ */
+interface ConfigReloadTracer {
+
+    ConfigReloadTracer NOOP = new ConfigReloadTracer() {
+    };
+
+    default boolean isEnabled() {
+        return false;
+    }
+
+    default void fileChanged(String target, String path) {
+    }
+
+    default void parsed(String path, long bytes, long nanos) {
+    }
+
+    default void diffComputed(String path, int changedKeys, int removedKeys, long nanos) {
+    }
+
+    default void fieldBound(String key, String beanName, String fieldName, long nanos) {
+    }
+
+    default void propertiesRebound(String beanName, String prefix, long nanos) {
+    }
+}
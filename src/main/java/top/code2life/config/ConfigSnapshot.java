@@ -0,0 +1,240 @@
+package top.code2life.config;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.core.env.PropertySource;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static top.code2life.config.ConfigurationUtils.normalizePropKey;
+
+/**
+ * Immutable view of all resolved properties at one config epoch, keys are normalized into kebab case.
+ * A new snapshot is published by {@link DynamicConfigPropertiesWatcher} on each applied change,
+ * pin one snapshot for a whole request to read many keys consistently, without any lock:
+ * <pre>
+ * ConfigSnapshot snapshot = watcher.getSnapshot();
+ * int limit = snapshot.get("rate-limit", Integer.class, 100);
+ * </pre>
+ * Snapshots share their content: the next epoch only adds a layer of changed values on top of the layers
+ * of the previous one, so publishing costs O(changed keys) rather than copying all properties.
+ * Small layers are merged into the one below them, lookups walk at most a logarithmic number of layers.
+ *
+ * @author Code2Life
+ * @see DynamicConfigPropertiesWatcher#getSnapshot()
+ */
+public final class ConfigSnapshot {
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(0L, new Layer(Collections.emptyMap(), null), 0);
+
+    /**
+     * Marks a key removed in an upper layer, hiding values of the layers below
+     */
+    private static final Object REMOVED = new Object();
+
+    private final long epoch;
+    private final long timestamp;
+    private final Layer top;
+    private final int size;
+    private volatile Map<String, Object> view;
+
+    private ConfigSnapshot(long epoch, Layer top, int size) {
+        this.epoch = epoch;
+        this.timestamp = System.currentTimeMillis();
+        this.top = top;
+        this.size = size;
+    }
+
+    /**
+     * Build the initial snapshot from enumerable property sources, the first source containing a key wins,
+     * placeholders in string values are resolved by the resolver, unresolvable placeholders are kept as is
+     *
+     * @param propertySources property sources in precedence order
+     * @param resolver        resolver of placeholders, normally the Environment
+     * @return snapshot of epoch 0
+     */
+    static ConfigSnapshot of(Iterable<PropertySource<?>> propertySources, PropertyResolver resolver) {
+        Map<String, Object> values = new HashMap<>(256);
+        for (PropertySource<?> ps : propertySources) {
+            if (!(ps instanceof EnumerablePropertySource)) {
+                continue;
+            }
+            for (String name : ((EnumerablePropertySource<?>) ps).getPropertyNames()) {
+                String key = normalizePropKey(name);
+                if (values.containsKey(key)) {
+                    continue;
+                }
+                Object value = ps.getProperty(name);
+                if (value instanceof String) {
+                    value = resolver.resolvePlaceholders((String) value);
+                }
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        return new ConfigSnapshot(0L, new Layer(values, null), values.size());
+    }
+
+    /**
+     * Derive the next epoch from this snapshot with changed values, layers of this snapshot are shared, not modified
+     *
+     * @param changes resolved values of changed keys, null means the key is removed
+     * @return snapshot of the next epoch
+     */
+    ConfigSnapshot next(Map<String, Object> changes) {
+        Map<String, Object> changed = new HashMap<>(changes.size() * 2);
+        changes.forEach((k, v) -> changed.put(normalizePropKey(k), v == null ? REMOVED : v));
+        int nextSize = size;
+        for (Map.Entry<String, Object> entry : changed.entrySet()) {
+            boolean existed = lookup(entry.getKey()) != null;
+            boolean exists = entry.getValue() != REMOVED;
+            nextSize += (exists ? 1 : 0) - (existed ? 1 : 0);
+        }
+        // merge layers not larger than twice of the changes, sizes at least double downwards, depth stays logarithmic
+        Map<String, Object> delta = changed;
+        Layer below = top;
+        while (below.below != null && below.values.size() <= delta.size() * 2) {
+            Map<String, Object> merged = new HashMap<>(below.values);
+            merged.putAll(delta);
+            delta = merged;
+            below = below.below;
+        }
+        if (below.below == null && below.values.size() <= delta.size() * 2) {
+            // changes are comparable with all properties, flatten into a new bottom layer
+            Map<String, Object> flattened = new HashMap<>(below.values);
+            apply(flattened, delta);
+            return new ConfigSnapshot(epoch + 1, new Layer(flattened, null), nextSize);
+        }
+        return new ConfigSnapshot(epoch + 1, new Layer(delta, below), nextSize);
+    }
+
+    /**
+     * @return config epoch, increased by one on each applied change, 0 for the content loaded at startup
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return epoch millis when this snapshot is published
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key property key, kebab case or camel case
+     * @return resolved value, null if the key does not exist
+     */
+    public Object get(String key) {
+        Object value = lookup(key);
+        if (value == null) {
+            value = lookup(normalizePropKey(key));
+        }
+        return value;
+    }
+
+    private Object lookup(String key) {
+        for (Layer layer = top; layer != null; layer = layer.below) {
+            Object value = layer.values.get(key);
+            if (value != null) {
+                return value == REMOVED ? null : value;
+            }
+        }
+        return null;
+    }
+
+    public String getString(String key) {
+        Object value = get(key);
+        return value == null ? null : value.toString();
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = getString(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param key  property key, kebab case or camel case
+     * @param type target type, converted by the default ConversionService
+     * @return converted value, null if the key does not exist
+     */
+    public <T> T get(String key, Class<T> type) {
+        Object value = get(key);
+        if (value == null) {
+            return null;
+        }
+        ConversionService conversionService = DefaultConversionService.getSharedInstance();
+        return conversionService.convert(value, type);
+    }
+
+    public <T> T get(String key, Class<T> type, T defaultValue) {
+        T value = get(key, type);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @return all resolved values of this epoch, unmodifiable, layers are flattened on the first call
+     */
+    public Map<String, Object> asMap() {
+        Map<String, Object> values = view;
+        if (values == null) {
+            values = Collections.unmodifiableMap(flatten());
+            view = values;
+        }
+        return values;
+    }
+
+    private Map<String, Object> flatten() {
+        if (top.below == null) {
+            return top.values;
+        }
+        Deque<Layer> layers = new ArrayDeque<>();
+        for (Layer layer = top; layer != null; layer = layer.below) {
+            layers.push(layer);
+        }
+        Map<String, Object> values = new HashMap<>(layers.pop().values);
+        layers.forEach(layer -> apply(values, layer.values));
+        return values;
+    }
+
+    private static void apply(Map<String, Object> values, Map<String, Object> delta) {
+        delta.forEach((key, value) -> {
+            if (value == REMOVED) {
+                values.remove(key);
+            } else {
+                values.put(key, value);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigSnapshot{epoch=" + epoch + ", keys=" + size + "}";
+    }
+
+    /**
+     * Immutable values of one layer, the bottom layer holds all values, upper layers hold changed values only
+     */
+    private static final class Layer {
+
+        private final Map<String, Object> values;
+        private final Layer below;
+
+        private Layer(Map<String, Object> values, Layer below) {
+            this.values = values;
+            this.below = below;
+        }
+    }
+}
@@ -72,8 +72,9 @@ public class ConfigTreeEnvironmentPostProcessor implements EnvironmentPostProces
                             FileSystemResource resource = new FileSystemResource(path);
                             String propertySourceName = String.format(ADDITIONAL_PROPERTY_TEMPLATE, path);
                             List<PropertySource<?>> newPropsList = loader.load(propertySourceName, resource);
-                            if (newPropsList.size() > 0) {
-                                PropertySource<?> ps = addConfigPropPrefix((OriginTrackedMapPropertySource) newPropsList.get(0), prefix);
+                            // every document of multi-document files is added, named with the document index
+                            for (int i = 0; i < newPropsList.size(); i++) {
+                                PropertySource<?> ps = addConfigPropPrefix((OriginTrackedMapPropertySource) newPropsList.get(i), prefix);
                                 propertySources.addLast(ps);
                             }
                             break;
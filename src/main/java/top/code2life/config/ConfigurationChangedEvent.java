@@ -1,5 +1,6 @@
 package top.code2life.config;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -7,9 +8,7 @@ import org.springframework.boot.origin.OriginTrackedValue;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.core.env.PropertySource;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 
 /**
  * Application event that represents configuration file has been changed
@@ -42,6 +41,27 @@ public class ConfigurationChangedEvent extends ApplicationEvent {
      */
     private Map<String, Object> diff;
 
+    /**
+     * Config epoch published with this change, see {@link ConfigSnapshot#getEpoch()},
+     * 0 if the event is not published by the config file watcher
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private long epoch;
+
+    /**
+     * Keys whose fields have been bound on the priority lane before this event
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private transient Set<String> priorityKeys = Collections.emptySet();
+
+    /**
+     * Statistics of the reload which produced this event, null if the event is not from config file reloading
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private transient ReloadRecord reloadRecord;
+
     ConfigurationChangedEvent(String path, PropertySource<?> previous, PropertySource<?> current, Map<String, Object> diff) {
         super(path);
         this.path = path;
@@ -61,6 +81,20 @@ public class ConfigurationChangedEvent extends ApplicationEvent {
         return diff;
     }
 
+    /**
+     * Diff of given keys only, for patches whose changed keys are known
+     */
+    static Map<String, Object> getPropertyDiff(Map<Object, OriginTrackedValue> prev, Map<Object, OriginTrackedValue> current, Set<String> keys) {
+        Map<String, Object> diff = new HashMap<>(keys.size() * 2);
+        for (String key : keys) {
+            OriginTrackedValue v = current.get(key);
+            if (!Objects.equals(v, prev.get(key))) {
+                diff.put(key, v == null ? null : v.getValue());
+            }
+        }
+        return diff;
+    }
+
     private static void filterAddOrUpdatedKeys(Map<Object, OriginTrackedValue> prev, Map<Object, OriginTrackedValue> current, Map<String, Object> diff) {
         for (Map.Entry<Object, OriginTrackedValue> entry : current.entrySet()) {
             Object k = entry.getKey();
@@ -17,13 +17,16 @@ import org.springframework.core.annotation.Order;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static top.code2life.config.ConfigurationUtils.*;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.CONFIG_CHANGE_LISTENER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_CONFIG_PROPS_BINDER_MAP;
 import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_FIELD_BINDER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.RELOAD_TRACER;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PLACEHOLDER_DEPENDENCY_INDEX;
 
 /**
  * @author Code2Life
@@ -39,6 +42,7 @@ public class ConfigurationChangedEventHandler {
     private final BeanExpressionContext exprContext;
     private final ConfigurationPropertiesBindingPostProcessor processor;
     private final ConfigurableListableBeanFactory beanFactory;
+    private final Object priorityLock = new Object();
 
     ConfigurationChangedEventHandler(ApplicationContext applicationContext, BeanFactory beanFactory,
                                      ApplicationEventPublisher eventPublisher) {
@@ -64,44 +68,147 @@ public class ConfigurationChangedEventHandler {
         try {
             Map<String, Object> diff = event.getDiff();
             Map<String, ValueBeanFieldBinder> toRefreshProps = new HashMap<>(4);
-            for (Map.Entry<String, Object> entry : diff.entrySet()) {
-                String key = entry.getKey();
-                processConfigPropsClass(toRefreshProps, key);
-                processValueField(key, entry.getValue());
-            }
+            // fields and ConfigurationProperties beans of high priority keys have been bound on the priority lane
+            int updatedFields = bindValueFields(diff, event.getPriorityKeys(), toRefreshProps);
             rebindRelatedConfigurationPropsBeans(diff, toRefreshProps);
+            int notifiedListeners = dispatchConfigChangeListeners(event, diff);
+            ReloadRecord record = event.getReloadRecord();
+            if (record != null) {
+                record.setUpdatedFields(record.getUpdatedFields() + updatedFields);
+                record.setReboundBeans(record.getReboundBeans() + toRefreshProps.size());
+                record.setNotifiedListeners(record.getNotifiedListeners() + notifiedListeners);
+            }
             log.info("config changes of {} have been processed", event.getSource());
         } catch (Exception ex) {
             log.warn("config changes of {} can not be processed, error:", event.getSource(), ex);
         }
     }
 
+    /**
+     * Bind high priority changes ahead of other changes, it doesn't wait for the event being processed by {@link #handleEvent}
+     *
+     * @param event changes of high priority keys
+     */
+    @EventListener(PriorityConfigurationChangedEvent.class)
+    public void handlePriorityEvent(PriorityConfigurationChangedEvent event) {
+        synchronized (priorityLock) {
+            try {
+                Map<String, Object> diff = event.getDiff();
+                Map<String, ValueBeanFieldBinder> toRefreshProps = new HashMap<>(2);
+                int updatedFields = bindValueFields(diff, Collections.emptySet(), toRefreshProps);
+                rebindRelatedConfigurationPropsBeans(diff, toRefreshProps);
+                log.info("high priority config changes of {} have been processed, {} fields updated", event.getSource(), updatedFields);
+            } catch (Exception ex) {
+                log.warn("high priority config changes of {} can not be processed, error:", event.getSource(), ex);
+            }
+        }
+    }
+
+    private int bindValueFields(Map<String, Object> diff, Set<String> skippedKeys, Map<String, ValueBeanFieldBinder> toRefreshProps) throws IllegalAccessException {
+        int updatedFields = 0;
+        for (Map.Entry<String, Object> entry : diff.entrySet()) {
+            String key = entry.getKey();
+            if (!skippedKeys.contains(key)) {
+                processConfigPropsClass(toRefreshProps, key);
+                updatedFields += processValueField(key, entry.getValue(), false);
+            }
+        }
+        // keys referencing changed keys by placeholders, values need to be resolved again
+        Set<String> dependentKeys = PLACEHOLDER_DEPENDENCY_INDEX.findDependents(diff.keySet());
+        for (String key : dependentKeys) {
+            log.debug("placeholder of key {} refers to changed properties, refresh it", key);
+            processConfigPropsClass(toRefreshProps, key);
+            updatedFields += processValueField(key, null, true);
+        }
+        return updatedFields;
+    }
+
     private void processConfigPropsClass(Map<String, ValueBeanFieldBinder> result, String key) {
-        DynamicConfigBeanPostProcessor.DYNAMIC_CONFIG_PROPS_BINDER_MAP.forEach((prefix, binder) -> {
-            if (StringUtils.startsWithIgnoreCase(normalizePropKey(key), prefix)) {
+        if (DYNAMIC_CONFIG_PROPS_BINDER_MAP.isEmpty()) {
+            return;
+        }
+        forEachParentPath(normalizePropKey(key), prefix -> {
+            ValueBeanFieldBinder binder = DYNAMIC_CONFIG_PROPS_BINDER_MAP.get(prefix);
+            if (binder != null) {
                 log.debug("prefix matched for ConfigurationProperties bean: {}, prefix: {}", binder.getBeanName(), prefix);
                 result.put(binder.getBeanName(), binder);
             }
         });
     }
 
-    private void processValueField(String keyRaw, Object val) throws IllegalAccessException {
+    /**
+     * Invoke @OnConfigChange methods whose prefix matches changed keys, each listener is invoked once with its slice of the diff
+     */
+    private int dispatchConfigChangeListeners(ConfigurationChangedEvent event, Map<String, Object> diff) {
+        if (CONFIG_CHANGE_LISTENER_MAP.isEmpty()) {
+            return 0;
+        }
+        Map<ConfigChangeListenerMethod, Map<String, Object>> slices = new LinkedHashMap<>(4);
+        List<ConfigChangeListenerMethod> rootListeners = CONFIG_CHANGE_LISTENER_MAP.get("");
+        for (Map.Entry<String, Object> entry : diff.entrySet()) {
+            if (rootListeners != null) {
+                addToSlices(slices, rootListeners, entry);
+            }
+            forEachParentPath(normalizePropKey(entry.getKey()), prefix -> {
+                List<ConfigChangeListenerMethod> listeners = CONFIG_CHANGE_LISTENER_MAP.get(prefix);
+                if (listeners != null) {
+                    addToSlices(slices, listeners, entry);
+                }
+            });
+        }
+        int notified = 0;
+        for (Map.Entry<ConfigChangeListenerMethod, Map<String, Object>> entry : slices.entrySet()) {
+            ConfigChangeListenerMethod listener = entry.getKey();
+            Object bean = listener.getBeanRef().get();
+            if (bean == null) {
+                CONFIG_CHANGE_LISTENER_MAP.get(listener.getPrefix()).remove(listener);
+                continue;
+            }
+            try {
+                listener.invoke(bean, Collections.unmodifiableMap(entry.getValue()), event);
+                notified++;
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof InvocationTargetException ? ex.getCause() : ex;
+                log.warn("config change listener {} of bean {} failed, error:", listener.getMethod().getName(), listener.getBeanName(), cause);
+            }
+        }
+        return notified;
+    }
+
+    private void addToSlices(Map<ConfigChangeListenerMethod, Map<String, Object>> slices, List<ConfigChangeListenerMethod> listeners,
+                             Map.Entry<String, Object> entry) {
+        for (ConfigChangeListenerMethod listener : listeners) {
+            slices.computeIfAbsent(listener, k -> new HashMap<>(4)).put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private int processValueField(String keyRaw, Object val, boolean resolveFromExpr) throws IllegalAccessException {
         String key = normalizePropKey(keyRaw);
         if (!DYNAMIC_FIELD_BINDER_MAP.containsKey(key)) {
             log.debug("no bound field of changed property found, skip dynamic config processing of key: {}", keyRaw);
-            return;
+            return 0;
         }
+        int updated = 0;
+        ConfigReloadTracer tracer = RELOAD_TRACER;
         List<ValueBeanFieldBinder> valueFieldBinders = DYNAMIC_FIELD_BINDER_MAP.get(key);
-        for (ValueBeanFieldBinder binder : valueFieldBinders) {
+        // binders only hold weak references, drop the ones whose bean has been collected
+        valueFieldBinders.removeIf(binder -> binder.getBeanRef().get() == null);
+        for (ValueBeanFieldBinder binder : new ArrayList<>(valueFieldBinders)) {
             Object bean = binder.getBeanRef().get();
             if (bean == null) {
                 continue;
             }
-            convertAndBindFieldValue(val, binder, bean);
+            long begin = tracer.isEnabled() ? System.nanoTime() : 0L;
+            convertAndBindFieldValue(val, binder, bean, resolveFromExpr || hasPlaceholder(val));
+            if (tracer.isEnabled()) {
+                tracer.fieldBound(keyRaw, binder.getBeanName(), binder.getDynamicField().getName(), System.nanoTime() - begin);
+            }
+            updated++;
         }
+        return updated;
     }
 
-    private void convertAndBindFieldValue(Object val, ValueBeanFieldBinder binder, Object bean) throws IllegalAccessException {
+    private void convertAndBindFieldValue(Object val, ValueBeanFieldBinder binder, Object bean, boolean resolveFromExpr) throws IllegalAccessException {
         Field field = binder.getDynamicField();
         field.setAccessible(true);
         String expr = binder.getExpr();
@@ -109,6 +216,8 @@ public class ConfigurationChangedEventHandler {
         if (expr.startsWith(SP_EL_PREFIX)) {
             Object evaluatedVal = exprResolver.evaluate(newExpr, exprContext);
             field.set(bean, convertIfNecessary(field, evaluatedVal));
+        } else if (resolveFromExpr) {
+            field.set(bean, convertIfNecessary(field, newExpr));
         } else {
             field.set(bean, convertIfNecessary(field, val));
         }
@@ -117,18 +226,31 @@ public class ConfigurationChangedEventHandler {
         }
     }
 
+    private boolean hasPlaceholder(Object val) {
+        return val instanceof String && ((String) val).contains(VALUE_EXPR_PREFIX + "{");
+    }
+
     private void rebindRelatedConfigurationPropsBeans(Map<String, Object> diff, Map<String, ValueBeanFieldBinder> toRefreshProps) throws IllegalAccessException {
+        ConfigReloadTracer tracer = RELOAD_TRACER;
         for (Map.Entry<String, ValueBeanFieldBinder> entry : toRefreshProps.entrySet()) {
             String beanName = entry.getKey();
             ValueBeanFieldBinder binder = entry.getValue();
             Object bean = binder.getBeanRef().get();
-            if (bean != null) {
+            if (bean == null) {
+                continue;
+            }
+            long begin = tracer.isEnabled() ? System.nanoTime() : 0L;
+            // the same bean could be rebound by the priority lane and the normal lane at the same time
+            synchronized (binder) {
                 processor.postProcessBeforeInitialization(bean, beanName);
                 // AggregateBinder - MapBinder will merge properties while binding
                 // need to check deleted keys and remove from map fields
                 removeMissingPropsMapFields(diff, bean, binder.getExpr());
-                log.debug("changes detected, re-bind ConfigurationProperties bean: {}", beanName);
             }
+            if (tracer.isEnabled()) {
+                tracer.propertiesRebound(beanName, binder.getExpr(), System.nanoTime() - begin);
+            }
+            log.debug("changes detected, re-bind ConfigurationProperties bean: {}", beanName);
         }
     }
 
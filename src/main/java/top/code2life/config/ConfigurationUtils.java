@@ -3,21 +3,27 @@ package top.code2life.config;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.boot.env.OriginTrackedMapPropertySource;
+import org.springframework.boot.origin.OriginTrackedValue;
 import org.springframework.core.env.PropertySource;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
 
@@ -33,7 +39,14 @@ public class ConfigurationUtils {
     static final String CONFIG_TREE_PREFIX = "configtree:";
     static final String CONFIG_FILE_PREFIX = "file:";
 
-    private static final int MAX_DEPTH = 3;
+    /**
+     * The property source attached by Spring Boot, which resolves relaxed names through all property sources
+     */
+    static final String ATTACHED_PROPERTY_SOURCE_NAME = "configurationProperties";
+
+    static final int MAX_DEPTH = 3;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
     private static final Pattern VALUE_PATTERN = Pattern.compile("\\$\\{([^:}]+):?([^}]*)}");
     private static final Pattern CAMEL_CASE_PATTERN = Pattern.compile("([^A-Z-])([A-Z])");
     private static final Set<String> VALID_EXTENSION = new HashSet<String>() {
@@ -44,7 +57,7 @@ public class ConfigurationUtils {
             add("properties");
         }
     };
-    private static final Map<Path, List<Path>> CONFIG_TREE_CACHE = new HashMap<>(4);
+    private static final Map<Path, List<Path>> CONFIG_TREE_CACHE = new ConcurrentHashMap<>(4);
 
     static List<String> extractValueFromExpr(String valueExpr) {
         List<String> keys = new ArrayList<>(2);
@@ -60,6 +73,21 @@ public class ConfigurationUtils {
         return keys;
     }
 
+    /**
+     * Look up each parent path of the key and the key itself, instead of matching the key against all prefixes
+     *
+     * @param normalizedKey key in kebab case
+     * @param consumer      called with 'a', 'a.b', 'a.b[0]', 'a.b[0].c' for key 'a.b[0].c'
+     */
+    static void forEachParentPath(String normalizedKey, Consumer<String> consumer) {
+        for (int i = 1; i <= normalizedKey.length(); i++) {
+            boolean onBoundary = i == normalizedKey.length() || normalizedKey.charAt(i) == '.' || normalizedKey.charAt(i) == '[';
+            if (onBoundary) {
+                consumer.accept(normalizedKey.substring(0, i));
+            }
+        }
+    }
+
     /**
      * Convert camelCase or snake_case key into kebab-case
      *
@@ -197,20 +225,35 @@ public class ConfigurationUtils {
     }
 
     static List<Path> findAllPropertyFilesInTree(Path sourceDirectory) {
-        List<Path> configTreePaths = new ArrayList<>();
-        if (!CONFIG_TREE_CACHE.containsKey(sourceDirectory)) {
-            try {
-                configTreePaths = Files.find(sourceDirectory, MAX_DEPTH, ConfigurationUtils::isPropertyFile, FileVisitOption.FOLLOW_LINKS).collect(Collectors.toList());
-            } catch (IOException e) {
-                log.error("can not find property sources for dynamic config: {}", sourceDirectory, e);
+        List<Path> configTreePaths = CONFIG_TREE_CACHE.get(sourceDirectory);
+        if (configTreePaths == null) {
+            configTreePaths = scanPropertyFilesInTree(sourceDirectory, MAX_DEPTH);
+            if (configTreePaths == null) {
+                configTreePaths = new ArrayList<>();
+                CONFIG_TREE_CACHE.put(sourceDirectory, configTreePaths);
             }
-            CONFIG_TREE_CACHE.put(sourceDirectory, configTreePaths);
-        } else {
-            configTreePaths = CONFIG_TREE_CACHE.get(sourceDirectory);
         }
         return configTreePaths;
     }
 
+    /**
+     * Scan property files in a config tree again, and refresh the cached result of the tree
+     *
+     * @param maxDepth max depth of files, children of the source directory are depth 1
+     * @return property files, null if the tree can not be scanned
+     */
+    static List<Path> scanPropertyFilesInTree(Path sourceDirectory, int maxDepth) {
+        List<Path> configTreePaths;
+        try (Stream<Path> paths = Files.find(sourceDirectory, maxDepth, ConfigurationUtils::isPropertyFile, FileVisitOption.FOLLOW_LINKS)) {
+            configTreePaths = paths.collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("can not scan property sources in config tree: {}, {}", sourceDirectory, e.getMessage());
+            return null;
+        }
+        CONFIG_TREE_CACHE.put(sourceDirectory, configTreePaths);
+        return configTreePaths;
+    }
+
     static PropertySource<?> addConfigPropPrefix(OriginTrackedMapPropertySource prop, String prefix) {
         Map<String, Object> src = prop.getSource();
         Map<String, Object> map = new HashMap<>(src.size());
@@ -220,6 +263,38 @@ public class ConfigurationUtils {
         return new OriginTrackedMapPropertySource(prop.getName(), map, true);
     }
 
+    /**
+     * 64-bit FNV-1a hash of all keys and values, to tell whether a document changed without diffing it
+     *
+     * @param ps property source backed by a map
+     * @return fingerprint of the content, 0 if the property source is not backed by a map
+     */
+    static long fingerprint(PropertySource<?> ps) {
+        if (!(ps.getSource() instanceof Map)) {
+            return 0L;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) ps.getSource()).entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof OriginTrackedValue) {
+                value = ((OriginTrackedValue) value).getValue();
+            }
+            hash = fnvHash(hash, String.valueOf(entry.getKey()));
+            hash = fnvHash(hash, "=");
+            hash = fnvHash(hash, String.valueOf(value));
+            hash = fnvHash(hash, "\n");
+        }
+        return hash;
+    }
+
+    private static long fnvHash(long hash, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
     static boolean isPropertyFile(Path path, BasicFileAttributes attributes) {
         String extension = ConfigurationUtils.getFileExtension(path.toString());
         return !hasHiddenPathElement(path) &&
@@ -293,9 +368,10 @@ public class ConfigurationUtils {
         FileSystemWatchTarget finalTarget = new FileSystemWatchTarget(type, target);
         finalTarget.setRootDir(rootDir);
         if (filterFiles != null) {
+            // config tree files could be added or removed at runtime
             finalTarget.setFilterFiles(filterFiles.stream()
                     .map(p -> trimRelativePathAndReplaceBackSlash(p.getFileName().toString()))
-                    .collect(Collectors.toList()));
+                    .collect(Collectors.toCollection(CopyOnWriteArrayList::new)));
         }
         String dirKey = finalTarget.getNormalizedDir();
         if (WATCHABLE_TARGETS.containsKey(dirKey)) {
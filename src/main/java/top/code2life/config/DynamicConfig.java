@@ -28,6 +28,9 @@ import java.lang.annotation.*;
  * start your application on none-local environments, or -Dspring.config.location before '-jar',
  * if this parameter set, file watch will be started to monitor properties/yml changes.
  *
+ * Emergency switches could be declared as high priority by {@literal @}DynamicConfig(highPriority = true),
+ * their changes are bound on a dedicated lane, ahead of other changes being processed.
+ *
  * @author Code2Life
  * @see DynamicConfigPropertiesWatcher
  */
@@ -36,4 +39,10 @@ import java.lang.annotation.*;
 @Documented
 @Component
 public @interface DynamicConfig {
+
+    /**
+     * Bind changes of the annotated field, or all fields or the ConfigurationProperties prefix of the annotated class,
+     * on the priority lane, without waiting for other changes being bound
+     */
+    boolean highPriority() default false;
 }
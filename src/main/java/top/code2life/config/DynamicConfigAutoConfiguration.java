@@ -5,6 +5,9 @@ import org.springframework.context.annotation.Import;
 /**
  * @author Code2Life
  */
-@Import({DynamicConfigPropertiesWatcher.class, DynamicConfigBeanPostProcessor.class, FeatureGate.class, ConfigurationChangedEventHandler.class})
+@Import({DynamicConfigPropertiesWatcher.class, DynamicConfigBeanPostProcessor.class, FeatureGate.class, TenantConfig.class, ConfigurationChangedEventHandler.class,
+        DynamicConfigMetricsConfiguration.class, DynamicConfigEndpointConfiguration.class,
+        DynamicConfigJfrConfiguration.class, ConfigChangeTraceRecorder.class, DynamicConfigReactiveConfiguration.class,
+        SharedFlagWatcher.class, PushEndpointConfigChangeSource.class, ChangelogConfigChangeSource.class})
 public class DynamicConfigAutoConfiguration {
 }
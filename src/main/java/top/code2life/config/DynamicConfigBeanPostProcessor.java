@@ -1,18 +1,26 @@
 package top.code2life.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static top.code2life.config.ConfigurationUtils.SP_EL_PREFIX;
 import static top.code2life.config.ConfigurationUtils.VALUE_EXPR_PREFIX;
@@ -21,6 +29,7 @@ import static top.code2life.config.ConfigurationUtils.VALUE_EXPR_PREFIX;
  * PostProcessor for any bean which has annotation @DynamicConfig on its Class/Field,
  * The processor will maintain field accessor for @Value fields, listen ConfigurationChangedEvent,
  * If any event arrives, it will retrieve diff results of changed properties, evaluate SpEL and set field values.
+ * Methods annotated with @OnConfigChange on any bean are indexed by their prefixes.
  *
  * @author Code2Life
  */
@@ -30,10 +39,20 @@ public class DynamicConfigBeanPostProcessor implements BeanPostProcessor {
 
     static final Map<String, List<ValueBeanFieldBinder>> DYNAMIC_FIELD_BINDER_MAP = new ConcurrentHashMap<>(16);
     static final Map<String, ValueBeanFieldBinder> DYNAMIC_CONFIG_PROPS_BINDER_MAP = new ConcurrentHashMap<>(8);
+    static final Map<String, List<ConfigChangeListenerMethod>> CONFIG_CHANGE_LISTENER_MAP = new ConcurrentHashMap<>(8);
+    static final Set<String> PRIORITY_KEYS = ConcurrentHashMap.newKeySet();
+    static final Set<String> PRIORITY_PREFIXES = ConcurrentHashMap.newKeySet();
+    static final List<ConfigReloadObserver> RELOAD_OBSERVERS = new CopyOnWriteArrayList<>();
+    static volatile ConfigReloadTracer RELOAD_TRACER = ConfigReloadTracer.NOOP;
 
     DynamicConfigBeanPostProcessor() {
         DYNAMIC_FIELD_BINDER_MAP.clear();
         DYNAMIC_CONFIG_PROPS_BINDER_MAP.clear();
+        CONFIG_CHANGE_LISTENER_MAP.clear();
+        PRIORITY_KEYS.clear();
+        PRIORITY_PREFIXES.clear();
+        RELOAD_OBSERVERS.clear();
+        RELOAD_TRACER = ConfigReloadTracer.NOOP;
     }
 
     /**
@@ -45,7 +64,14 @@ public class DynamicConfigBeanPostProcessor implements BeanPostProcessor {
      */
     @Override
     public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof ConfigReloadObserver) {
+            RELOAD_OBSERVERS.add((ConfigReloadObserver) bean);
+        }
+        if (bean instanceof ConfigReloadTracer) {
+            RELOAD_TRACER = (ConfigReloadTracer) bean;
+        }
         handleDynamicBean(bean, beanName);
+        collectConfigChangeListeners(bean, beanName);
         return bean;
     }
 
@@ -74,8 +100,42 @@ public class DynamicConfigBeanPostProcessor implements BeanPostProcessor {
             prefix = properties.value();
         }
         prefix = ConfigurationUtils.normalizePropKey(prefix);
+        if (clazz.getAnnotation(DynamicConfig.class).highPriority()) {
+            PRIORITY_PREFIXES.add(prefix);
+        }
         ValueBeanFieldBinder binder = new ValueBeanFieldBinder(prefix, null, bean, beanName);
-        DYNAMIC_CONFIG_PROPS_BINDER_MAP.putIfAbsent(prefix, binder);
+        // replace the binder if its bean has been collected
+        DYNAMIC_CONFIG_PROPS_BINDER_MAP.compute(prefix, (k, existing) -> existing == null || existing.getBeanRef().get() == null ? binder : existing);
+    }
+
+    private boolean isHighPriority(Class<?> clazz, Field field) {
+        DynamicConfig fieldAnnotation = field.getAnnotation(DynamicConfig.class);
+        DynamicConfig clazzAnnotation = clazz.getAnnotation(DynamicConfig.class);
+        return (fieldAnnotation != null && fieldAnnotation.highPriority()) || (clazzAnnotation != null && clazzAnnotation.highPriority());
+    }
+
+    private void collectConfigChangeListeners(Object bean, String beanName) {
+        Class<?> clazz = ConfigurationUtils.getTargetClassOfBean(bean);
+        if (!AnnotationUtils.isCandidateClass(clazz, OnConfigChange.class)) {
+            return;
+        }
+        Map<Method, OnConfigChange> methods = MethodIntrospector.selectMethods(clazz,
+                (MethodIntrospector.MetadataLookup<OnConfigChange>) method -> AnnotatedElementUtils.findMergedAnnotation(method, OnConfigChange.class));
+        for (Map.Entry<Method, OnConfigChange> entry : methods.entrySet()) {
+            Method method = AopUtils.selectInvocableMethod(entry.getKey(), bean.getClass());
+            for (Class<?> type : method.getParameterTypes()) {
+                if (!Map.class.isAssignableFrom(type) && !ConfigurationChangedEvent.class.isAssignableFrom(type)) {
+                    throw new IllegalStateException("parameters of @OnConfigChange method could only be Map or ConfigurationChangedEvent: " + method);
+                }
+            }
+            ReflectionUtils.makeAccessible(method);
+            String prefix = entry.getValue().prefix();
+            prefix = StringUtils.hasText(prefix) ? ConfigurationUtils.normalizePropKey(prefix) : "";
+            List<ConfigChangeListenerMethod> listeners = CONFIG_CHANGE_LISTENER_MAP.computeIfAbsent(prefix, k -> new CopyOnWriteArrayList<>());
+            listeners.removeIf(listener -> listener.getBeanRef().get() == null);
+            listeners.add(new ConfigChangeListenerMethod(prefix, method, bean, beanName));
+            log.debug("config change listener found on class: {}, method: {}, prefix: {}", clazz.getName(), method.getName(), prefix);
+        }
     }
 
     private void collectionValueAnnotationMetadata(Object bean, String beanName, Class<?> clazz, Field field) {
@@ -84,11 +144,16 @@ public class DynamicConfigBeanPostProcessor implements BeanPostProcessor {
             return;
         }
         List<String> propKeyList = ConfigurationUtils.extractValueFromExpr(valueExpr);
+        if (isHighPriority(clazz, field)) {
+            PRIORITY_KEYS.addAll(propKeyList);
+        }
         for (String key : propKeyList) {
             if (!DYNAMIC_FIELD_BINDER_MAP.containsKey(key)) {
                 DYNAMIC_FIELD_BINDER_MAP.putIfAbsent(key, Collections.synchronizedList(new ArrayList<>(2)));
             }
-            DYNAMIC_FIELD_BINDER_MAP.get(key).add(new ValueBeanFieldBinder(valueExpr, field, bean, beanName));
+            List<ValueBeanFieldBinder> binders = DYNAMIC_FIELD_BINDER_MAP.get(key);
+            binders.removeIf(binder -> binder.getBeanRef().get() == null);
+            binders.add(new ValueBeanFieldBinder(valueExpr, field, bean, beanName));
         }
         if (propKeyList.size() > 0 && log.isDebugEnabled()) {
             log.debug("dynamic config annotation found on class: {}, field: {}, prop: {}", clazz.getName(), field.getName(), String.join(",", propKeyList));
@@ -0,0 +1,182 @@
+package top.code2life.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+
+import java.util.*;
+
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_CONFIG_PROPS_BINDER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_FIELD_BINDER_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PROPERTY_SOURCE_META_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
+
+/**
+ * Actuator endpoint exposing runtime state of dynamic config: watch targets and their watch mode,
+ * tracked configuration files, live binders, stage timings of recent reloads and hot keys if access tracking is enabled.
+ * Write operations trigger a rescan of all watch targets, or roll back a config file to a retained version.
+ *
+ * @author Code2Life
+ * @see DynamicConfigEndpointConfiguration
+ */
+@Endpoint(id = "dynamicconfig")
+public class DynamicConfigEndpoint implements ConfigReloadObserver {
+
+    static final String HISTORY_SIZE_PROPERTY = "dynamic-config.endpoint.history-size";
+    static final int DEFAULT_HISTORY_SIZE = 50;
+    static final int TOP_KEYS = 20;
+
+    private final DynamicConfigPropertiesWatcher watcher;
+    private final Environment env;
+    private final int historySize;
+    private final Deque<ReloadRecord> recentReloads;
+
+    DynamicConfigEndpoint(DynamicConfigPropertiesWatcher watcher, Environment env, int historySize) {
+        this.watcher = watcher;
+        this.env = env;
+        this.historySize = Math.max(historySize, 1);
+        this.recentReloads = new ArrayDeque<>(this.historySize);
+    }
+
+    @Override
+    public void onReloadCompleted(ReloadRecord record) {
+        synchronized (recentReloads) {
+            if (recentReloads.size() >= historySize) {
+                recentReloads.pollFirst();
+            }
+            recentReloads.addLast(record);
+        }
+    }
+
+    /**
+     * Current state of dynamic config
+     *
+     * @return watch targets, config files, binder counts and recent reloads, latest reload first
+     */
+    @ReadOperation
+    public Map<String, Object> state() {
+        Map<String, Object> result = new LinkedHashMap<>(8);
+        result.put("targets", describeTargets());
+        result.put("files", describeFiles());
+        result.put("binders", describeBinders());
+        result.put("recentReloads", getRecentReloads());
+        AccessTrackingPropertySource tracker = AccessTrackingPropertySource.find(env);
+        if (tracker != null) {
+            result.put("accessTracking", describeAccessTracking(tracker));
+        }
+        return result;
+    }
+
+    /**
+     * Reload all config files of all watch targets, unchanged documents are skipped
+     *
+     * @return the reload records produced by this rescan
+     */
+    @WriteOperation
+    public List<ReloadRecord> rescan() {
+        long begin = System.currentTimeMillis();
+        watcher.rescan();
+        List<ReloadRecord> result = new ArrayList<>(4);
+        for (ReloadRecord record : getRecentReloads()) {
+            if (record.getFinishedAt() >= begin) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Roll back a config file to certain version of its change history, the file itself is not touched.
+     * The path is taken from the request body rather than the URL, so that absolute paths keep their leading '/'.
+     * e.g. POST /actuator/dynamicconfig/3 with body {"path": "/app/config/application.yml"}
+     *
+     * @param version  target version, listed in 'history' of files
+     * @param path     path of the config file, as listed in 'files'
+     * @param document index of the document in a multi-document file, 0 by default
+     * @return the reload record of the rollback
+     */
+    @WriteOperation
+    public ReloadRecord rollback(@Selector int version, String path, @Nullable Integer document) {
+        return watcher.rollback(path, document == null ? 0 : document, version);
+    }
+
+    List<ReloadRecord> getRecentReloads() {
+        List<ReloadRecord> result;
+        synchronized (recentReloads) {
+            result = new ArrayList<>(recentReloads);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private List<Map<String, Object>> describeTargets() {
+        List<Map<String, Object>> result = new ArrayList<>(WATCHABLE_TARGETS.size());
+        for (FileSystemWatchTarget target : WATCHABLE_TARGETS.values()) {
+            Map<String, Object> item = new LinkedHashMap<>(4);
+            item.put("directory", target.getNormalizedDir());
+            item.put("type", target.getType());
+            item.put("watchMode", target.getWatchMode());
+            item.put("filterFiles", target.getFilterFiles());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private List<Map<String, Object>> describeFiles() {
+        List<Map<String, Object>> result = new ArrayList<>(PROPERTY_SOURCE_META_MAP.size());
+        for (Map.Entry<String, List<PropertySourceMeta>> entry : PROPERTY_SOURCE_META_MAP.entrySet()) {
+            for (PropertySourceMeta meta : entry.getValue()) {
+                Map<String, Object> item = new LinkedHashMap<>(4);
+                item.put("path", entry.getKey());
+                item.put("document", meta.getDocumentIndex());
+                item.put("propertySource", meta.getPropertySource().getName());
+                item.put("lastModifyTime", meta.getLastModifyTime());
+                item.put("version", meta.getHistory().getCurrentVersion());
+                item.put("history", describeHistory(meta.getHistory()));
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Only changed key names of each version, values may be sensitive
+     */
+    private List<Map<String, Object>> describeHistory(ChangeHistory history) {
+        List<ChangeHistory.Version> versions = history.getVersions();
+        List<Map<String, Object>> result = new ArrayList<>(versions.size());
+        for (ChangeHistory.Version version : versions) {
+            Map<String, Object> item = new LinkedHashMap<>(4);
+            item.put("version", version.getVersion());
+            item.put("timestamp", version.getTimestamp());
+            item.put("origin", version.getOrigin());
+            item.put("changedKeys", new TreeSet<>(version.getNewValues().keySet()));
+            result.add(item);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private Map<String, Object> describeAccessTracking(AccessTrackingPropertySource tracker) {
+        Map<String, Object> result = new LinkedHashMap<>(4);
+        result.put("topKeys", tracker.getTopKeys(TOP_KEYS));
+        result.put("neverReadKeys", tracker.getNeverReadKeys());
+        result.put("overflowReads", tracker.getOverflowReads());
+        return result;
+    }
+
+    private Map<String, Object> describeBinders() {
+        int valueFields = 0;
+        for (List<ValueBeanFieldBinder> binders : DYNAMIC_FIELD_BINDER_MAP.values()) {
+            valueFields += binders.size();
+        }
+        Map<String, Object> result = new LinkedHashMap<>(4);
+        result.put("valueKeys", DYNAMIC_FIELD_BINDER_MAP.size());
+        result.put("valueFields", valueFields);
+        result.put("configurationProperties", DYNAMIC_CONFIG_PROPS_BINDER_MAP.size());
+        return result;
+    }
+}
@@ -0,0 +1,25 @@
+package top.code2life.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Register the dynamic config Actuator endpoint when Spring Boot Actuator is on the classpath,
+ * exposure is still controlled by management.endpoints.web.exposure.include.
+ *
+ * @author Code2Life
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class DynamicConfigEndpointConfiguration {
+
+    @Bean
+    public DynamicConfigEndpoint dynamicConfigEndpoint(DynamicConfigPropertiesWatcher watcher, Environment env) {
+        int historySize = env.getProperty(DynamicConfigEndpoint.HISTORY_SIZE_PROPERTY, Integer.class, DynamicConfigEndpoint.DEFAULT_HISTORY_SIZE);
+        return new DynamicConfigEndpoint(watcher, env, historySize);
+    }
+}
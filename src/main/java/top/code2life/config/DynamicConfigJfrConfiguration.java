@@ -0,0 +1,25 @@
+package top.code2life.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Register JDK Flight Recorder events of the reload pipeline when 'dynamic-config.jfr.enabled' is true,
+ * skipped on JVMs without JFR support.
+ *
+ * @author Code2Life
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "jdk.jfr.Event")
+@ConditionalOnProperty(name = "dynamic-config.jfr.enabled", havingValue = "true")
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class DynamicConfigJfrConfiguration {
+
+    @Bean
+    JfrConfigReloadTracer jfrConfigReloadTracer() {
+        return new JfrConfigReloadTracer();
+    }
+}
@@ -0,0 +1,92 @@
+package top.code2life.config;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_CONFIG_PROPS_BINDER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_FIELD_BINDER_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
+
+/**
+ * Micrometer instrumentation of the reload pipeline, only active when Micrometer is on the classpath.
+ * Timers and counters are tagged with the watch target directory and the reloaded file.
+ *
+ * @author Code2Life
+ * @see DynamicConfigMetricsConfiguration
+ */
+@Slf4j
+public class DynamicConfigMetrics implements MeterBinder, ConfigReloadObserver {
+
+    static final String METRIC_PREFIX = "dynamic.config.";
+    static final String TAG_TARGET = "target";
+    static final String TAG_FILE = "file";
+
+    private volatile MeterRegistry registry;
+    private static final long NEVER_RELOADED = -1L;
+
+    /**
+     * Finish time of the last successful reload, {@link #NEVER_RELOADED} until the first one
+     */
+    private volatile long lastSuccessfulReload = NEVER_RELOADED;
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        this.registry = meterRegistry;
+        Gauge.builder(METRIC_PREFIX + "watch.targets", WATCHABLE_TARGETS, m -> m.size())
+                .description("number of watched config directories")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "binders.live", this, m -> m.countLiveBinders())
+                .description("number of @Value field binders and @ConfigurationProperties binders")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "reload.last.success.age", this, m -> m.getLastSuccessfulReloadAge())
+                .description("seconds since the last successful config reload, NaN if nothing has been reloaded")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onReloadCompleted(ReloadRecord record) {
+        MeterRegistry meterRegistry = this.registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        Tags tags = Tags.of(TAG_TARGET, record.getTarget(), TAG_FILE, record.getPath());
+        if (record.getOutcome() == ReloadRecord.Outcome.FAILED) {
+            meterRegistry.counter(METRIC_PREFIX + "reload.failed", tags).increment();
+            return;
+        }
+        lastSuccessfulReload = record.getFinishedAt();
+        recordTimer(meterRegistry, "reload.read", tags, record.getReadNanos());
+        recordTimer(meterRegistry, "reload.parse", tags, record.getParseNanos());
+        if (record.getOutcome() == ReloadRecord.Outcome.NO_OP) {
+            meterRegistry.counter(METRIC_PREFIX + "reload.skipped", tags).increment();
+            return;
+        }
+        recordTimer(meterRegistry, "reload.diff", tags, record.getDiffNanos());
+        recordTimer(meterRegistry, "reload.bind", tags, record.getBindNanos());
+        meterRegistry.counter(METRIC_PREFIX + "events", tags).increment(record.getEvents());
+        meterRegistry.summary(METRIC_PREFIX + "diff.size", tags).record(record.getDiffSize());
+        meterRegistry.counter(METRIC_PREFIX + "binders.updated", tags).increment(record.getUpdatedFields() + record.getReboundBeans());
+    }
+
+    private void recordTimer(MeterRegistry meterRegistry, String name, Tags tags, long nanos) {
+        Timer.builder(METRIC_PREFIX + name).tags(tags).register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private double countLiveBinders() {
+        int count = DYNAMIC_CONFIG_PROPS_BINDER_MAP.size();
+        for (List<ValueBeanFieldBinder> binders : DYNAMIC_FIELD_BINDER_MAP.values()) {
+            count += binders.size();
+        }
+        return count;
+    }
+
+    double getLastSuccessfulReloadAge() {
+        long last = lastSuccessfulReload;
+        return last == NEVER_RELOADED ? Double.NaN : (System.currentTimeMillis() - last) / 1000.0;
+    }
+}
@@ -0,0 +1,23 @@
+package top.code2life.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Register Micrometer instrumentation when Micrometer is on the classpath,
+ * the MeterBinder will be bound to registries by Spring Boot Actuator.
+ *
+ * @author Code2Life
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class DynamicConfigMetricsConfiguration {
+
+    @Bean
+    public DynamicConfigMetrics dynamicConfigMetrics() {
+        return new DynamicConfigMetrics();
+    }
+}
@@ -1,32 +1,48 @@
 package top.code2life.config;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
 import org.springframework.boot.env.OriginTrackedMapPropertySource;
 import org.springframework.boot.env.PropertySourceLoader;
 import org.springframework.boot.origin.OriginTrackedValue;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.EnumerablePropertySource;
 import org.springframework.core.env.MutablePropertySources;
 import org.springframework.core.env.PropertySource;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static top.code2life.config.ConfigurationUtils.*;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.PRIORITY_KEYS;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.PRIORITY_PREFIXES;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.RELOAD_OBSERVERS;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.RELOAD_TRACER;
 
 /**
  * Enhance PropertySource when spring.config.location is specified, it will start directory-watch,
  * listening any changes on configuration files, then publish ConfigurationChangedEvent.
+ * Changes go through a staged pipeline: watch threads only detect changed files, parsing, applying and publishing events
+ * run on their own threads, so slow listeners never block detection, and older pending versions of a file are dropped.
  * Support config import feature since Spring Boot 2.4, check following link for further info:
  * https://docs.spring.io/spring-boot/docs/2.7.3/reference/htmlsingle/#features.external-config.files.configtree
  *
@@ -34,51 +50,116 @@ import static top.code2life.config.ConfigurationUtils.*;
  * @see ConfigurationChangedEvent
  */
 @Slf4j
-@ConditionalOnExpression("T(top.code2life.config.ConfigurationUtils).hasWatchableConf('${spring.config.location:}', '${spring.config.import:}')")
-public class DynamicConfigPropertiesWatcher implements DisposableBean {
+@ConditionalOnExpression("T(top.code2life.config.ConfigurationUtils).hasWatchableConf('${spring.config.location:}', '${spring.config.import:}')" +
+        " or ${" + DynamicConfigPropertiesWatcher.CHANGE_SOURCES_ENABLED_PROPERTY + ":false}")
+public class DynamicConfigPropertiesWatcher implements DisposableBean, SmartInitializingSingleton {
 
-    static final Map<String, FileSystemWatchTarget> WATCHABLE_TARGETS = new HashMap<>(4);
-
-    private static final long SYMBOL_LINK_POLLING_INTERVAL = 5000;
-    private static final long NORMAL_FILE_POLLING_INTERVAL = 90000;
+    static final Map<String, FileSystemWatchTarget> WATCHABLE_TARGETS = new ConcurrentHashMap<>(4);
+    static final PlaceholderDependencyIndex PLACEHOLDER_DEPENDENCY_INDEX = new PlaceholderDependencyIndex();
 
     private static final String FILE_COLON_SYMBOL = "file:";
 
-    /**
-     * Kubernetes will inject ..data when mounting configMap or secret, it's not watchable symbol link
-     */
-    private static final String HIDDEN_SYMBOL_LINK_DIR = "..data";
-
-    private static final String WATCH_THREAD = "config-watcher";
-    private static final String POLLING_THREAD = "config-watcher-polling";
+    private static final String FILE_ORIGIN = "file";
+    private static final String ROLLBACK_ORIGIN = "rollback";
+    private static final String SOURCE_ORIGIN = "source";
+    private static final String DISCOVERY_ORIGIN = "discovery";
+    private static final String CHANGE_SOURCE_PROPERTY_SOURCE_PREFIX = "dynamicConfigSource";
+    private static final long PIPELINE_AWAIT_TIMEOUT = 30000;
+    private static final String PARSE_THREAD = "config-watcher-parse";
+    private static final String APPLY_THREAD = "config-watcher-apply";
+    private static final String NOTIFY_THREAD = "config-watcher-notify";
+    private static final String PRIORITY_THREAD = "config-watcher-priority";
+    static final String PRIORITY_PREFIXES_PROPERTY = "dynamic-config.priority-prefixes";
+    static final String CHANGE_SOURCES_ENABLED_PROPERTY = "dynamic-config.change-sources.enabled";
     private static final String FILE_SOURCE_CONFIGURATION_PATTERN = "^.*Config\\sresource.*file.*$";
     private static final String FILE_SOURCE_CONFIGURATION_PATTERN_LEGACY = "^.+Config:\\s\\[file:.*$";
-    private static final Map<String, PropertySourceMeta> PROPERTY_SOURCE_META_MAP = new HashMap<>(8);
+    private static final Pattern DOCUMENT_INDEX_PATTERN = Pattern.compile("^.*\\(document #(\\d+)\\)$");
+    private static final String ACTIVATE_PROPERTY_PREFIX = "spring.config.activate.";
+    private static final String LEGACY_PROFILES_PROPERTY = "spring.profiles";
+    static final Map<String, List<PropertySourceMeta>> PROPERTY_SOURCE_META_MAP = new ConcurrentHashMap<>(8);
 
     private final StandardEnvironment env;
     private final ApplicationEventPublisher eventPublisher;
     private final List<PropertySourceLoader> propertyLoaders;
+    private final int historyMaxVersions;
 
-    private final List<WatchService> watchServices = new ArrayList<>(2);
-    private long symbolicLinkModifiedTime = 0;
+    private final ReloadStage<ReloadRequest> parseStage;
+    private final ReloadStage<ParsedConfigFile> applyStage;
+    private final ReloadStage<PendingNotification> notifyStage;
+    private final ReloadStage<PriorityConfigurationChangedEvent> priorityStage;
+    private final Set<String> priorityPrefixes = new HashSet<>(4);
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>(ConfigSnapshot.EMPTY);
+    private final FileSystemConfigChangeSource fileSource;
+    private final List<ConfigChangeSource> startedSources = new CopyOnWriteArrayList<>();
+    private ObjectProvider<ConfigChangeSource> changeSourceBeans;
+    private CachedPropertySource cachedPropertySource;
 
     DynamicConfigPropertiesWatcher(StandardEnvironment env, ApplicationEventPublisher eventPublisher) {
         this.env = env;
         this.eventPublisher = eventPublisher;
         this.propertyLoaders = SpringFactoriesLoader.loadFactories(PropertySourceLoader.class,
                 getClass().getClassLoader());
+        this.historyMaxVersions = env.getProperty(ChangeHistory.HISTORY_MAX_VERSIONS_PROPERTY, Integer.class, ChangeHistory.DEFAULT_MAX_VERSIONS);
+        // detect -> parse -> diff & apply -> notify, each stage keeps at most one pending item per file
+        this.parseStage = new ReloadStage<>(PARSE_THREAD,
+                (older, newer) -> new ReloadRequest(newer.getTarget(), newer.getPath(), older.isForceReload() || newer.isForceReload()),
+                older -> {
+                }, this::parseChangedFile);
+        this.applyStage = new ReloadStage<>(APPLY_THREAD, DynamicConfigPropertiesWatcher::mergeParsedConfigFiles,
+                older -> finishReloadRecord(older.getRecord()), this::applyParsedConfigFile);
+        this.notifyStage = new ReloadStage<>(NOTIFY_THREAD, DynamicConfigPropertiesWatcher::mergeNotifications,
+                older -> finishReloadRecord(older.getRecord()), this::notifyChanges);
+        // high priority keys skip the notify stage, bound on their own lane
+        this.priorityStage = new ReloadStage<>(PRIORITY_THREAD, DynamicConfigPropertiesWatcher::mergePriorityEvents,
+                older -> {
+                }, this::publishPriorityChanges);
+        for (String prefix : env.getProperty(PRIORITY_PREFIXES_PROPERTY, String[].class, new String[0])) {
+            if (StringUtils.hasText(prefix)) {
+                priorityPrefixes.add(normalizePropKey(prefix.trim()));
+            }
+        }
+        String manifestFileName = env.getProperty(ConfigManifest.MANIFEST_FILE_PROPERTY);
+        this.fileSource = new FileSystemConfigChangeSource(WATCHABLE_TARGETS, StringUtils.hasText(manifestFileName) ? manifestFileName.trim() : null,
+                env.getProperty(ConfigManifest.MANIFEST_POLL_INTERVAL_PROPERTY, Long.class, ConfigManifest.DEFAULT_POLL_INTERVAL),
+                env.getProperty(FileSystemConfigChangeSource.CONFIG_TREE_MAX_DEPTH_PROPERTY, Integer.class, ConfigurationUtils.MAX_DEPTH),
+                this::fileChanged, this::configTreeFileChanged);
+    }
+
+    @Autowired(required = false)
+    void setChangeSourceBeans(ObjectProvider<ConfigChangeSource> changeSourceBeans) {
+        this.changeSourceBeans = changeSourceBeans;
+    }
+
+    /**
+     * Start ConfigChangeSource beans after all singletons are ready, so that sources could depend on any bean
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (changeSourceBeans != null) {
+            changeSourceBeans.orderedStream().forEach(this::startChangeSource);
+        }
     }
 
     @Override
     public void destroy() {
-        closeConfigDirectoryWatch();
+        for (ConfigChangeSource source : startedSources) {
+            try {
+                source.stop();
+            } catch (RuntimeException ex) {
+                log.warn("config change source {} can not be stopped: {}", source.getName(), ex.getMessage());
+            }
+        }
+        startedSources.clear();
+        parseStage.shutdown();
+        applyStage.shutdown();
+        notifyStage.shutdown();
+        priorityStage.shutdown();
     }
 
     /**
      * Watch config directory after initializing, using WatchService API
      */
     @PostConstruct
-    @SuppressWarnings("AlibabaThreadPoolCreation")
     public void watchConfigDirectory() {
         MutablePropertySources propertySources = env.getPropertySources();
         for (PropertySource<?> ps : propertySources) {
@@ -87,16 +168,32 @@ public class DynamicConfigPropertiesWatcher implements DisposableBean {
                 normalizeAndRecordPropSource(ps);
             }
         }
-        if (WATCHABLE_TARGETS.size() > 32) {
-            log.error("too many watch targets of dynamic config, skipped.");
-        } else {
-            int counter = 0;
-            for (FileSystemWatchTarget target : WATCHABLE_TARGETS.values()) {
-                int threadId = counter;
-                Executors.newSingleThreadExecutor(r -> new Thread(r, WATCH_THREAD + "-" + threadId)).submit(() -> this.startWatchDir(target));
-                counter++;
+        installCachedPropertySource();
+        installAccessTrackingPropertySource();
+        PLACEHOLDER_DEPENDENCY_INDEX.rebuild(propertySources);
+        snapshot.set(ConfigSnapshot.of(propertySources, env));
+        startChangeSource(fileSource);
+    }
+
+    /**
+     * Start a source and deliver its changes into the reload pipeline, the source is stopped when the watcher is destroyed
+     *
+     * @param source the change source, its name should be unique
+     * @throws IllegalArgumentException if a source with the same name has been started
+     */
+    public void startChangeSource(ConfigChangeSource source) {
+        for (ConfigChangeSource started : startedSources) {
+            if (started.getName().equals(source.getName())) {
+                throw new IllegalArgumentException("config change source has been started: " + source.getName());
             }
         }
+        startedSources.add(source);
+        try {
+            source.start(new SourceSink(source.getName()));
+            log.info("config change source started: {}", source.getName());
+        } catch (Exception ex) {
+            log.error("config change source {} can not be started: ", source.getName(), ex);
+        }
     }
 
     private void normalizeAndRecordPropSource(PropertySource<?> ps) {
@@ -110,186 +207,860 @@ public class DynamicConfigPropertiesWatcher implements DisposableBean {
         if (pathStr.contains(FILE_COLON_SYMBOL)) {
             pathStr = pathStr.replace(FILE_COLON_SYMBOL, "");
         }
-        PROPERTY_SOURCE_META_MAP.put(trimRelativePathAndReplaceBackSlash(pathStr), new PropertySourceMeta(ps, Paths.get(pathStr), 0L));
-        log.debug("configuration file found: {}", pathStr);
+        // each document of a multi-document file is an individual property source
+        int documentIndex = 0;
+        Matcher matcher = DOCUMENT_INDEX_PATTERN.matcher(name);
+        if (matcher.matches()) {
+            documentIndex = Integer.parseInt(matcher.group(1));
+        }
+        PropertySourceMeta meta = new PropertySourceMeta(ps, Paths.get(pathStr), 0L, documentIndex, fingerprint(ps),
+                new ChangeHistory(historyMaxVersions));
+        List<PropertySourceMeta> metaList = PROPERTY_SOURCE_META_MAP.computeIfAbsent(trimRelativePathAndReplaceBackSlash(pathStr), k -> new ArrayList<>(1));
+        metaList.removeIf(m -> m.getDocumentIndex() == meta.getDocumentIndex());
+        metaList.add(meta);
+        log.debug("configuration file found: {}, document: #{}", pathStr, documentIndex);
     }
 
-    @SuppressWarnings("BusyWait")
-    private void startWatchDir(FileSystemWatchTarget target) {
-        try {
-            String configLocation = target.getNormalizedDir();
-            List<String> filterFiles = target.getFilterFiles();
-            log.info("start watching configuration directory: {}", configLocation);
-            WatchService watchService = FileSystems.getDefault().newWatchService();
-            watchServices.add(watchService);
-            Paths.get(configLocation).register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
-            checkChangesWithPeriod();
-            WatchKey key;
-            while ((key = watchService.take()) != null) {
-                // avoid receiving two ENTRY_MODIFY events: file modified and timestamp updated
-                Thread.sleep(50);
-                for (WatchEvent<?> event : key.pollEvents()) {
-                    Path path = (Path) event.context();
-                    String confPath = path.toString();
-                    if (filterFiles == null) {
-                        reloadChangedFile(target, confPath, false);
-                    } else {
-                        if (filterFiles.contains(confPath)) {
-                            reloadChangedFile(target, confPath, false);
-                        } else {
-                            log.debug("changed path {} is not watched file, skipped.", confPath);
-                        }
-                    }
+    /**
+     * Whether changes of the property source are applied by the watcher and invalidate the cache,
+     * such as watched config files, change sources, shared flags and replayed traces
+     */
+    static boolean isDiffedPropertySource(PropertySource<?> ps) {
+        String name = ps.getName();
+        if (name.startsWith(CHANGE_SOURCE_PROPERTY_SOURCE_PREFIX + "[")
+                || SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME.equals(name)
+                || ConfigChangeTraceReplayer.REPLAY_PROPERTY_SOURCE_NAME.equals(name)) {
+            return true;
+        }
+        for (List<PropertySourceMeta> metaList : PROPERTY_SOURCE_META_MAP.values()) {
+            for (PropertySourceMeta meta : metaList) {
+                if (name.equals(meta.getPropertySource().getName())) {
+                    return true;
                 }
-                key.reset();
             }
-            log.warn("config directory watch stopped unexpectedly, dynamic configuration won't take effect.");
-        } catch (ClosedWatchServiceException cse) {
-            log.info("configuration watcher has been stopped.");
-        } catch (Exception ex) {
-            log.error("failed to watch config directory: ", ex);
         }
+        return false;
     }
 
+    private void installCachedPropertySource() {
+        if (!env.getProperty(CachedPropertySource.CACHE_ENABLED_PROPERTY, Boolean.class, false)) {
+            return;
+        }
+        MutablePropertySources propertySources = env.getPropertySources();
+        if (propertySources.contains(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME)) {
+            propertySources.remove(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME);
+        }
+        int maxSize = env.getProperty(CachedPropertySource.CACHE_MAX_SIZE_PROPERTY, Integer.class, CachedPropertySource.DEFAULT_MAX_SIZE);
+        cachedPropertySource = new CachedPropertySource(env, maxSize, DynamicConfigPropertiesWatcher::isDiffedPropertySource);
+        propertySources.addFirst(cachedPropertySource);
+        log.info("cached property source of dynamic config is enabled, max size: {}", maxSize);
+    }
 
-    private void checkChangesWithPeriod() throws IOException {
-        for (FileSystemWatchTarget target : WATCHABLE_TARGETS.values()) {
-            String configLocation = target.getNormalizedDir();
-            Path symLinkPath = Paths.get(configLocation, HIDDEN_SYMBOL_LINK_DIR);
-            boolean hasDotDataLinkFile = new File(configLocation, HIDDEN_SYMBOL_LINK_DIR).exists();
-            if (hasDotDataLinkFile) {
-                log.info("ConfigMap/Secret mode detected, will polling symbolic link instead.");
-                symbolicLinkModifiedTime = Files.getLastModifiedTime(symLinkPath, LinkOption.NOFOLLOW_LINKS).toMillis();
-                startFixedRateCheckThread(() -> checkSymbolicLink(target), SYMBOL_LINK_POLLING_INTERVAL);
-            } else {
-                // longer check for all config files, make up mechanism if WatchService doesn't work
-                startFixedRateCheckThread(() -> reloadAllConfigFiles(target), NORMAL_FILE_POLLING_INTERVAL);
-            }
+    private void installAccessTrackingPropertySource() {
+        if (!env.getProperty(AccessTrackingPropertySource.ACCESS_TRACKING_ENABLED_PROPERTY, Boolean.class, false)) {
+            return;
         }
+        MutablePropertySources propertySources = env.getPropertySources();
+        if (propertySources.contains(AccessTrackingPropertySource.ACCESS_TRACKING_PROPERTY_SOURCE_NAME)) {
+            propertySources.remove(AccessTrackingPropertySource.ACCESS_TRACKING_PROPERTY_SOURCE_NAME);
+        }
+        int sampleRate = env.getProperty(AccessTrackingPropertySource.ACCESS_TRACKING_SAMPLE_RATE_PROPERTY, Integer.class, AccessTrackingPropertySource.DEFAULT_SAMPLE_RATE);
+        int maxKeys = env.getProperty(AccessTrackingPropertySource.ACCESS_TRACKING_MAX_KEYS_PROPERTY, Integer.class, AccessTrackingPropertySource.DEFAULT_MAX_KEYS);
+        // on top of the cache, so that cache hits are tracked as well
+        propertySources.addFirst(new AccessTrackingPropertySource(env, sampleRate, maxKeys, cachedPropertySource));
+        log.info("access tracking of dynamic config is enabled, sample rate: 1/{}, max keys: {}", sampleRate, maxKeys);
+    }
+
+    /**
+     * Property source of a change source, with higher precedence than config files, registered like a config file
+     * so that its change history is kept as well
+     */
+    private PropertySourceMeta installChangeSourcePropertySource(String sourceName) {
+        String name = CHANGE_SOURCE_PROPERTY_SOURCE_PREFIX + "[" + sourceName + "]";
+        PropertySource<?> ps = new OriginTrackedMapPropertySource(name, new LinkedHashMap<>(), true);
+        MutablePropertySources propertySources = env.getPropertySources();
+        if (propertySources.contains(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME)) {
+            propertySources.addAfter(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME, ps);
+        } else {
+            propertySources.addFirst(ps);
+        }
+        PropertySourceMeta meta = new PropertySourceMeta(ps, Paths.get(sourceName), 0L, 0, fingerprint(ps),
+                new ChangeHistory(historyMaxVersions));
+        PROPERTY_SOURCE_META_MAP.put(sourceName, new ArrayList<>(Collections.singletonList(meta)));
+        return meta;
+    }
+
+    /**
+     * Reload all config files of all watch targets immediately, regardless of their modified time,
+     * documents whose content is not changed will be skipped. Returns after changes are applied and published.
+     */
+    public void rescan() {
+        fileSource.reloadAllConfigFiles(true);
+        awaitPipelineIdle();
     }
 
-    @SuppressWarnings("AlibabaThreadPoolCreation")
-    private void startFixedRateCheckThread(Runnable cmd, long interval) {
-        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, POLLING_THREAD))
-                .scheduleWithFixedDelay(cmd, interval, interval, TimeUnit.MILLISECONDS);
+    /**
+     * Detect stage, only hands the changed file off to the parse stage, never blocks watch threads
+     */
+    private void fileChanged(FileSystemWatchTarget target, String fullPath, boolean forceReload) {
+        parseStage.offer(fullPath, new ReloadRequest(target, fullPath, forceReload));
     }
 
-    private void checkSymbolicLink(FileSystemWatchTarget target) {
+    /**
+     * A config file appeared in or vanished from a config tree, add or remove its prefixed property sources,
+     * keys of the file are published as changed
+     */
+    private void configTreeFileChanged(FileSystemWatchTarget target, String fullPath, boolean added) {
         try {
-            Path symLinkPath = Paths.get(target.getNormalizedDir(), HIDDEN_SYMBOL_LINK_DIR);
-            long tmp = Files.getLastModifiedTime(symLinkPath, LinkOption.NOFOLLOW_LINKS).toMillis();
-            if (tmp != symbolicLinkModifiedTime) {
-                reloadAllConfigFiles(target, true);
-                symbolicLinkModifiedTime = tmp;
+            if (added) {
+                addConfigTreeFile(target, fullPath);
+            } else {
+                removeConfigTreeFile(target, fullPath);
             }
-        } catch (IOException ex) {
-            log.warn("could not check symbolic link of config dir: {}", ex.getMessage());
+        } catch (Exception ex) {
+            log.error("can not {} property sources of config tree file {}: ", added ? "add" : "remove", fullPath, ex);
         }
     }
 
-    private void reloadAllConfigFiles(FileSystemWatchTarget target) {
-        reloadAllConfigFiles(target, false);
-    }
-
-    private void reloadAllConfigFiles(FileSystemWatchTarget target, boolean forceReload) {
-        try (Stream<Path> paths = Files.walk(Paths.get(target.getNormalizedDir()))) {
-            paths.filter(path -> !Files.isDirectory(path)).forEach((path) -> {
-                String rawPath = path.toString();
-                if (target.getFilterFiles() != null) {
-                    if (target.getFilterFiles().contains(rawPath)) {
-                        reloadChangedFile(target, rawPath, forceReload);
-                    }
-                } else {
-                    reloadChangedFile(target, rawPath, forceReload);
+    private void addConfigTreeFile(FileSystemWatchTarget target, String fullPath) throws IOException {
+        if (findPropertySourceMetas(fullPath) == null) {
+            String extension = ConfigurationUtils.getFileExtension(fullPath);
+            PropertySourceLoader loader = propertyLoaders.stream()
+                    .filter(l -> Arrays.asList(l.getFileExtensions()).contains(extension)).findFirst().orElse(null);
+            if (loader == null) {
+                return;
+            }
+            // documents start empty, then the file is loaded through the pipeline, so that all its keys are published
+            List<PropertySource<?>> documents = loader.load(String.format(ConfigTreeEnvironmentPostProcessor.ADDITIONAL_PROPERTY_TEMPLATE, fullPath),
+                    new FileSystemResource(fullPath));
+            runOnStage(applyStage, () -> {
+                List<PropertySourceMeta> metaList = new ArrayList<>(Math.max(documents.size(), 1));
+                for (int i = 0; i < Math.max(documents.size(), 1); i++) {
+                    String name = documents.isEmpty() ? String.format(ConfigTreeEnvironmentPostProcessor.ADDITIONAL_PROPERTY_TEMPLATE, fullPath)
+                            : documents.get(i).getName();
+                    PropertySource<?> ps = new OriginTrackedMapPropertySource(name, new LinkedHashMap<>(), true);
+                    env.getPropertySources().addLast(ps);
+                    metaList.add(new PropertySourceMeta(ps, Paths.get(fullPath), 0L, i, fingerprint(ps), new ChangeHistory(historyMaxVersions)));
                 }
+                PROPERTY_SOURCE_META_MAP.put(fullPath, metaList);
+                return null;
             });
-        } catch (IOException e) {
-            log.warn("can not walk through config directory: {}", e.getMessage());
+        }
+        fileChanged(target, fullPath, true);
+    }
+
+    private void removeConfigTreeFile(FileSystemWatchTarget target, String fullPath) {
+        List<PropertySourceMeta> metaList = findPropertySourceMetas(fullPath);
+        if (metaList == null) {
+            return;
+        }
+        ReloadRecord record = new ReloadRecord(target.getNormalizedDir(), fullPath);
+        PendingNotification notification = runOnStage(applyStage, () -> {
+            PendingNotification result = new PendingNotification(record, new LinkedHashMap<>(2));
+            for (PropertySourceMeta meta : metaList) {
+                // diff against empty documents, vanished keys fall back to other property sources
+                String name = meta.getPropertySource().getName();
+                result.add(applyDocumentChange(meta, new OriginTrackedMapPropertySource(name, new LinkedHashMap<>(), true),
+                        fullPath, record, DISCOVERY_ORIGIN, null));
+                env.getPropertySources().remove(name);
+            }
+            PROPERTY_SOURCE_META_MAP.entrySet().removeIf(entry -> entry.getValue() == metaList);
+            return result;
+        });
+        if (notification.getEvents().isEmpty()) {
+            finishReloadRecord(record);
+        } else {
+            notifyStage.offer(fullPath, notification);
         }
     }
 
-    private void reloadChangedFile(FileSystemWatchTarget target, String rawPath, boolean forceReload) {
-        String fullPathStr = normalizePath(rawPath, target.getNormalizedDir());
-        Path path = Paths.get(fullPathStr);
-        if (HIDDEN_SYMBOL_LINK_DIR.equals(path.getFileName().toString())) {
+    private void reloadLocation(String location) {
+        if (location == null) {
+            fileSource.reloadAllConfigFiles(true);
             return;
         }
+        String fullPath = trimRelativePathAndReplaceBackSlash(location);
+        FileSystemWatchTarget target = fileSource.findWatchTarget(fullPath);
+        if (target == null) {
+            fullPath = trimRelativePathAndReplaceBackSlash(new File(location).getAbsolutePath());
+            target = fileSource.findWatchTarget(fullPath);
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("config file is not under any watched location: " + location);
+        }
+        fileChanged(target, fullPath, true);
+    }
+
+    /**
+     * Parse stage, read and parse the changed file, then hand the documents off to the apply stage
+     */
+    private void parseChangedFile(ReloadRequest request) {
+        String fullPathStr = request.getPath();
         try {
-            PropertySourceMeta propertySourceMeta = PROPERTY_SOURCE_META_MAP.get(fullPathStr);
-            if (propertySourceMeta == null) {
-                // also try abs path, in case of the configTree case
-                String absolutePath = trimRelativePathAndReplaceBackSlash(new File(fullPathStr).getAbsolutePath());
-                propertySourceMeta = PROPERTY_SOURCE_META_MAP.get(absolutePath);
-                if (propertySourceMeta == null) {
-                    log.debug("changed file at config location is not recognized: {}", fullPathStr);
-                    return;
-                }
+            List<PropertySourceMeta> metaList = findPropertySourceMetas(fullPathStr);
+            if (metaList == null) {
+                log.debug("changed file at config location is not recognized: {}", fullPathStr);
+                return;
             }
-            long currentModTs = Files.getLastModifiedTime(path).toMillis();
-            long mdt = propertySourceMeta.getLastModifyTime();
-            if (forceReload || mdt != currentModTs) {
-                doReloadConfigFile(target, propertySourceMeta, fullPathStr, currentModTs);
+            long currentModTs = Files.getLastModifiedTime(Paths.get(fullPathStr)).toMillis();
+            long mdt = metaList.get(0).getLastModifyTime();
+            if (request.isForceReload() || mdt != currentModTs) {
+                doReloadConfigFile(request.getTarget(), metaList, fullPathStr, currentModTs);
             }
         } catch (Exception ex) {
             log.error("reload configuration file {} failed: ", fullPathStr, ex);
         }
     }
 
-    private void doReloadConfigFile(FileSystemWatchTarget target, PropertySourceMeta propertySourceMeta, String path, long modifyTime) throws IOException {
+    /**
+     * Immutable snapshot of all resolved properties at current config epoch, a new one is published on each applied change.
+     * Pin the returned snapshot to read many keys consistently, it never changes.
+     *
+     * @return current config snapshot
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    private List<PropertySourceMeta> findPropertySourceMetas(String pathStr) {
+        List<PropertySourceMeta> metaList = PROPERTY_SOURCE_META_MAP.get(trimRelativePathAndReplaceBackSlash(pathStr));
+        if (metaList == null) {
+            // also try abs path, in case of the configTree case
+            String absolutePath = trimRelativePathAndReplaceBackSlash(new File(pathStr).getAbsolutePath());
+            metaList = PROPERTY_SOURCE_META_MAP.get(absolutePath);
+        }
+        return metaList;
+    }
+
+    /**
+     * Roll back a config file document to the content of certain version, by applying the inverse diff
+     * through the same path as file changes, the file itself is not touched.
+     * The rollback is kept until the file content changes again, and it's recorded as a new version.
+     *
+     * @param path          path of the config file
+     * @param documentIndex index of the document in a multi-document file, 0 for single document files
+     * @param version       target version, see {@link #getChangeHistory(String, int)}
+     * @return statistics of the rollback
+     * @throws IllegalArgumentException if the file is not watched or the version is not kept in history
+     */
+    public ReloadRecord rollback(String path, int documentIndex, int version) {
+        PropertySourceMeta meta = findPropertySourceMeta(path, documentIndex);
+        String filePath = meta.getFilePath().toString();
+        ReloadRecord record = new ReloadRecord(ROLLBACK_ORIGIN, filePath);
+        PendingNotification notification = runOnStage(applyStage, () -> {
+            Map<String, Object> content = applyPatch(meta.getPropertySource(), meta.getHistory().inverseDiffTo(version));
+            log.info("rolling back config file {} document #{} to version {}", filePath, documentIndex, version);
+            PendingNotification result = new PendingNotification(record, new LinkedHashMap<>(2));
+            result.add(applyDocumentChange(meta, new OriginTrackedMapPropertySource(meta.getPropertySource().getName(), content, true),
+                    filePath, record, ROLLBACK_ORIGIN, null));
+            return result;
+        });
+        if (notification.getEvents().isEmpty()) {
+            finishReloadRecord(record);
+        } else {
+            runOnStage(notifyStage, () -> {
+                notifyChanges(notification);
+                return null;
+            });
+        }
+        return record;
+    }
+
+    /**
+     * Applied changes of a config file document
+     *
+     * @param path          path of the config file
+     * @param documentIndex index of the document in a multi-document file, 0 for single document files
+     * @return change history of the document
+     * @throws IllegalArgumentException if the file is not watched
+     */
+    public ChangeHistory getChangeHistory(String path, int documentIndex) {
+        return findPropertySourceMeta(path, documentIndex).getHistory();
+    }
+
+    private PropertySourceMeta findPropertySourceMeta(String path, int documentIndex) {
+        List<PropertySourceMeta> metaList = findPropertySourceMetas(path);
+        if (metaList == null) {
+            throw new IllegalArgumentException("config file is not watched: " + path);
+        }
+        for (PropertySourceMeta meta : metaList) {
+            if (meta.getDocumentIndex() == documentIndex) {
+                return meta;
+            }
+        }
+        throw new IllegalArgumentException("document #" + documentIndex + " not found in config file: " + path);
+    }
+
+    private void doReloadConfigFile(FileSystemWatchTarget target, List<PropertySourceMeta> metaList, String path, long modifyTime) throws IOException {
         log.info("dynamic config file has been changed: {}", path);
         String extension = ConfigurationUtils.getFileExtension(path);
         for (PropertySourceLoader loader : propertyLoaders) {
             if (Arrays.asList(loader.getFileExtensions()).contains(extension)) {
                 // use this loader to load config resource
-                loadPropertiesAndPublishEvent(target, propertySourceMeta, loader, path, modifyTime);
+                ReloadRecord record = new ReloadRecord(target.getNormalizedDir(), path);
+                ConfigReloadTracer tracer = RELOAD_TRACER;
+                if (tracer.isEnabled()) {
+                    tracer.fileChanged(target.getNormalizedDir(), path);
+                }
+                ParsedConfigFile parsed;
+                try {
+                    parsed = loadProperties(target, metaList, loader, path, modifyTime, record);
+                } catch (IOException | RuntimeException ex) {
+                    record.setOutcome(ReloadRecord.Outcome.FAILED);
+                    finishReloadRecord(record);
+                    throw ex;
+                }
+                if (parsed == null) {
+                    finishReloadRecord(record);
+                } else {
+                    applyStage.offer(path, parsed);
+                }
                 break;
             }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void loadPropertiesAndPublishEvent(FileSystemWatchTarget target, PropertySourceMeta propertySourceMeta, PropertySourceLoader loader, String path, long modifyTime) throws IOException {
-        FileSystemResource resource = new FileSystemResource(path);
-        String propertySourceName = propertySourceMeta.getPropertySource().getName();
-        List<PropertySource<?>> newPropsList = loader.load(propertySourceName, resource);
+    private void finishReloadRecord(ReloadRecord record) {
+        record.setFinishedAt(System.currentTimeMillis());
+        notifyReloadObservers(record);
+    }
+
+    private void notifyReloadObservers(ReloadRecord record) {
+        for (ConfigReloadObserver observer : RELOAD_OBSERVERS) {
+            try {
+                observer.onReloadCompleted(record);
+            } catch (Exception ex) {
+                log.warn("config reload observer {} failed: {}", observer.getClass().getSimpleName(), ex.getMessage());
+            }
+        }
+    }
+
+    private ParsedConfigFile loadProperties(FileSystemWatchTarget target, List<PropertySourceMeta> metaList, PropertySourceLoader loader,
+                                            String path, long modifyTime, ReloadRecord record) throws IOException {
+        long begin = System.nanoTime();
+        FileSystemResource fileResource = new FileSystemResource(path);
+        byte[] content = Files.readAllBytes(fileResource.getFile().toPath());
+        record.setBytes(content.length);
+        record.setReadNanos(System.nanoTime() - begin);
+
+        begin = System.nanoTime();
+        List<PropertySource<?>> newPropsList = loader.load(path, new ByteArrayResource(content, fileResource.getDescription()) {
+            @Override
+            public String getFilename() {
+                return fileResource.getFilename();
+            }
+
+            @Override
+            public String getDescription() {
+                return fileResource.getDescription();
+            }
+        });
+        record.setParseNanos(System.nanoTime() - begin);
+        ConfigReloadTracer tracer = RELOAD_TRACER;
+        if (tracer.isEnabled()) {
+            tracer.parsed(path, record.getBytes(), record.getParseNanos());
+        }
         if (newPropsList.size() < 1) {
             log.warn("properties not loaded after config changed: {}", path);
-            return;
+            return null;
+        }
+        String prefix = null;
+        if (target.getType() == FileSystemWatchTarget.WatchTargetType.CONFIG_IMPORT_TREE) {
+            // need add the key prefix back
+            prefix = getPropertyPrefix(target.getRootDir(), Paths.get(fileResource.getPath()));
         }
+        Map<PropertySourceMeta, PropertySource<?>> documents = new LinkedHashMap<>(metaList.size() * 2);
+        for (PropertySourceMeta meta : metaList) {
+            int documentIndex = meta.getDocumentIndex();
+            meta.setLastModifyTime(modifyTime);
+            if (documentIndex >= newPropsList.size()) {
+                log.warn("document #{} not found in changed config file {}, skipped.", documentIndex, path);
+                continue;
+            }
+            PropertySource<?> newProps = newPropsList.get(documentIndex);
+            if (prefix != null) {
+                newProps = addConfigPropPrefix((OriginTrackedMapPropertySource) newProps, prefix);
+            }
+            // documents are matched by position, inserted or removed documents shift the others,
+            // documents discovered at runtime are installed empty, and have nothing to compare
+            if (!isEmpty(meta.getPropertySource()) && !getActivationProperties(newProps).equals(getActivationProperties(meta.getPropertySource()))) {
+                log.warn("activation properties of document #{} in config file {} changed, skipped. Restart to apply it.", documentIndex, path);
+                continue;
+            }
+            documents.put(meta, newProps);
+        }
+        return new ParsedConfigFile(path, documents, record, FILE_ORIGIN);
+    }
+
+    /**
+     * Whether the property source is known to have no property, eg: documents installed empty at runtime
+     */
+    private static boolean isEmpty(PropertySource<?> ps) {
+        return ps instanceof EnumerablePropertySource && ((EnumerablePropertySource<?>) ps).getPropertyNames().length == 0;
+    }
+
+    /**
+     * Properties deciding whether a document is active, such as 'spring.config.activate.on-profile',
+     * prefixed keys of config tree files are included as well
+     */
+    private static Map<String, Object> getActivationProperties(PropertySource<?> ps) {
+        if (!(ps instanceof EnumerablePropertySource)) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> result = new HashMap<>(4);
+        for (String name : ((EnumerablePropertySource<?>) ps).getPropertyNames()) {
+            if (name.startsWith(ACTIVATE_PROPERTY_PREFIX) || name.contains("." + ACTIVATE_PROPERTY_PREFIX)
+                    || name.equals(LEGACY_PROFILES_PROPERTY) || name.endsWith("." + LEGACY_PROFILES_PROPERTY)) {
+                result.put(name, ps.getProperty(name));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply stage, diff and replace property sources of changed documents, then hand events off to the notify stage
+     */
+    private void applyParsedConfigFile(ParsedConfigFile parsed) {
+        String path = parsed.getPath();
+        ReloadRecord record = parsed.getRecord();
+        PendingNotification notification = new PendingNotification(record, new LinkedHashMap<>(4));
+        try {
+            for (Map.Entry<PropertySourceMeta, PropertySource<?>> entry : parsed.getDocuments().entrySet()) {
+                PropertySourceMeta meta = entry.getKey();
+                Map<String, Object> patch = parsed.getPatch();
+                if (patch != null) {
+                    // patches are applied on current property source, which may be changed by rollback as well,
+                    // only patched keys are diffed, the fingerprint is unknown until next full delivery
+                    meta.setFingerprint(0L);
+                    PropertySource<?> patched = new OriginTrackedMapPropertySource(meta.getPropertySource().getName(),
+                            applyPatch(meta.getPropertySource(), patch), true);
+                    notification.add(applyDocumentChange(meta, patched, path, record, parsed.getOrigin(), patch.keySet()));
+                    continue;
+                }
+                long fingerprint = fingerprint(entry.getValue());
+                if (fingerprint == meta.getFingerprint()) {
+                    log.debug("document #{} of config file {} is not changed, skipped.", meta.getDocumentIndex(), path);
+                    continue;
+                }
+                meta.setFingerprint(fingerprint);
+                notification.add(applyDocumentChange(meta, entry.getValue(), path, record, parsed.getOrigin(), null));
+            }
+        } catch (RuntimeException ex) {
+            record.setOutcome(ReloadRecord.Outcome.FAILED);
+            log.error("apply changes of configuration file {} failed: ", path, ex);
+        }
+        if (notification.getEvents().isEmpty()) {
+            finishReloadRecord(record);
+        } else {
+            notifyStage.offer(path, notification);
+        }
+    }
+
+    /**
+     * Notify stage, publish events to dynamic beans and listeners, slow listeners won't block detecting and applying changes
+     */
+    private void notifyChanges(PendingNotification notification) {
+        ReloadRecord record = notification.getRecord();
+        try {
+            for (ConfigurationChangedEvent event : notification.getEvents().values()) {
+                long begin = System.nanoTime();
+                eventPublisher.publishEvent(event);
+                record.setBindNanos(record.getBindNanos() + System.nanoTime() - begin);
+            }
+        } catch (RuntimeException ex) {
+            record.setOutcome(ReloadRecord.Outcome.FAILED);
+            log.error("config changes of {} can not be published: ", record.getPath(), ex);
+        } finally {
+            finishReloadRecord(record);
+        }
+    }
+
+    /**
+     * Merge the pending notification of a file with a newer one, events of the same property source are coalesced
+     */
+    private static PendingNotification mergeNotifications(PendingNotification older, PendingNotification newer) {
+        Map<String, ConfigurationChangedEvent> events = new LinkedHashMap<>(older.getEvents());
+        newer.getEvents().forEach((name, event) -> events.merge(name, event, (a, b) -> {
+            Map<String, Object> diff = new HashMap<>(a.getDiff());
+            diff.putAll(b.getDiff());
+            ConfigurationChangedEvent merged = new ConfigurationChangedEvent(b.getPath(), a.getPrevious(), b.getCurrent(), diff);
+            merged.setEpoch(b.getEpoch());
+            Set<String> priorityKeys = new HashSet<>(a.getPriorityKeys());
+            priorityKeys.addAll(b.getPriorityKeys());
+            merged.setPriorityKeys(priorityKeys);
+            return merged;
+        }));
+        events.values().forEach(event -> event.setReloadRecord(newer.getRecord()));
+        return new PendingNotification(newer.getRecord(), events);
+    }
+
+    /**
+     * Run the task on the stage thread after pending items, or directly if already on it
+     */
+    private <V> V runOnStage(ReloadStage<?> stage, Callable<V> task) {
+        try {
+            return stage.isStageThread() ? task.call() : stage.submit(task).get(PIPELINE_AWAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void awaitPipelineIdle() {
+        try {
+            parseStage.awaitIdle(PIPELINE_AWAIT_TIMEOUT);
+            applyStage.awaitIdle(PIPELINE_AWAIT_TIMEOUT);
+            notifyStage.awaitIdle(PIPELINE_AWAIT_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            log.warn("config reload pipeline is not idle in time: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Diff and replace the property source of a document
+     *
+     * @param changedKeys keys to diff, null to diff the whole document
+     * @return the event to publish, null if no effective value changed
+     */
+    @SuppressWarnings("unchecked")
+    private ConfigurationChangedEvent applyDocumentChange(PropertySourceMeta meta, PropertySource<?> loadedProps, String path,
+                                                          ReloadRecord record, String origin, Set<String> changedKeys) {
+        String propertySourceName = meta.getPropertySource().getName();
         PropertySource<?> previous = env.getPropertySources().get(propertySourceName);
-        PropertySource<?> newProps = newPropsList.get(0);
         if (previous == null) {
             log.warn("previous property source can not be found, skipped.");
-            return;
+            return null;
         }
-        if (target.getType() == FileSystemWatchTarget.WatchTargetType.CONFIG_IMPORT_TREE) {
-            // need add the key prefix back
-            String prefix = getPropertyPrefix(target.getRootDir(), Paths.get(resource.getPath()));
-            newProps = addConfigPropPrefix((OriginTrackedMapPropertySource) newPropsList.get(0), prefix);
-        }
-        Map<String, Object> diff = ConfigurationChangedEvent.getPropertyDiff(
+        // keep the original name, otherwise the property source can not be found next time
+        PropertySource<?> newProps = new OriginTrackedMapPropertySource(propertySourceName, (Map<String, Object>) loadedProps.getSource(), true);
+        meta.setPropertySource(newProps);
+        long begin = System.nanoTime();
+        Map<String, Object> diff = changedKeys == null ? ConfigurationChangedEvent.getPropertyDiff(
                 (Map<Object, OriginTrackedValue>) previous.getSource(),
                 (Map<Object, OriginTrackedValue>) newProps.getSource()
+        ) : ConfigurationChangedEvent.getPropertyDiff(
+                (Map<Object, OriginTrackedValue>) previous.getSource(),
+                (Map<Object, OriginTrackedValue>) newProps.getSource(),
+                changedKeys
         );
+        long diffNanos = System.nanoTime() - begin;
+        record.setDiffNanos(record.getDiffNanos() + diffNanos);
+        ConfigReloadTracer tracer = RELOAD_TRACER;
+        if (tracer.isEnabled()) {
+            int removedKeys = (int) diff.values().stream().filter(Objects::isNull).count();
+            tracer.diffComputed(path, diff.size() - removedKeys, removedKeys, diffNanos);
+        }
         if (diff.size() == 0) {
             log.info("config file has been changed but no actual value changed, dynamic config event skipped.");
-            return;
+            return null;
         }
-        ConfigurationChangedEvent event = new ConfigurationChangedEvent(path, previous, newProps, diff);
+        recordChangeHistory(meta, (Map<?, ?>) previous.getSource(), diff, origin);
+        Map<String, Object> effectiveBefore = getEffectiveValues(diff.keySet());
         env.getPropertySources().replace(propertySourceName, newProps);
-        propertySourceMeta.setLastModifyTime(modifyTime);
-        eventPublisher.publishEvent(event);
+        if (cachedPropertySource != null) {
+            cachedPropertySource.invalidate(diff.keySet());
+        }
+        PLACEHOLDER_DEPENDENCY_INDEX.refresh(diff.keySet(), env.getPropertySources());
+        retainEffectiveChanges(diff, effectiveBefore);
+        if (diff.size() == 0) {
+            log.info("config file has been changed but changed keys are overridden by other property sources, dynamic config event skipped.");
+            return null;
+        }
+        ConfigSnapshot nextSnapshot = publishSnapshot(diff.keySet());
+        ConfigurationChangedEvent event = new ConfigurationChangedEvent(path, previous, newProps, diff);
+        event.setEpoch(nextSnapshot.getEpoch());
+        event.setReloadRecord(record);
+        record.setOutcome(ReloadRecord.Outcome.APPLIED);
+        record.setDiffSize(record.getDiffSize() + diff.size());
+        record.setEvents(record.getEvents() + 1);
+        dispatchPriorityChanges(event);
+        return event;
+    }
+
+    /**
+     * Coalesce pending deliveries of the same file or change source, the newer content wins,
+     * patches are merged in order, a patch after a full delivery is applied on its content
+     */
+    private static ParsedConfigFile mergeParsedConfigFiles(ParsedConfigFile older, ParsedConfigFile newer) {
+        if (newer.getPatch() == null) {
+            return newer;
+        }
+        if (older.getPatch() == null) {
+            Map<PropertySourceMeta, PropertySource<?>> documents = new LinkedHashMap<>(older.getDocuments().size() * 2);
+            older.getDocuments().forEach((meta, ps) -> documents.put(meta,
+                    new OriginTrackedMapPropertySource(ps.getName(), applyPatch(ps, newer.getPatch()), true)));
+            return new ParsedConfigFile(newer.getPath(), documents, newer.getRecord(), newer.getOrigin());
+        }
+        Map<String, Object> patch = new LinkedHashMap<>(older.getPatch());
+        patch.putAll(newer.getPatch());
+        return new ParsedConfigFile(newer.getPath(), newer.getDocuments(), newer.getRecord(), newer.getOrigin(), patch);
+    }
+
+    /**
+     * Copy the content of a property source with changes applied
+     *
+     * @param changes changed values, null values are removed keys
+     */
+    private static Map<String, Object> applyPatch(PropertySource<?> ps, Map<String, Object> changes) {
+        Map<?, ?> source = (Map<?, ?>) ps.getSource();
+        Map<String, Object> content = new LinkedHashMap<>((source.size() + changes.size()) * 4 / 3 + 1);
+        source.forEach((key, value) -> content.put(key.toString(), value));
+        changes.forEach((key, value) -> {
+            if (value == null) {
+                content.remove(key);
+            } else {
+                content.put(key, OriginTrackedValue.of(value));
+            }
+        });
+        return content;
+    }
+
+    private void dispatchPriorityChanges(ConfigurationChangedEvent event) {
+        if (priorityPrefixes.isEmpty() && PRIORITY_KEYS.isEmpty() && PRIORITY_PREFIXES.isEmpty()) {
+            return;
+        }
+        Map<String, Object> priorityDiff = new HashMap<>(4);
+        for (Map.Entry<String, Object> entry : event.getDiff().entrySet()) {
+            if (isPriorityKey(normalizePropKey(entry.getKey()))) {
+                priorityDiff.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (priorityDiff.isEmpty()) {
+            return;
+        }
+        event.setPriorityKeys(new HashSet<>(priorityDiff.keySet()));
+        priorityStage.offer(event.getCurrent().getName(), new PriorityConfigurationChangedEvent(event.getPath(), priorityDiff));
     }
 
-    private void closeConfigDirectoryWatch() {
-        if (watchServices.size() > 0) {
+    private boolean isPriorityKey(String normalizedKey) {
+        if (PRIORITY_KEYS.contains(normalizedKey)) {
+            return true;
+        }
+        boolean[] matched = new boolean[1];
+        forEachParentPath(normalizedKey, prefix -> matched[0] |= priorityPrefixes.contains(prefix) || PRIORITY_PREFIXES.contains(prefix));
+        return matched[0];
+    }
+
+    private void publishPriorityChanges(PriorityConfigurationChangedEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException ex) {
+            log.error("high priority config changes of {} can not be published: ", event.getPath(), ex);
+        }
+    }
+
+    private static PriorityConfigurationChangedEvent mergePriorityEvents(PriorityConfigurationChangedEvent older, PriorityConfigurationChangedEvent newer) {
+        Map<String, Object> diff = new HashMap<>(older.getDiff());
+        diff.putAll(newer.getDiff());
+        return new PriorityConfigurationChangedEvent(newer.getPath(), diff);
+    }
+
+    private void recordChangeHistory(PropertySourceMeta meta, Map<?, ?> previousSource, Map<String, Object> diff, String origin) {
+        Map<String, Object> oldValues = new HashMap<>(diff.size() * 2);
+        for (String key : diff.keySet()) {
+            Object value = previousSource.get(key);
+            oldValues.put(key, value instanceof OriginTrackedValue ? ((OriginTrackedValue) value).getValue() : value);
+        }
+        int version = meta.getHistory().record(oldValues, new HashMap<>(diff), origin);
+        log.debug("{} changes applied to {}, version: {}", origin, meta.getPropertySource().getName(), version);
+    }
+
+    /**
+     * Apply changes of a property source not backed by config files on the apply stage, then publish the event
+     * on the notify stage, so that they are ordered and coalesced with changes of config files and change sources
+     *
+     * @param record statistics of the change, finished after the event is published
+     * @param apply  applies the change to Environment and returns the event to publish, null if nothing changed
+     */
+    void applyChanges(ReloadRecord record, Callable<ConfigurationChangedEvent> apply) {
+        ConfigurationChangedEvent event = runOnStage(applyStage, () -> {
+            ConfigurationChangedEvent result = apply.call();
+            if (result != null) {
+                result.setReloadRecord(record);
+                record.setOutcome(ReloadRecord.Outcome.APPLIED);
+                record.setDiffSize(record.getDiffSize() + result.getDiff().size());
+                record.setEvents(record.getEvents() + 1);
+                dispatchPriorityChanges(result);
+            }
+            return result;
+        });
+        if (event == null) {
+            finishReloadRecord(record);
+            return;
+        }
+        PendingNotification notification = new PendingNotification(record, new LinkedHashMap<>(2));
+        notification.add(event);
+        notifyStage.offer(record.getPath(), notification);
+    }
+
+    /**
+     * Publish the snapshot of next epoch, with resolved values of changed keys and keys referencing them by placeholders
+     */
+    ConfigSnapshot publishSnapshot(Set<String> changedKeys) {
+        Set<String> keys = new HashSet<>(changedKeys);
+        keys.addAll(PLACEHOLDER_DEPENDENCY_INDEX.findDependents(changedKeys));
+        boolean relaxedLookup = env.getPropertySources().contains(ATTACHED_PROPERTY_SOURCE_NAME);
+        Map<String, Object> changes = new HashMap<>(keys.size() * 2);
+        for (String key : keys) {
             try {
-                for (WatchService w : watchServices) {
-                    w.close();
+                changes.put(key, env.getProperty(toLookupKey(key, relaxedLookup)));
+            } catch (Exception ex) {
+                // unresolvable placeholders, keep the value of previous epoch
+                log.debug("can not resolve value of key {} for config snapshot: {}", key, ex.getMessage());
+            }
+        }
+        // shared flags publish snapshots from their own thread
+        return snapshot.updateAndGet(current -> current.next(changes));
+    }
+
+    private String toLookupKey(String key, boolean relaxedLookup) {
+        if (relaxedLookup) {
+            String normalizedKey = normalizePropKey(key);
+            return ConfigurationPropertyName.isValid(normalizedKey) ? normalizedKey : key;
+        }
+        return key;
+    }
+
+    /**
+     * Resolve values of keys through the whole Environment, respecting property source precedence
+     */
+    private Map<String, Object> getEffectiveValues(Set<String> keys) {
+        boolean relaxedLookup = env.getPropertySources().contains(ATTACHED_PROPERTY_SOURCE_NAME);
+        Map<String, Object> values = new HashMap<>(keys.size() * 2);
+        for (String key : keys) {
+            Object value;
+            try {
+                value = env.getProperty(toLookupKey(key, relaxedLookup));
+            } catch (Exception ex) {
+                // unresolvable placeholders, treat as always changed
+                value = new UnresolvedValue();
+            }
+            values.put(key, value);
+        }
+        return values;
+    }
+
+    /**
+     * Remove keys from diff whose effective value doesn't move, eg. overridden by higher precedence property sources,
+     * removed keys still provided by lower precedence property sources fall back to their effective values
+     */
+    private void retainEffectiveChanges(Map<String, Object> diff, Map<String, Object> effectiveBefore) {
+        Map<String, Object> effectiveAfter = getEffectiveValues(diff.keySet());
+        diff.entrySet().removeIf(entry -> {
+            String key = entry.getKey();
+            Object after = effectiveAfter.get(key);
+            boolean unchanged = Objects.equals(effectiveBefore.get(key), after);
+            if (unchanged) {
+                log.debug("effective value of key {} is not changed, skip it", key);
+            } else if (entry.getValue() == null && after != null && !(after instanceof UnresolvedValue)) {
+                entry.setValue(after);
+            }
+            return unchanged;
+        });
+    }
+
+    private static final class UnresolvedValue {
+    }
+
+    /**
+     * Sink of one change source, full contents replace the property source of the source, patches are
+     * applied on its current content by the apply stage, coalesced deliveries are merged in order
+     */
+    private class SourceSink implements ConfigChangeSink {
+
+        private final String name;
+        private PropertySourceMeta meta;
+
+        SourceSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public synchronized void publish(Map<String, ?> newProperties) {
+            Map<String, Object> content = new LinkedHashMap<>(newProperties.size() * 2);
+            newProperties.forEach((key, value) -> {
+                if (value != null) {
+                    content.put(key, OriginTrackedValue.of(value));
                 }
-                log.info("config properties watcher bean is destroying, WatchService stopped.");
-            } catch (IOException e) {
-                log.warn("can not close config directory watcher. ", e);
+            });
+            PropertySourceMeta installed = installedMeta();
+            PropertySource<?> loaded = new OriginTrackedMapPropertySource(installed.getPropertySource().getName(), content, true);
+            applyStage.offer(name, new ParsedConfigFile(name, Collections.singletonMap(installed, loaded), new ReloadRecord(name, name), SOURCE_ORIGIN));
+        }
+
+        @Override
+        public synchronized void patch(Map<String, ?> changes) {
+            // documents are resolved by the apply stage
+            applyStage.offer(name, new ParsedConfigFile(name, Collections.singletonMap(installedMeta(), null), new ReloadRecord(name, name),
+                    SOURCE_ORIGIN, new LinkedHashMap<>(changes)));
+        }
+
+        @Override
+        public void reload(String location) {
+            reloadLocation(location);
+        }
+
+        private PropertySourceMeta installedMeta() {
+            if (meta == null) {
+                meta = installChangeSourcePropertySource(name);
+            }
+            return meta;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class ReloadRequest {
+        private final FileSystemWatchTarget target;
+        private final String path;
+        private final boolean forceReload;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class ParsedConfigFile {
+        private final String path;
+        /**
+         * meta -> loaded property source, null for patches
+         */
+        private final Map<PropertySourceMeta, PropertySource<?>> documents;
+        private final ReloadRecord record;
+        private final String origin;
+
+        /**
+         * Changed values of a patch, null values are removed keys, null if the whole content is delivered
+         */
+        private final Map<String, Object> patch;
+
+        ParsedConfigFile(String path, Map<PropertySourceMeta, PropertySource<?>> documents, ReloadRecord record, String origin) {
+            this(path, documents, record, origin, null);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PendingNotification {
+        private final ReloadRecord record;
+
+        /**
+         * property source name -> event
+         */
+        private final Map<String, ConfigurationChangedEvent> events;
+
+        void add(ConfigurationChangedEvent event) {
+            if (event != null) {
+                events.put(event.getCurrent().getName(), event);
             }
         }
     }
@@ -0,0 +1,23 @@
+package top.code2life.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Register the Reactor stream of config changes when Project Reactor is on the classpath.
+ *
+ * @author Code2Life
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "reactor.core.publisher.Flux")
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class DynamicConfigReactiveConfiguration {
+
+    @Bean
+    public ReactiveConfigChanges reactiveConfigChanges(Environment env) {
+        return new ReactiveConfigChanges(env);
+    }
+}
@@ -1,13 +1,16 @@
 package top.code2life.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -22,7 +25,7 @@ import java.util.stream.Collectors;
  **/
 @Component("featureGate")
 @RequiredArgsConstructor
-public class FeatureGate {
+public class FeatureGate implements SmartInitializingSingleton {
 
     /**
      * If some feature is configured as "all", it means this feature is enabled
@@ -34,6 +37,23 @@ public class FeatureGate {
 
     private final Environment environment;
 
+    /**
+     * Handles of shared flags by feature name, the slot lookup and name normalization are done once per name
+     */
+    private final Map<String, SharedFlagRegion.Flag> sharedFlags = new ConcurrentHashMap<>(16);
+
+    /**
+     * Optional property sources used by lookups, resolved on first use and again once all singletons are initialized,
+     * instead of searching the property sources on each lookup
+     */
+    private volatile PropertySources propertySources;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        propertySources = resolvePropertySources();
+        sharedFlags.clear();
+    }
+
     /**
      * Transform a comma separated string into a set,
      * indicate which entities enable that feature
@@ -70,10 +90,53 @@ public class FeatureGate {
      * @return if that feature is enabled or not
      */
     public boolean isFeatureEnabled(String featureName) {
+        PropertySources sources = propertySources;
+        if (sources == null) {
+            sources = resolvePropertySources();
+            propertySources = sources;
+        }
+        if (sources.sharedFlagRegion != null) {
+            // boolean flags in the shared region are read from mapped memory directly
+            SharedFlagRegion.Flag handle = sharedFlags.get(featureName);
+            if (handle == null) {
+                handle = sources.sharedFlagRegion.find(featureName);
+                if (handle != null) {
+                    sharedFlags.put(featureName, handle);
+                }
+            }
+            Object flag = handle == null ? null : handle.getValue();
+            if (flag instanceof Boolean) {
+                return (Boolean) flag;
+            }
+        }
+        CachedPropertySource cache = sources.cache;
+        if (cache != null && cache.isKnownMissing(featureName)) {
+            // short-circuited before reaching Environment, count the read here
+            if (sources.tracker != null) {
+                sources.tracker.record(featureName);
+            }
+            return false;
+        }
         String configVal = environment.getProperty(featureName);
         if (StringUtils.hasText(configVal)) {
             return Boolean.parseBoolean(configVal);
         }
         return false;
     }
+
+    private PropertySources resolvePropertySources() {
+        SharedFlagPropertySource sharedFlagSource = SharedFlagPropertySource.find(environment);
+        return new PropertySources(sharedFlagSource == null ? null : sharedFlagSource.getSource(),
+                CachedPropertySource.find(environment), AccessTrackingPropertySource.find(environment));
+    }
+
+    @RequiredArgsConstructor
+    private static class PropertySources {
+
+        private final SharedFlagRegion sharedFlagRegion;
+
+        private final CachedPropertySource cache;
+
+        private final AccessTrackingPropertySource tracker;
+    }
 }
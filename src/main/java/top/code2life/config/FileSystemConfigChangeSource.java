@@ -0,0 +1,541 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static top.code2life.config.ConfigurationUtils.normalizePath;
+import static top.code2life.config.ConfigurationUtils.trimRelativePathAndReplaceBackSlash;
+
+/**
+ * The config file source, watching directories of spring.config.location and spring.config.import by WatchService,
+ * or polling the '..data' symbolic link of Kubernetes ConfigMap/Secret, or polling all files if WatchService
+ * is not available. When the version manifest of 'dynamic-config.manifest.file-name' exists in a watched directory,
+ * only the manifest is watched and polled, files listed with changed hashes are reloaded.
+ * Roots of spring.config.import=configtree: are watched for added or removed property files and subdirectories,
+ * up to 'dynamic-config.config-tree.max-depth', so that their directories are watched or unwatched at runtime.
+ * Detected files are handed to the parse stage of the watcher by path,
+ * since parsing them depends on their watch target.
+ *
+ * @author Code2Life
+ * @see DynamicConfigPropertiesWatcher
+ */
+@Slf4j
+class FileSystemConfigChangeSource implements ConfigChangeSource {
+
+    static final String NAME = "config-files";
+
+    private static final long SYMBOL_LINK_POLLING_INTERVAL = 5000;
+    private static final long NORMAL_FILE_POLLING_INTERVAL = 90000;
+    private static final int MAX_WATCH_TARGETS = 32;
+    private static final String WATCH_THREAD = "config-watcher";
+    private static final String POLLING_THREAD = "config-watcher-polling";
+    private static final String DISCOVERY_THREAD = "config-watcher-discovery";
+
+    static final String CONFIG_TREE_MAX_DEPTH_PROPERTY = "dynamic-config.config-tree.max-depth";
+
+    /**
+     * Kubernetes will inject ..data when mounting configMap or secret, it's not watchable symbol link
+     */
+    static final String HIDDEN_SYMBOL_LINK_DIR = "..data";
+
+    private final Map<String, FileSystemWatchTarget> targets;
+    private final FileChangeHandler handler;
+    private final ConfigTreeChangeHandler treeHandler;
+    private final int configTreeDepth;
+    private final String manifestFileName;
+    private final long manifestPollInterval;
+    private final Map<String, ConfigManifest> manifests = new ConcurrentHashMap<>(4);
+    private final List<WatchService> watchServices = new CopyOnWriteArrayList<>();
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+    private final Map<String, WatchService> targetWatchServices = new ConcurrentHashMap<>(4);
+    private final Map<String, List<ExecutorService>> targetExecutors = new ConcurrentHashMap<>(4);
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final Map<String, Long> symbolicLinkModifiedTimes = new ConcurrentHashMap<>(4);
+
+    /**
+     * @param manifestFileName     file name of version manifest in watched directories, null to watch all files
+     * @param manifestPollInterval interval of checking manifest files in milliseconds
+     * @param configTreeDepth      max depth of property files in config trees, root directory children are depth 1
+     */
+    FileSystemConfigChangeSource(Map<String, FileSystemWatchTarget> targets, String manifestFileName, long manifestPollInterval,
+                                 int configTreeDepth, FileChangeHandler handler, ConfigTreeChangeHandler treeHandler) {
+        this.targets = targets;
+        this.manifestFileName = manifestFileName;
+        this.manifestPollInterval = manifestPollInterval;
+        this.configTreeDepth = configTreeDepth;
+        this.handler = handler;
+        this.treeHandler = treeHandler;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    public void start(ConfigChangeSink sink) {
+        if (targets.size() > MAX_WATCH_TARGETS) {
+            log.error("too many watch targets of dynamic config, skipped.");
+            return;
+        }
+        Set<Path> configTreeRoots = new LinkedHashSet<>(2);
+        for (FileSystemWatchTarget target : targets.values()) {
+            startWatchTarget(target);
+            if (target.getType() == FileSystemWatchTarget.WatchTargetType.CONFIG_IMPORT_TREE && target.getRootDir() != null) {
+                configTreeRoots.add(target.getRootDir());
+            }
+        }
+        for (Path root : configTreeRoots) {
+            ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, DISCOVERY_THREAD + "-" + threadCounter.getAndIncrement()));
+            executors.add(executor);
+            executor.submit(() -> this.discoverConfigTree(root));
+        }
+    }
+
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    private void startWatchTarget(FileSystemWatchTarget target) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, WATCH_THREAD + "-" + threadCounter.getAndIncrement()));
+        executors.add(executor);
+        targetExecutors.computeIfAbsent(target.getNormalizedDir(), k -> new CopyOnWriteArrayList<>()).add(executor);
+        executor.submit(() -> this.startWatchDir(target));
+    }
+
+    /**
+     * Stop watching and polling the directory of a target, when it has no config files anymore
+     */
+    private void stopWatchTarget(FileSystemWatchTarget target) {
+        String dir = target.getNormalizedDir();
+        WatchService watchService = targetWatchServices.remove(dir);
+        if (watchService != null) {
+            watchServices.remove(watchService);
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                log.warn("can not close watch service of {}: {}", dir, ex.getMessage());
+            }
+        }
+        List<ExecutorService> dirExecutors = targetExecutors.remove(dir);
+        if (dirExecutors != null) {
+            for (ExecutorService executor : dirExecutors) {
+                executor.shutdownNow();
+                executors.remove(executor);
+            }
+        }
+        manifests.remove(dir);
+        symbolicLinkModifiedTimes.remove(dir);
+    }
+
+    @Override
+    public void stop() {
+        closeConfigDirectoryWatch();
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+        executors.clear();
+    }
+
+    /**
+     * Hand all config files of all watch targets off to the parse stage
+     *
+     * @param forceReload read files regardless of their modified time
+     */
+    void reloadAllConfigFiles(boolean forceReload) {
+        for (FileSystemWatchTarget target : targets.values()) {
+            reloadAllConfigFiles(target, forceReload);
+        }
+    }
+
+    /**
+     * Find the watch target of a config file, the deepest watched directory wins
+     *
+     * @param fullPath normalized path of the config file
+     * @return the watch target, null if the file is not under any watched directory
+     */
+    FileSystemWatchTarget findWatchTarget(String fullPath) {
+        FileSystemWatchTarget result = null;
+        for (FileSystemWatchTarget target : targets.values()) {
+            String dir = target.getNormalizedDir();
+            boolean contained = fullPath.startsWith(dir.endsWith("/") ? dir : dir + "/");
+            if (contained && (result == null || dir.length() > result.getNormalizedDir().length())) {
+                result = target;
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("BusyWait")
+    private void startWatchDir(FileSystemWatchTarget target) {
+        try {
+            String configLocation = target.getNormalizedDir();
+            List<String> filterFiles = target.getFilterFiles();
+            log.info("start watching configuration directory: {}", configLocation);
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            watchServices.add(watchService);
+            targetWatchServices.put(configLocation, watchService);
+            try {
+                Paths.get(configLocation).register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            } catch (IOException | UnsupportedOperationException ex) {
+                if (startManifestWatch(target)) {
+                    log.warn("WatchService is not available for {}, will polling manifest file only: {}", configLocation, ex.getMessage());
+                    return;
+                }
+                log.warn("WatchService is not available for {}, will polling config files instead: {}", configLocation, ex.getMessage());
+                target.setWatchMode(FileSystemWatchTarget.WatchMode.FALLBACK_POLL);
+                startFixedRateCheckThread(target, () -> reloadAllConfigFiles(target, false), NORMAL_FILE_POLLING_INTERVAL);
+                return;
+            }
+            checkChangesWithPeriod(target);
+            WatchKey key;
+            while ((key = watchService.take()) != null) {
+                // avoid receiving two ENTRY_MODIFY events: file modified and timestamp updated
+                Thread.sleep(50);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Path path = (Path) event.context();
+                    String confPath = path.toString();
+                    if (target.getWatchMode() == FileSystemWatchTarget.WatchMode.MANIFEST) {
+                        if (confPath.equals(manifestFileName)) {
+                            checkManifest(target);
+                        }
+                    } else if (filterFiles == null) {
+                        reloadChangedFile(target, confPath, false);
+                    } else {
+                        if (filterFiles.contains(confPath)) {
+                            reloadChangedFile(target, confPath, false);
+                        } else {
+                            log.debug("changed path {} is not watched file, skipped.", confPath);
+                        }
+                    }
+                }
+                key.reset();
+            }
+            log.warn("config directory watch stopped unexpectedly, dynamic configuration won't take effect.");
+        } catch (ClosedWatchServiceException cse) {
+            log.info("configuration watcher has been stopped.");
+        } catch (Exception ex) {
+            log.error("failed to watch config directory: ", ex);
+        }
+    }
+
+    private void checkChangesWithPeriod(FileSystemWatchTarget target) throws IOException {
+        if (startManifestWatch(target)) {
+            return;
+        }
+        String configLocation = target.getNormalizedDir();
+        Path symLinkPath = Paths.get(configLocation, HIDDEN_SYMBOL_LINK_DIR);
+        boolean hasDotDataLinkFile = new File(configLocation, HIDDEN_SYMBOL_LINK_DIR).exists();
+        if (hasDotDataLinkFile) {
+            log.info("ConfigMap/Secret mode detected, will polling symbolic link instead.");
+            target.setWatchMode(FileSystemWatchTarget.WatchMode.SYMLINK_POLL);
+            symbolicLinkModifiedTimes.put(configLocation, Files.getLastModifiedTime(symLinkPath, LinkOption.NOFOLLOW_LINKS).toMillis());
+            startFixedRateCheckThread(target, () -> checkSymbolicLink(target), SYMBOL_LINK_POLLING_INTERVAL);
+        } else {
+            // longer check for all config files, make up mechanism if WatchService doesn't work
+            target.setWatchMode(FileSystemWatchTarget.WatchMode.EVENTS);
+            startFixedRateCheckThread(target, () -> reloadAllConfigFiles(target, false), NORMAL_FILE_POLLING_INTERVAL);
+        }
+    }
+
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    private void startFixedRateCheckThread(FileSystemWatchTarget target, Runnable cmd, long interval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, POLLING_THREAD));
+        executors.add(executor);
+        targetExecutors.computeIfAbsent(target.getNormalizedDir(), k -> new CopyOnWriteArrayList<>()).add(executor);
+        executor.scheduleWithFixedDelay(cmd, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkSymbolicLink(FileSystemWatchTarget target) {
+        try {
+            Path symLinkPath = Paths.get(target.getNormalizedDir(), HIDDEN_SYMBOL_LINK_DIR);
+            long tmp = Files.getLastModifiedTime(symLinkPath, LinkOption.NOFOLLOW_LINKS).toMillis();
+            Long previous = symbolicLinkModifiedTimes.put(target.getNormalizedDir(), tmp);
+            if (previous == null || tmp != previous) {
+                reloadAllConfigFiles(target, true);
+            }
+        } catch (IOException ex) {
+            log.warn("could not check symbolic link of config dir: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Switch the target to manifest mode if its manifest file exists, the current manifest is the baseline
+     *
+     * @return true if the target is in manifest mode
+     */
+    private boolean startManifestWatch(FileSystemWatchTarget target) throws IOException {
+        if (manifestFileName == null) {
+            return false;
+        }
+        Path manifestPath = Paths.get(target.getNormalizedDir(), manifestFileName);
+        if (!Files.isRegularFile(manifestPath)) {
+            return false;
+        }
+        ConfigManifest manifest = ConfigManifest.read(manifestPath);
+        manifests.put(target.getNormalizedDir(), manifest);
+        target.setWatchMode(FileSystemWatchTarget.WatchMode.MANIFEST);
+        log.info("manifest mode detected, will watch {} only, version: {}, files: {}", manifestPath, manifest.getVersion(), manifest.getHashes().size());
+        startFixedRateCheckThread(target, () -> checkManifest(target), manifestPollInterval);
+        return true;
+    }
+
+    /**
+     * Read the manifest if it's touched, then reload files whose hash is changed, without stat-ing other files
+     */
+    private synchronized void checkManifest(FileSystemWatchTarget target) {
+        String configLocation = target.getNormalizedDir();
+        Path manifestPath = Paths.get(configLocation, manifestFileName);
+        ConfigManifest previous = manifests.get(configLocation);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(manifestPath, BasicFileAttributes.class);
+            if (previous != null && previous.isSameFile(attributes.lastModifiedTime().toMillis(), attributes.size())) {
+                return;
+            }
+            ConfigManifest current = ConfigManifest.read(manifestPath);
+            manifests.put(configLocation, current);
+            List<String> changedFiles = previous == null ? new ArrayList<>(current.getHashes().keySet()) : current.changedFiles(previous);
+            if (changedFiles.isEmpty()) {
+                return;
+            }
+            log.info("manifest of {} is changed, version: {}, changed files: {}", configLocation, current.getVersion(), changedFiles.size());
+            String dirPrefix = configLocation.endsWith("/") ? configLocation : configLocation + "/";
+            for (String file : changedFiles) {
+                String fullPath = normalizePath(file, configLocation);
+                if (!fullPath.startsWith(dirPrefix) || file.equals(manifestFileName)) {
+                    log.warn("file {} in manifest is out of the config directory, skipped.", file);
+                    continue;
+                }
+                if (target.getFilterFiles() == null || target.getFilterFiles().contains(file)) {
+                    reloadChangedFile(target, fullPath, true);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            log.debug("manifest file {} is not found, maybe being replaced.", manifestPath);
+        } catch (IOException | IllegalArgumentException ex) {
+            log.warn("could not check manifest of config dir: {}", ex.getMessage());
+        }
+    }
+
+    private void reloadAllConfigFiles(FileSystemWatchTarget target, boolean forceReload) {
+        Path dir = Paths.get(target.getNormalizedDir());
+        // files of subdirectories belong to other targets, eg: config tree directories under the config location
+        try (Stream<Path> paths = Files.walk(dir, 1)) {
+            paths.filter(path -> !Files.isDirectory(path)).forEach((path) -> {
+                String rawPath = path.toString();
+                if (target.getFilterFiles() != null) {
+                    // filter files are relative to the target directory
+                    if (target.getFilterFiles().contains(dir.relativize(path).toString())) {
+                        reloadChangedFile(target, rawPath, forceReload);
+                    }
+                } else {
+                    reloadChangedFile(target, rawPath, forceReload);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("can not walk through config directory: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Watch directories of a config tree for created or deleted entries, then compare property files in the tree
+     * with watched ones. The tree is scanned periodically as well, in case of missed events.
+     */
+    @SuppressWarnings("BusyWait")
+    private void discoverConfigTree(Path root) {
+        log.info("start discovering config tree: {}, max depth: {}", root, configTreeDepth);
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            watchServices.add(watchService);
+            Map<Path, WatchKey> dirKeys = new HashMap<>(8);
+            while (true) {
+                registerTreeDirectories(root, watchService, dirKeys);
+                discoverTreeFiles(root);
+                WatchKey key = watchService.poll(NORMAL_FILE_POLLING_INTERVAL, TimeUnit.MILLISECONDS);
+                // wait for files of the same batch being written, then consume all pending events
+                Thread.sleep(50);
+                while (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                    key = watchService.poll();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+            log.info("config tree discovery has been stopped: {}", root);
+        } catch (Exception ex) {
+            log.error("failed to discover config tree {}: ", root, ex);
+        }
+    }
+
+    /**
+     * Register watch keys of new directories in the tree, and cancel keys of vanished ones
+     */
+    private void registerTreeDirectories(Path root, WatchService watchService, Map<Path, WatchKey> dirKeys) {
+        Set<Path> dirs;
+        // property files are at most configTreeDepth, their directories at most configTreeDepth - 1
+        try (Stream<Path> paths = Files.walk(root, Math.max(configTreeDepth - 1, 0), FileVisitOption.FOLLOW_LINKS)) {
+            dirs = paths.filter(path -> Files.isDirectory(path) && !isHiddenPath(root.relativize(path))).collect(Collectors.toSet());
+        } catch (IOException | UncheckedIOException ex) {
+            log.debug("can not walk through config tree {}: {}", root, ex.getMessage());
+            return;
+        }
+        dirKeys.entrySet().removeIf(entry -> {
+            if (dirs.contains(entry.getKey()) && entry.getValue().isValid()) {
+                return false;
+            }
+            entry.getValue().cancel();
+            log.debug("directory of config tree is removed, unregistered: {}", entry.getKey());
+            return true;
+        });
+        for (Path dir : dirs) {
+            if (dirKeys.containsKey(dir)) {
+                continue;
+            }
+            try {
+                dirKeys.put(dir, dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE));
+                log.debug("directory of config tree is registered: {}", dir);
+            } catch (IOException | UnsupportedOperationException ex) {
+                log.debug("can not watch directory of config tree {}, rely on periodic scan: {}", dir, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compare property files in the tree with watched ones, watch targets are created for new directories,
+     * and removed when their last config file vanishes
+     */
+    private synchronized void discoverTreeFiles(Path root) {
+        List<Path> files = ConfigurationUtils.scanPropertyFilesInTree(root, configTreeDepth);
+        if (files == null) {
+            return;
+        }
+        Set<String> current = new LinkedHashSet<>(files.size() * 2);
+        for (Path file : files) {
+            current.add(trimRelativePathAndReplaceBackSlash(file.toString()));
+        }
+        Set<String> watched = new LinkedHashSet<>(current.size() * 2);
+        for (FileSystemWatchTarget target : targets.values()) {
+            if (target.getType() == FileSystemWatchTarget.WatchTargetType.CONFIG_IMPORT_TREE && root.equals(target.getRootDir())) {
+                for (String file : target.getFilterFiles()) {
+                    watched.add(target.getNormalizedDir() + "/" + file);
+                }
+            }
+        }
+        for (String path : current) {
+            if (!watched.contains(path)) {
+                addTreeFile(root, path);
+            }
+        }
+        for (String path : watched) {
+            if (!current.contains(path)) {
+                removeTreeFile(path);
+            }
+        }
+    }
+
+    private void addTreeFile(Path root, String fullPath) {
+        int idx = fullPath.lastIndexOf('/');
+        String dir = fullPath.substring(0, idx);
+        String fileName = fullPath.substring(idx + 1);
+        FileSystemWatchTarget target = targets.get(dir);
+        if (target == null) {
+            if (targets.size() >= MAX_WATCH_TARGETS) {
+                log.warn("too many watch targets of dynamic config, new config file is skipped: {}", fullPath);
+                return;
+            }
+            target = new FileSystemWatchTarget(FileSystemWatchTarget.WatchTargetType.CONFIG_IMPORT_TREE, dir);
+            target.setRootDir(root);
+            target.setFilterFiles(new CopyOnWriteArrayList<>(Collections.singletonList(fileName)));
+            targets.put(dir, target);
+            startWatchTarget(target);
+        } else if (target.getType() != FileSystemWatchTarget.WatchTargetType.CONFIG_IMPORT_TREE) {
+            log.warn("config file in config tree is watched as another type of target, skipped: {}", fullPath);
+            return;
+        } else {
+            target.getFilterFiles().add(fileName);
+        }
+        log.info("config file is added to config tree: {}", fullPath);
+        treeHandler.treeFileChanged(target, fullPath, true);
+    }
+
+    private void removeTreeFile(String fullPath) {
+        int idx = fullPath.lastIndexOf('/');
+        FileSystemWatchTarget target = targets.get(fullPath.substring(0, idx));
+        if (target == null) {
+            return;
+        }
+        target.getFilterFiles().remove(fullPath.substring(idx + 1));
+        log.info("config file is removed from config tree: {}", fullPath);
+        treeHandler.treeFileChanged(target, fullPath, false);
+        if (target.getFilterFiles().isEmpty()) {
+            targets.remove(target.getNormalizedDir());
+            stopWatchTarget(target);
+            log.info("no config file left in directory, stop watching: {}", target.getNormalizedDir());
+        }
+    }
+
+    private static boolean isHiddenPath(Path relativePath) {
+        for (Path element : relativePath) {
+            if (element.toString().startsWith("..")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reloadChangedFile(FileSystemWatchTarget target, String rawPath, boolean forceReload) {
+        String fullPathStr = normalizePath(rawPath, target.getNormalizedDir());
+        if (HIDDEN_SYMBOL_LINK_DIR.equals(Paths.get(fullPathStr).getFileName().toString())) {
+            return;
+        }
+        handler.fileChanged(target, fullPathStr, forceReload);
+    }
+
+    private void closeConfigDirectoryWatch() {
+        if (watchServices.size() > 0) {
+            try {
+                for (WatchService w : watchServices) {
+                    w.close();
+                }
+                log.info("config properties watcher bean is destroying, WatchService stopped.");
+            } catch (IOException e) {
+                log.warn("can not close config directory watcher. ", e);
+            }
+        }
+    }
+
+    /**
+     * Receiver of config files appeared in or vanished from config trees
+     */
+    @FunctionalInterface
+    interface ConfigTreeChangeHandler {
+
+        /**
+         * @param target   watch target of the directory of the file
+         * @param fullPath normalized path of the file
+         * @param added    true if the file appeared, false if it vanished
+         */
+        void treeFileChanged(FileSystemWatchTarget target, String fullPath, boolean added);
+    }
+
+    /**
+     * Receiver of changed config files
+     */
+    @FunctionalInterface
+    interface FileChangeHandler {
+
+        /**
+         * @param target      watch target which detected the change
+         * @param fullPath    normalized path of the changed file
+         * @param forceReload read the file regardless of its modified time
+         */
+        void fileChanged(FileSystemWatchTarget target, String fullPath, boolean forceReload);
+    }
+}
@@ -25,6 +25,8 @@ public class FileSystemWatchTarget {
 
     private Path rootDir;
 
+    private WatchMode watchMode;
+
     FileSystemWatchTarget(WatchTargetType type, String originalPath) {
         this.type = type;
         if (originalPath.startsWith(CONFIG_FILE_PREFIX)) {
@@ -65,4 +67,30 @@ public class FileSystemWatchTarget {
          */
         CONFIG_IMPORT_TREE
     }
+
+    /**
+     * How changes of the watch target are detected
+     */
+    public enum WatchMode {
+
+        /**
+         * WatchService events, with periodic polling of all files as make up mechanism
+         */
+        EVENTS,
+
+        /**
+         * Polling the '..data' symbolic link of Kubernetes ConfigMap/Secret volume
+         */
+        SYMLINK_POLL,
+
+        /**
+         * WatchService is not available, polling all files periodically
+         */
+        FALLBACK_POLL,
+
+        /**
+         * Watching and polling the version manifest only, files whose hash is changed are reloaded
+         */
+        MANIFEST
+    }
 }
@@ -0,0 +1,87 @@
+package top.code2life.config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Change source fed by application code, useful as a stand-in of remote sources in tests,
+ * or to override properties at runtime. Changes are delivered immediately, properties set before
+ * the source is started are delivered on start.
+ * <p>
+ * eg:
+ * {@literal @}Bean
+ * InMemoryConfigChangeSource overrides() {
+ * return new InMemoryConfigChangeSource("overrides");
+ * }
+ * overrides.put("rate-limit", 100);
+ *
+ * @author Code2Life
+ * @see ConfigChangeSource
+ */
+public class InMemoryConfigChangeSource implements ConfigChangeSource {
+
+    private final String name;
+    private final Map<String, Object> initialProperties = new LinkedHashMap<>(8);
+    private volatile ConfigChangeSink sink;
+
+    public InMemoryConfigChangeSource(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void start(ConfigChangeSink sink) {
+        this.sink = sink;
+        if (!initialProperties.isEmpty()) {
+            sink.publish(initialProperties);
+            initialProperties.clear();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        sink = null;
+    }
+
+    public void put(String key, Object value) {
+        patch(Collections.singletonMap(key, value));
+    }
+
+    public void remove(String key) {
+        patch(Collections.singletonMap(key, null));
+    }
+
+    /**
+     * @param changes changed keys and their new values, null value means removing the key
+     */
+    public synchronized void patch(Map<String, ?> changes) {
+        if (sink != null) {
+            sink.patch(changes);
+            return;
+        }
+        changes.forEach((key, value) -> {
+            if (value == null) {
+                initialProperties.remove(key);
+            } else {
+                initialProperties.put(key, value);
+            }
+        });
+    }
+
+    /**
+     * @param properties all properties of this source, keys absent from the map are removed
+     */
+    public synchronized void publish(Map<String, ?> properties) {
+        if (sink != null) {
+            sink.publish(properties);
+            return;
+        }
+        initialProperties.clear();
+        patch(properties);
+    }
+}
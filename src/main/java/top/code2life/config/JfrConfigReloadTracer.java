@@ -0,0 +1,192 @@
+package top.code2life.config;
+
+import jdk.jfr.*;
+
+/**
+ * Emit JDK Flight Recorder events of each reload stage, only registered when 'dynamic-config.jfr.enabled' is true
+ * and JFR is available in current JVM. Events are instant events carrying the measured stage time,
+ * they are recorded in the 'Dynamic Config' category when a recording is running.
+ * Without a recording enabling them, the tracer reports itself disabled, so that stages are not timed
+ * and no event is allocated.
+ *
+ * @author Code2Life
+ * @see DynamicConfigJfrConfiguration
+ */
+class JfrConfigReloadTracer implements ConfigReloadTracer {
+
+    private static final String CATEGORY = "Dynamic Config";
+
+    /**
+     * Enabled state of each event type is maintained by JFR, checking it is a volatile read
+     */
+    private final EventType fileChangedType = EventType.getEventType(ConfigFileChanged.class);
+    private final EventType parsedType = EventType.getEventType(ConfigParsed.class);
+    private final EventType diffComputedType = EventType.getEventType(ConfigDiffComputed.class);
+    private final EventType fieldBoundType = EventType.getEventType(DynamicFieldBound.class);
+    private final EventType propertiesReboundType = EventType.getEventType(ConfigurationPropertiesRebound.class);
+
+    @Override
+    public boolean isEnabled() {
+        return fileChangedType.isEnabled() || parsedType.isEnabled() || diffComputedType.isEnabled()
+                || fieldBoundType.isEnabled() || propertiesReboundType.isEnabled();
+    }
+
+    @Override
+    public void fileChanged(String target, String path) {
+        if (!fileChangedType.isEnabled()) {
+            return;
+        }
+        ConfigFileChanged event = new ConfigFileChanged();
+        if (event.shouldCommit()) {
+            event.target = target;
+            event.path = path;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void parsed(String path, long bytes, long nanos) {
+        if (!parsedType.isEnabled()) {
+            return;
+        }
+        ConfigParsed event = new ConfigParsed();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.bytes = bytes;
+            event.parseTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void diffComputed(String path, int changedKeys, int removedKeys, long nanos) {
+        if (!diffComputedType.isEnabled()) {
+            return;
+        }
+        ConfigDiffComputed event = new ConfigDiffComputed();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.changedKeys = changedKeys;
+            event.removedKeys = removedKeys;
+            event.diffTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void fieldBound(String key, String beanName, String fieldName, long nanos) {
+        if (!fieldBoundType.isEnabled()) {
+            return;
+        }
+        DynamicFieldBound event = new DynamicFieldBound();
+        if (event.shouldCommit()) {
+            event.key = key;
+            event.beanName = beanName;
+            event.fieldName = fieldName;
+            event.bindTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void propertiesRebound(String beanName, String prefix, long nanos) {
+        if (!propertiesReboundType.isEnabled()) {
+            return;
+        }
+        ConfigurationPropertiesRebound event = new ConfigurationPropertiesRebound();
+        if (event.shouldCommit()) {
+            event.beanName = beanName;
+            event.prefix = prefix;
+            event.bindTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Name("top.code2life.config.ConfigFileChanged")
+    @Label("Config File Changed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConfigFileChanged extends Event {
+
+        @Label("Watch Target")
+        String target;
+
+        @Label("Path")
+        String path;
+    }
+
+    @Name("top.code2life.config.ConfigParsed")
+    @Label("Config Parsed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConfigParsed extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Parse Time")
+        @Timespan
+        long parseTime;
+    }
+
+    @Name("top.code2life.config.ConfigDiffComputed")
+    @Label("Config Diff Computed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConfigDiffComputed extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Changed Keys")
+        int changedKeys;
+
+        @Label("Removed Keys")
+        int removedKeys;
+
+        @Label("Diff Time")
+        @Timespan
+        long diffTime;
+    }
+
+    @Name("top.code2life.config.DynamicFieldBound")
+    @Label("Dynamic Field Bound")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class DynamicFieldBound extends Event {
+
+        @Label("Property Key")
+        String key;
+
+        @Label("Bean Name")
+        String beanName;
+
+        @Label("Field")
+        String fieldName;
+
+        @Label("Bind Time")
+        @Timespan
+        long bindTime;
+    }
+
+    @Name("top.code2life.config.ConfigurationPropertiesRebound")
+    @Label("ConfigurationProperties Rebound")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConfigurationPropertiesRebound extends Event {
+
+        @Label("Bean Name")
+        String beanName;
+
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Bind Time")
+        @Timespan
+        long bindTime;
+    }
+}
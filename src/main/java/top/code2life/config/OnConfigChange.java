@@ -0,0 +1,37 @@
+package top.code2life.config;
+
+import java.lang.annotation.*;
+
+/**
+ * The annotation @OnConfigChange could be added on methods of any bean,
+ * the method is invoked after dynamic beans are updated, only when keys under the prefix changed,
+ * with the slice of the diff under the prefix, keys are the same as {@link ConfigurationChangedEvent#getDiff()}.
+ * Parameters of the method could be: none, a Map of changed keys and new values (null means the key is deleted),
+ * and/or the ConfigurationChangedEvent.
+ *
+ * Example:
+ *
+ * {@literal @}Component
+ * class LimitsWatcher {
+ *     {@literal @}OnConfigChange(prefix = "payments.limits")
+ *     public void onLimitsChanged(Map&lt;String, Object&gt; changes) {
+ *         // ...
+ *     }
+ * }
+ *
+ * Listeners are indexed by prefix, the dispatch cost depends on the depth of changed keys and matched listeners,
+ * instead of the number of all listeners.
+ *
+ * @author Code2Life
+ * @see ConfigurationChangedEventHandler
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface OnConfigChange {
+
+    /**
+     * Prefix of the changed keys, relaxed binding supported, empty means all keys
+     */
+    String prefix() default "";
+}
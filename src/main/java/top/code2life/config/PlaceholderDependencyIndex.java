@@ -0,0 +1,166 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+
+import java.util.*;
+
+import static top.code2life.config.ConfigurationUtils.ATTACHED_PROPERTY_SOURCE_NAME;
+import static top.code2life.config.ConfigurationUtils.VALUE_EXPR_PREFIX;
+import static top.code2life.config.ConfigurationUtils.extractValueFromExpr;
+import static top.code2life.config.ConfigurationUtils.normalizePropKey;
+
+/**
+ * Reverse index of placeholder references between property keys.
+ * For 'a.url=${base.host}/x', the index records 'base.host' is referenced by 'a.url',
+ * so that when 'base.host' changes, the binders of 'a.url' could be refreshed as well.
+ * Only the effective raw value of a key is indexed, which is the value of the first property source defining it,
+ * the same one the Environment resolves. All keys are normalized into kebab case.
+ *
+ * @author Code2Life
+ * @see ConfigurationChangedEventHandler
+ */
+@Slf4j
+class PlaceholderDependencyIndex {
+
+    /**
+     * referenced key -> keys whose value contains the placeholder of referenced key
+     */
+    private final Map<String, Set<String>> dependents = new HashMap<>(16);
+
+    /**
+     * key -> keys referenced by its value
+     */
+    private final Map<String, List<String>> references = new HashMap<>(16);
+
+    synchronized void rebuild(Iterable<PropertySource<?>> propertySources) {
+        dependents.clear();
+        references.clear();
+        Set<String> indexedKeys = new HashSet<>(64);
+        for (PropertySource<?> ps : propertySources) {
+            if (!(ps instanceof EnumerablePropertySource) || isDelegatingSource(ps)) {
+                continue;
+            }
+            for (String name : ((EnumerablePropertySource<?>) ps).getPropertyNames()) {
+                String normalizedKey = normalizePropKey(name);
+                // overridden by property sources with higher precedence
+                if (!indexedKeys.add(normalizedKey)) {
+                    continue;
+                }
+                Object value = ps.getProperty(name);
+                if (hasPlaceholder(value)) {
+                    addReferences(normalizedKey, value.toString());
+                }
+            }
+        }
+        log.debug("placeholder dependency index built, {} keys contain placeholders", references.size());
+    }
+
+    /**
+     * Update references of changed keys from their effective raw values, after property sources are changed
+     *
+     * @param keys            changed keys
+     * @param propertySources all property sources, ordered by precedence
+     */
+    synchronized void refresh(Collection<String> keys, Iterable<PropertySource<?>> propertySources) {
+        for (String key : keys) {
+            update(key, getEffectiveRawValue(key, propertySources));
+        }
+    }
+
+    /**
+     * Update references of a key after its value changed
+     *
+     * @param key   property key
+     * @param value new effective raw value, null if the key is deleted
+     */
+    synchronized void update(String key, Object value) {
+        String normalizedKey = normalizePropKey(key);
+        List<String> previous = references.remove(normalizedKey);
+        if (previous != null) {
+            for (String ref : previous) {
+                Set<String> keys = dependents.get(ref);
+                if (keys != null) {
+                    keys.remove(normalizedKey);
+                    if (keys.isEmpty()) {
+                        dependents.remove(ref);
+                    }
+                }
+            }
+        }
+        if (hasPlaceholder(value)) {
+            addReferences(normalizedKey, value.toString());
+        }
+    }
+
+    /**
+     * Find all keys depending on the changed keys directly or transitively, changed keys are excluded
+     *
+     * @param changedKeys changed keys, normalized or not
+     * @return normalized dependent keys
+     */
+    synchronized Set<String> findDependents(Collection<String> changedKeys) {
+        if (dependents.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> visited = new HashSet<>(changedKeys.size() * 2);
+        Deque<String> queue = new ArrayDeque<>(changedKeys.size());
+        for (String key : changedKeys) {
+            String normalizedKey = normalizePropKey(key);
+            if (visited.add(normalizedKey)) {
+                queue.add(normalizedKey);
+            }
+        }
+        Set<String> result = new LinkedHashSet<>(4);
+        while (!queue.isEmpty()) {
+            Set<String> keys = dependents.get(queue.poll());
+            if (keys == null) {
+                continue;
+            }
+            for (String dependent : keys) {
+                if (visited.add(dependent)) {
+                    result.add(dependent);
+                    queue.add(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addReferences(String normalizedKey, String value) {
+        List<String> refs = extractValueFromExpr(value);
+        if (refs.isEmpty()) {
+            return;
+        }
+        references.put(normalizedKey, refs);
+        for (String ref : refs) {
+            dependents.computeIfAbsent(ref, k -> new HashSet<>(2)).add(normalizedKey);
+        }
+    }
+
+    private static Object getEffectiveRawValue(String key, Iterable<PropertySource<?>> propertySources) {
+        for (PropertySource<?> ps : propertySources) {
+            if (isDelegatingSource(ps)) {
+                continue;
+            }
+            Object value = ps.getProperty(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Property sources looking up other property sources, their values are found in the delegated ones
+     */
+    private static boolean isDelegatingSource(PropertySource<?> ps) {
+        return ps instanceof CachedPropertySource || ps instanceof AccessTrackingPropertySource
+                || ATTACHED_PROPERTY_SOURCE_NAME.equals(ps.getName());
+    }
+
+    private static boolean hasPlaceholder(Object value) {
+        return value instanceof CharSequence && value.toString().contains(VALUE_EXPR_PREFIX + "{");
+    }
+}
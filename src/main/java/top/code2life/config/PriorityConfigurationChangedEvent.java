@@ -0,0 +1,36 @@
+package top.code2life.config;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Map;
+
+/**
+ * Changes of high priority keys, published on the priority lane before the ConfigurationChangedEvent of the same change,
+ * only handled by {@link ConfigurationChangedEventHandler}, other listeners still receive the whole diff
+ * from ConfigurationChangedEvent.
+ *
+ * @author Code2Life
+ * @see DynamicConfig#highPriority()
+ */
+@Getter
+class PriorityConfigurationChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Path of the file that changed
+     */
+    private final String path;
+
+    /**
+     * Changed high priority keys and their newest values, null means the value deleted
+     */
+    private final Map<String, Object> diff;
+
+    PriorityConfigurationChangedEvent(String path, Map<String, Object> diff) {
+        super(path);
+        this.path = path;
+        this.diff = diff;
+    }
+}
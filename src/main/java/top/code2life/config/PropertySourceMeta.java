@@ -16,4 +16,19 @@ class PropertySourceMeta {
 
     private long lastModifyTime;
 
+    /**
+     * Index of the document in a multi-document file, 0 for single document files
+     */
+    private int documentIndex;
+
+    /**
+     * Fingerprint of the document content, unchanged documents are skipped when reloading
+     */
+    private long fingerprint;
+
+    /**
+     * Applied changes of the property source, for rolling back without touching the file
+     */
+    private ChangeHistory history;
+
 }
\ No newline at end of file
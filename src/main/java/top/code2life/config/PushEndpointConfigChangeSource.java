@@ -0,0 +1,288 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.env.Environment;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local push endpoint, lets deployment agents trigger reloads right after writing config files, instead of waiting
+ * for WatchService events or symbolic link polling. It listens on the Unix domain socket of
+ * 'dynamic-config.push-endpoint.socket', readable and writable by the owner only, or on the loopback port of
+ * 'dynamic-config.push-endpoint.port' (0 for a random port, which is logged). The loopback port is not protected
+ * by file permissions, a socket configured on a JDK without Unix domain socket support (before 16) falls back to it
+ * only if the port is configured explicitly, otherwise the endpoint is not started.
+ * <p>
+ * The protocol is line based UTF-8 text, each command is answered by 'OK' or 'ERR message' line:
+ * <pre>
+ * RELOAD [path]     read the config file again regardless of its modified time, all watched files if no path
+ * SET key=value     patch a property of this source, overrides config files
+ * UNSET key         remove a property of this source, falls back to config files
+ * COMMIT            deliver pending SET/UNSET as one change, also done before RELOAD and when the connection ends
+ * </pre>
+ * eg: printf 'SET ops.kill-switch=true\nCOMMIT\n' | nc -U /run/app/config.sock
+ *
+ * @author Code2Life
+ * @see ConfigChangeSource
+ */
+@Slf4j
+@ConditionalOnExpression("'${" + PushEndpointConfigChangeSource.PUSH_SOCKET_PROPERTY + ":}' != '' or '${" + PushEndpointConfigChangeSource.PUSH_PORT_PROPERTY + ":}' != ''")
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class PushEndpointConfigChangeSource implements ConfigChangeSource {
+
+    static final String NAME = "push-endpoint";
+    static final String PUSH_SOCKET_PROPERTY = "dynamic-config.push-endpoint.socket";
+    static final String PUSH_PORT_PROPERTY = "dynamic-config.push-endpoint.port";
+
+    /**
+     * Never listen on loopback port
+     */
+    static final int NO_PORT = -1;
+
+    private static final String PUSH_THREAD = "config-watcher-push";
+
+    private final String socketPath;
+    private final int port;
+    private final AtomicInteger connectionCounter = new AtomicInteger();
+    private volatile ServerSocketChannel serverChannel;
+    private volatile SocketAddress localAddress;
+    private volatile Path boundSocketFile;
+    private ExecutorService executor;
+
+    @Autowired
+    PushEndpointConfigChangeSource(Environment env) {
+        this(env.getProperty(PUSH_SOCKET_PROPERTY, ""), env.getProperty(PUSH_PORT_PROPERTY, Integer.class, NO_PORT));
+    }
+
+    /**
+     * @param socketPath path of the Unix domain socket, empty to listen on the loopback port
+     * @param port       loopback port, used when socketPath is empty or Unix domain socket is not supported,
+     *                   -1 to never listen on loopback port
+     */
+    public PushEndpointConfigChangeSource(String socketPath, int port) {
+        this.socketPath = socketPath == null ? "" : socketPath;
+        this.port = port;
+        if (this.socketPath.isEmpty() && port == NO_PORT) {
+            throw new IllegalArgumentException("either " + PUSH_SOCKET_PROPERTY + " or " + PUSH_PORT_PROPERTY + " should be set");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * @return bound address, a UnixDomainSocketAddress or InetSocketAddress, null if not started
+     */
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    @Override
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    public synchronized void start(ConfigChangeSink sink) throws IOException {
+        serverChannel = socketPath.isEmpty() ? null : openUnixDomainChannel(Paths.get(socketPath));
+        if (serverChannel == null) {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            localAddress = serverChannel.getLocalAddress();
+        }
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, PUSH_THREAD + "-" + connectionCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ServerSocketChannel channel = serverChannel;
+        executor.submit(() -> acceptConnections(channel, sink));
+        log.info("config push endpoint is listening on {}", localAddress);
+    }
+
+    @Override
+    public synchronized void stop() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (boundSocketFile != null) {
+                Files.deleteIfExists(boundSocketFile);
+            }
+        } catch (IOException ex) {
+            log.warn("can not close config push endpoint: {}", ex.getMessage());
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Open the server channel of Unix domain socket by reflection, since the API is only available since JDK 16.
+     * The socket is bound in a directory accessible by the owner only, and moved to the socket path after
+     * its permissions are restricted, so it's never reachable with permissions of the umask.
+     *
+     * @return bound channel, null if Unix domain socket is not supported and the loopback port is configured
+     * @throws IOException if the socket can not be bound, or it's not supported and no loopback port is configured
+     */
+    private ServerSocketChannel openUnixDomainChannel(Path socketFile) throws IOException {
+        Method addressFactory;
+        ServerSocketChannel channel;
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            addressFactory = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+            channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (ReflectiveOperationException | IllegalArgumentException ex) {
+            if (port == NO_PORT) {
+                throw new IOException("Unix domain socket is not supported by current JDK, set " + PUSH_PORT_PROPERTY
+                        + " to listen on loopback port instead", ex);
+            }
+            log.warn("Unix domain socket is not supported by current JDK, config push endpoint will listen on loopback port {} instead", port);
+            return null;
+        }
+        Path absoluteSocketFile = socketFile.toAbsolutePath();
+        boolean posix = absoluteSocketFile.getFileSystem().supportedFileAttributeViews().contains("posix");
+        Path bindDir = null;
+        try {
+            bindDir = posix ? Files.createTempDirectory(absoluteSocketFile.getParent(), ".push-",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")))
+                    : Files.createTempDirectory(absoluteSocketFile.getParent(), ".push-");
+            Path bindFile = bindDir.resolve("sock");
+            channel.bind(toSocketAddress(addressFactory, bindFile));
+            if (posix) {
+                Files.setPosixFilePermissions(bindFile, PosixFilePermissions.fromString("rw-------"));
+            }
+            // replaces the stale socket file of previous process if any
+            Files.move(bindFile, absoluteSocketFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        } finally {
+            if (bindDir != null) {
+                Files.deleteIfExists(bindDir.resolve("sock"));
+                Files.deleteIfExists(bindDir);
+            }
+        }
+        boundSocketFile = absoluteSocketFile;
+        localAddress = toSocketAddress(addressFactory, absoluteSocketFile);
+        return channel;
+    }
+
+    private static SocketAddress toSocketAddress(Method addressFactory, Path socketFile) throws IOException {
+        try {
+            return (SocketAddress) addressFactory.invoke(null, socketFile);
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("invalid Unix domain socket path: " + socketFile, ex);
+        }
+    }
+
+    private void acceptConnections(ServerSocketChannel channel, ConfigChangeSink sink) {
+        try {
+            while (channel.isOpen()) {
+                SocketChannel connection = channel.accept();
+                executor.submit(() -> handleConnection(connection, sink));
+            }
+        } catch (ClosedChannelException ex) {
+            log.info("config push endpoint has been stopped.");
+        } catch (Exception ex) {
+            log.error("config push endpoint stopped unexpectedly: ", ex);
+        }
+    }
+
+    private void handleConnection(SocketChannel connection, ConfigChangeSink sink) {
+        Map<String, Object> pending = new LinkedHashMap<>(8);
+        // closing the streams closes the connection
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(Channels.newOutputStream(connection), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String reply;
+                try {
+                    handleCommand(line, pending, sink);
+                    reply = "OK";
+                } catch (IllegalArgumentException ex) {
+                    reply = "ERR " + ex.getMessage();
+                }
+                writer.write(reply);
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException ex) {
+            log.debug("config push connection closed: {}", ex.getMessage());
+        } finally {
+            commit(pending, sink);
+        }
+    }
+
+    private void handleCommand(String line, Map<String, Object> pending, ConfigChangeSink sink) {
+        // like properties files, trailing whitespaces of values are kept
+        String stripped = stripLeading(line);
+        int space = stripped.indexOf(' ');
+        String command = space < 0 ? stripped.trim() : stripped.substring(0, space);
+        String argument = space < 0 ? "" : stripLeading(stripped.substring(space + 1));
+        switch (command.toUpperCase()) {
+            case "SET":
+                int eq = argument.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("expected SET key=value");
+                }
+                pending.put(argument.substring(0, eq).trim(), stripLeading(argument.substring(eq + 1)));
+                break;
+            case "UNSET":
+                if (argument.trim().isEmpty()) {
+                    throw new IllegalArgumentException("expected UNSET key");
+                }
+                pending.put(argument.trim(), null);
+                break;
+            case "COMMIT":
+                commit(pending, sink);
+                break;
+            case "RELOAD":
+                commit(pending, sink);
+                sink.reload(argument.trim().isEmpty() ? null : argument.trim());
+                break;
+            case "":
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + command);
+        }
+    }
+
+    private static String stripLeading(String str) {
+        int begin = 0;
+        while (begin < str.length() && Character.isWhitespace(str.charAt(begin))) {
+            begin++;
+        }
+        return str.substring(begin);
+    }
+
+    private void commit(Map<String, Object> pending, ConfigChangeSink sink) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        sink.patch(new LinkedHashMap<>(pending));
+        pending.clear();
+    }
+}
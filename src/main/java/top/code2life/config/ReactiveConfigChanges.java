@@ -0,0 +1,123 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static top.code2life.config.ConfigurationUtils.normalizePropKey;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PLACEHOLDER_DEPENDENCY_INDEX;
+
+/**
+ * Reactor view of config changes, only active when Project Reactor is on the classpath.
+ * Changes are emitted after dynamic beans are updated, each changed key and each key referencing it by placeholders
+ * is one {@link ConfigChange}. Every returned Flux keeps only the latest pending change for a slow subscriber,
+ * the emitting thread is never blocked and no unbounded queue is built.
+ * <pre>
+ * reactiveConfigChanges.values("rate-limit", Integer.class)
+ *         .switchMap(limit -&gt; ...)
+ * </pre>
+ *
+ * @author Code2Life
+ * @see DynamicConfigReactiveConfiguration
+ */
+@Slf4j
+public class ReactiveConfigChanges {
+
+    private final Environment env;
+    private final Sinks.Many<ConfigChange> sink = Sinks.many().multicast().directBestEffort();
+
+    ReactiveConfigChanges(Environment env) {
+        this.env = env;
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ConfigurationChangedEvent.class)
+    public synchronized void onConfigurationChanged(ConfigurationChangedEvent event) {
+        if (sink.currentSubscriberCount() == 0) {
+            return;
+        }
+        Map<String, Object> diff = event.getDiff();
+        Set<String> keys = new LinkedHashSet<>(diff.keySet());
+        keys.addAll(PLACEHOLDER_DEPENDENCY_INDEX.findDependents(diff.keySet()));
+        for (String key : keys) {
+            Object value;
+            try {
+                value = env.getProperty(key);
+            } catch (Exception ex) {
+                // unresolvable placeholders, emit the raw value
+                value = diff.get(key);
+            }
+            Sinks.EmitResult result = sink.tryEmitNext(new ConfigChange(normalizePropKey(key), value, event.getPath(), event.getEpoch()));
+            if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+                log.warn("config change of key {} can not be emitted to reactive subscribers: {}", key, result);
+            }
+        }
+    }
+
+    /**
+     * @return all config changes
+     */
+    public Flux<ConfigChange> changes() {
+        return sink.asFlux().onBackpressureLatest();
+    }
+
+    /**
+     * @param prefix prefix of changed keys, relaxed binding supported
+     * @return config changes of the prefix and keys under it
+     */
+    public Flux<ConfigChange> changes(String prefix) {
+        String normalizedPrefix = normalizePropKey(prefix);
+        return sink.asFlux().filter(change -> matchPrefix(change.getKey(), normalizedPrefix)).onBackpressureLatest();
+    }
+
+    /**
+     * @param key  property key, relaxed binding supported
+     * @param type target type, converted by the Environment
+     * @return current value of the key, empty if the key does not exist
+     */
+    public <T> Mono<T> value(String key, Class<T> type) {
+        return Mono.fromCallable(() -> env.getProperty(key, type));
+    }
+
+    /**
+     * Current value of the key if exists, followed by each new value, deletions of the key are not emitted
+     *
+     * @param key  property key, relaxed binding supported
+     * @param type target type, converted by the Environment
+     * @return values of the key
+     */
+    public <T> Flux<T> values(String key, Class<T> type) {
+        String normalizedKey = normalizePropKey(key);
+        Flux<T> updates = sink.asFlux()
+                .filter(change -> normalizedKey.equals(change.getKey()))
+                .handle((change, emitter) -> {
+                    T value = env.getProperty(key, type);
+                    if (value != null) {
+                        emitter.next(value);
+                    }
+                });
+        // read the current value with the lock of emitting, so that no change is missed between the read and updates
+        Mono<T> current = Mono.fromCallable(() -> {
+            synchronized (this) {
+                return env.getProperty(key, type);
+            }
+        });
+        return Flux.merge(updates, current).distinctUntilChanged().onBackpressureLatest();
+    }
+
+    private static boolean matchPrefix(String key, String prefix) {
+        if (!key.startsWith(prefix)) {
+            return false;
+        }
+        return key.length() == prefix.length() || key.charAt(prefix.length()) == '.' || key.charAt(prefix.length()) == '[';
+    }
+}
@@ -0,0 +1,115 @@
+package top.code2life.config;
+
+import lombok.Data;
+
+/**
+ * Statistics of one config file reload, durations are in nanoseconds
+ *
+ * @author Code2Life
+ * @see ConfigReloadObserver
+ */
+@Data
+public class ReloadRecord {
+
+    /**
+     * Directory of the watch target which detected the change
+     */
+    private String target;
+
+    /**
+     * Path of the reloaded file
+     */
+    private String path;
+
+    /**
+     * Size of the file content
+     */
+    private long bytes;
+
+    /**
+     * Time of reading file content
+     */
+    private long readNanos;
+
+    /**
+     * Time of PropertySourceLoader parsing file content
+     */
+    private long parseNanos;
+
+    /**
+     * Time of computing diff of all changed documents
+     */
+    private long diffNanos;
+
+    /**
+     * Time of binding new values to dynamic beans, including other event listeners
+     */
+    private long bindNanos;
+
+    /**
+     * Number of changed keys published in events
+     */
+    private int diffSize;
+
+    /**
+     * Number of @Value fields updated
+     */
+    private int updatedFields;
+
+    /**
+     * Number of @ConfigurationProperties beans re-bound
+     */
+    private int reboundBeans;
+
+    /**
+     * Number of @OnConfigChange methods invoked
+     */
+    private int notifiedListeners;
+
+    /**
+     * Number of ConfigurationChangedEvent published
+     */
+    private int events;
+
+    private Outcome outcome = Outcome.NO_OP;
+
+    /**
+     * Epoch millis when the reload finished
+     */
+    private long finishedAt;
+
+    ReloadRecord(String target, String path) {
+        this.target = target;
+        this.path = path;
+    }
+
+    /**
+     * Total time of all stages
+     *
+     * @return total nanoseconds
+     */
+    public long getTotalNanos() {
+        return readNanos + parseNanos + diffNanos + bindNanos;
+    }
+
+    /**
+     * Result of a reload
+     */
+    public enum Outcome {
+
+        /**
+         * Changes applied and events published
+         */
+        APPLIED,
+
+        /**
+         * File reloaded but no effective value changed
+         */
+        NO_OP,
+
+        /**
+         * Reload failed because of IO or parsing errors
+         */
+        FAILED
+    }
+}
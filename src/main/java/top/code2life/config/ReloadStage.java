@@ -0,0 +1,99 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * One stage of the reload pipeline, running on its own thread.
+ * Pending items are keyed, usually by file path, when a newer item of the same key arrives before the older one is taken,
+ * they are merged into one, so the hand-off queue is bounded by the number of keys and producers never block.
+ *
+ * @author Code2Life
+ * @see DynamicConfigPropertiesWatcher
+ */
+@Slf4j
+class ReloadStage<T> {
+
+    private final String name;
+    private final Map<String, T> pending = new ConcurrentHashMap<>(8);
+    private final ExecutorService executor;
+    private final BinaryOperator<T> merger;
+    private final Consumer<T> superseded;
+    private final Consumer<T> handler;
+    private volatile Thread thread;
+
+    /**
+     * @param name       thread name of the stage
+     * @param merger     merge the pending older item and the newer item into one
+     * @param superseded called with the older item after it's merged, outside of any lock
+     * @param handler    process one item on the stage thread
+     */
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    ReloadStage(String name, BinaryOperator<T> merger, Consumer<T> superseded, Consumer<T> handler) {
+        this.name = name;
+        this.merger = merger;
+        this.superseded = superseded;
+        this.handler = handler;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            thread = new Thread(r, name);
+            return thread;
+        });
+    }
+
+    void offer(String key, T item) {
+        Object[] previous = new Object[1];
+        pending.compute(key, (k, old) -> {
+            previous[0] = old;
+            return old == null ? item : merger.apply(old, item);
+        });
+        if (previous[0] != null) {
+            log.debug("pending item of {} in stage {} is superseded by a newer one", key, name);
+            @SuppressWarnings("unchecked")
+            T old = (T) previous[0];
+            superseded.accept(old);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                T current = pending.remove(key);
+                if (current != null) {
+                    handler.accept(current);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.remove(key);
+            log.debug("stage {} has been stopped, {} skipped.", name, key);
+        }
+    }
+
+    /**
+     * Run a task on the stage thread after all pending items
+     */
+    <V> Future<V> submit(Callable<V> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Wait until all items offered before have been processed
+     */
+    void awaitIdle(long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+        if (isStageThread()) {
+            return;
+        }
+        executor.submit(() -> {
+        }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    boolean isStageThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+}
@@ -0,0 +1,40 @@
+package top.code2life.config;
+
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+
+/**
+ * Property source backed by a {@link SharedFlagRegion}, values are read from the mapped memory on each lookup,
+ * so the Environment always sees the latest flags, even before SharedFlagWatcher publishes their changes.
+ *
+ * @author Code2Life
+ * @see SharedFlagWatcher
+ */
+class SharedFlagPropertySource extends EnumerablePropertySource<SharedFlagRegion> {
+
+    static final String SHARED_FLAG_PROPERTY_SOURCE_NAME = "dynamicConfigSharedFlags";
+
+    SharedFlagPropertySource(SharedFlagRegion region) {
+        super(SHARED_FLAG_PROPERTY_SOURCE_NAME, region);
+    }
+
+    static SharedFlagPropertySource find(Environment environment) {
+        if (!(environment instanceof ConfigurableEnvironment)) {
+            return null;
+        }
+        PropertySource<?> ps = ((ConfigurableEnvironment) environment).getPropertySources().get(SHARED_FLAG_PROPERTY_SOURCE_NAME);
+        return ps instanceof SharedFlagPropertySource ? (SharedFlagPropertySource) ps : null;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return source.getValues().keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return source.getValue(name);
+    }
+}
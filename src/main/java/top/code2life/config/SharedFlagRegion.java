@@ -0,0 +1,667 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static top.code2life.config.ConfigurationUtils.normalizePropKey;
+
+/**
+ * Flags shared by JVMs on the same host through a memory-mapped file of fixed-layout slots,
+ * reading a flag is a few loads from the mapped memory, no parsing and no reflective binding involved.
+ * File layout: header of [magic 'DCFL', layout version, slot count, allocated slots], then slots of
+ * [sequence, value bits, type, name length, name]. Booleans, longs and doubles are stored as 64 bits.
+ * <p>
+ * Each slot is guarded by its sequence number: a writer makes it odd before changing the slot and even after,
+ * readers retry while it's odd or changed during the read. Slots are appended and never moved,
+ * a removed flag keeps its slot with type {@link #TYPE_UNSET}. Only one process is supposed to write at a time.
+ * A slot left odd by a crashed writer reads as unset, so that lookups fall through to other property sources,
+ * until it's written again or {@link #repair(String) repaired}.
+ * <p>
+ * eg:
+ * SharedFlagRegion region = SharedFlagRegion.open(Paths.get("/dev/shm/app-flags"), 256);
+ * SharedFlagRegion.Flag killSwitch = region.flag("ops.kill-switch");
+ * if (killSwitch.getBoolean(false)) { ... }
+ * <p>
+ * Flags could be changed from shell by the main method of this class:
+ * java -cp spring-boot-dynamic-config.jar top.code2life.config.SharedFlagRegion /dev/shm/app-flags set ops.kill-switch true
+ *
+ * @author Code2Life
+ * @see SharedFlagWatcher
+ */
+@Slf4j
+public final class SharedFlagRegion implements Closeable {
+
+    static final int MAGIC = 0x4443464C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 128;
+    static final int MAX_NAME_LENGTH = SLOT_SIZE - 18;
+
+    public static final byte TYPE_UNSET = 0;
+    public static final byte TYPE_BOOLEAN = 1;
+    public static final byte TYPE_LONG = 2;
+    public static final byte TYPE_DOUBLE = 3;
+
+    private static final int SLOT_COUNT_OFFSET = 8;
+    private static final int ALLOCATED_OFFSET = 12;
+    private static final int SEQ_OFFSET = 0;
+    private static final int VALUE_OFFSET = 8;
+    private static final int TYPE_OFFSET = 16;
+    private static final int NAME_LENGTH_OFFSET = 17;
+    private static final int NAME_OFFSET = 18;
+    private static final int SPINS_BEFORE_YIELD = 1 << 10;
+    private static final int MAX_READ_SPINS = 1 << 20;
+    private static final int MAX_ALIASES = 4096;
+
+    /**
+     * VarHandle fences are not available on Java 8, fences of sun.misc.Unsafe are looked up reflectively.
+     * Readers only issue load fences and never store to shared memory, so reads don't contend with each other,
+     * store fences are issued by writers. Null if Unsafe is not accessible, see {@link #fallbackFence()}
+     */
+    private static final MethodHandle LOAD_FENCE = findFence("loadFence");
+    private static final MethodHandle STORE_FENCE = findFence("storeFence");
+
+    /**
+     * Only used without Unsafe, a volatile store followed by a volatile load acts as a full fence
+     */
+    private static volatile int fence;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final Map<String, Integer> slotIndex = new ConcurrentHashMap<>(64);
+
+    /**
+     * Slots of names not written as is, eg: camel case names looked up by the Environment, -1 if absent,
+     * cleared when new slots are indexed
+     */
+    private final Map<String, Integer> aliasIndex = new ConcurrentHashMap<>(64);
+    private volatile int indexedSlots;
+
+    /**
+     * slot -> odd sequence number it's stuck at, reads of these slots give up at once
+     */
+    private final Map<Integer, Long> stuckSlots = new ConcurrentHashMap<>(4);
+
+    private SharedFlagRegion(Path path, FileChannel channel, MappedByteBuffer buffer, int slotCount) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Map the flag file, it's created and initialized with the given slot count if absent or empty
+     *
+     * @param path      flag file, a file under /dev/shm avoids disk write back
+     * @param slotCount max flags of a new file, ignored if the file exists
+     * @return the mapped region
+     * @throws IOException if the file can not be mapped, or it's not a flag file
+     */
+    public static SharedFlagRegion open(Path path, int slotCount) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean initialize = channel.size() == 0;
+            if (!initialize) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("not a dynamic config flag file: " + path);
+                }
+                if (header.getInt(4) != VERSION) {
+                    throw new IOException("unsupported flag file version: " + header.getInt(4));
+                }
+                slotCount = header.getInt(SLOT_COUNT_OFFSET);
+            }
+            if (slotCount <= 0) {
+                throw new IllegalArgumentException("slot count of flag file should be positive");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+            if (initialize) {
+                buffer.putInt(4, VERSION);
+                buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+                buffer.putInt(ALLOCATED_OFFSET, 0);
+                // magic is written at last, a half initialized file won't be recognized
+                storeFence();
+                buffer.putInt(0, MAGIC);
+                log.info("shared flag file created: {}, slots: {}", path, slotCount);
+            }
+            return new SharedFlagRegion(path, channel, buffer, slotCount);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return number of slots taken by flags, including removed ones
+     */
+    public int getAllocatedSlots() {
+        return Math.min(buffer.getInt(ALLOCATED_OFFSET), slotCount);
+    }
+
+    /**
+     * Find the slot of a flag, slots appended by other processes are indexed on demand
+     *
+     * @param name flag name
+     * @return slot index, -1 if the flag has never been written
+     */
+    public int slotOf(String name) {
+        Integer slot = slotIndex.get(name);
+        if (slot == null && indexNewSlots()) {
+            slot = slotIndex.get(name);
+        }
+        if (slot != null) {
+            return slot;
+        }
+        slot = aliasIndex.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        int indexed = indexedSlots;
+        String normalized = normalizePropKey(name);
+        slot = normalized == null ? null : slotIndex.get(normalized);
+        int result = slot == null ? -1 : slot;
+        if (aliasIndex.size() >= MAX_ALIASES) {
+            aliasIndex.clear();
+        }
+        aliasIndex.put(name, result);
+        if (indexedSlots != indexed) {
+            // new slots indexed meanwhile, the result may be stale
+            aliasIndex.remove(name);
+        }
+        return result;
+    }
+
+    /**
+     * Get a handle of the flag if it has been written, no slot is allocated
+     *
+     * @param name flag name
+     * @return handle bound to the slot of the flag, null if the flag has never been written
+     */
+    public Flag find(String name) {
+        int slot = slotOf(name);
+        return slot < 0 ? null : new Flag(slot);
+    }
+
+    /**
+     * Get a handle of the flag for repeated reads without name lookup, the flag is created as unset if absent
+     *
+     * @param name flag name
+     * @return handle bound to the slot of the flag
+     */
+    public Flag flag(String name) {
+        int slot = slotOf(name);
+        if (slot < 0) {
+            slot = allocate(normalizeName(name));
+        }
+        return new Flag(slot);
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        int slot = slotOf(name);
+        return slot < 0 ? defaultValue : readBits(slot, TYPE_BOOLEAN, defaultValue ? 1L : 0L) != 0L;
+    }
+
+    public long getLong(String name, long defaultValue) {
+        int slot = slotOf(name);
+        return slot < 0 ? defaultValue : readBits(slot, TYPE_LONG, defaultValue);
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        int slot = slotOf(name);
+        return slot < 0 ? defaultValue : Double.longBitsToDouble(readBits(slot, TYPE_DOUBLE, Double.doubleToRawLongBits(defaultValue)));
+    }
+
+    /**
+     * Read the value of a flag as Boolean, Long or Double
+     *
+     * @param name flag name
+     * @return current value, null if the flag is absent or removed
+     */
+    public Object getValue(String name) {
+        int slot = slotOf(name);
+        return slot < 0 ? null : readValue(slot);
+    }
+
+    public void setBoolean(String name, boolean value) {
+        write(name, TYPE_BOOLEAN, value ? 1L : 0L);
+    }
+
+    public void setLong(String name, long value) {
+        write(name, TYPE_LONG, value);
+    }
+
+    public void setDouble(String name, double value) {
+        write(name, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Mark the flag as unset, its slot is kept for the name
+     *
+     * @param name flag name
+     */
+    public void remove(String name) {
+        int slot = slotOf(name);
+        if (slot >= 0) {
+            writeSlot(slot, TYPE_UNSET, 0L);
+        }
+    }
+
+    /**
+     * @return names and values of all flags which are set
+     */
+    public Map<String, Object> getValues() {
+        indexNewSlots();
+        int allocated = getAllocatedSlots();
+        Map<String, Object> values = new LinkedHashMap<>(allocated * 2);
+        for (int slot = 0; slot < allocated; slot++) {
+            Object value = readValue(slot);
+            if (value != null) {
+                values.put(readName(slot), value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sequence number of a slot, it changes on each write of the slot, it's odd while the slot is being written
+     *
+     * @param slot slot index
+     * @return the sequence number
+     */
+    long sequence(int slot) {
+        return buffer.getLong(slotOffset(slot) + SEQ_OFFSET);
+    }
+
+    String readName(int slot) {
+        int offset = slotOffset(slot);
+        int length = buffer.get(offset + NAME_LENGTH_OFFSET) & 0xFF;
+        byte[] bytes = new byte[Math.min(length, MAX_NAME_LENGTH)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + NAME_OFFSET + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a consistent pair of type and value bits of a slot
+     *
+     * @return Boolean, Long or Double, null if the slot is unset
+     */
+    Object readValue(int slot) {
+        int offset = slotOffset(slot);
+        for (int spins = 0; ; spins++) {
+            long seq = buffer.getLong(offset + SEQ_OFFSET);
+            if ((seq & 1L) != 0) {
+                if (!backOff(slot, seq, spins)) {
+                    return null;
+                }
+                continue;
+            }
+            loadFence();
+            byte type = buffer.get(offset + TYPE_OFFSET);
+            long bits = buffer.getLong(offset + VALUE_OFFSET);
+            loadFence();
+            if (buffer.getLong(offset + SEQ_OFFSET) == seq) {
+                return toValue(type, bits);
+            }
+            backOff(slot, seq, spins);
+        }
+    }
+
+    /**
+     * Read value bits of a slot without boxing
+     *
+     * @return value bits, or the default bits if the slot is not of the expected type or stuck
+     */
+    private long readBits(int slot, byte expectedType, long defaultBits) {
+        int offset = slotOffset(slot);
+        for (int spins = 0; ; spins++) {
+            long seq = buffer.getLong(offset + SEQ_OFFSET);
+            if ((seq & 1L) != 0) {
+                if (!backOff(slot, seq, spins)) {
+                    return defaultBits;
+                }
+                continue;
+            }
+            loadFence();
+            byte type = buffer.get(offset + TYPE_OFFSET);
+            long bits = buffer.getLong(offset + VALUE_OFFSET);
+            loadFence();
+            if (buffer.getLong(offset + SEQ_OFFSET) == seq) {
+                return type == expectedType ? bits : defaultBits;
+            }
+            backOff(slot, seq, spins);
+        }
+    }
+
+    /**
+     * Busy spin at first, then yield to the writer, a slot kept odd for too long is left by a crashed writer,
+     * it's recorded as stuck and logged once, later reads of the same sequence give up at once
+     *
+     * @param seq sequence number seen by the reader
+     * @return false if the reader should give up
+     */
+    private boolean backOff(int slot, long seq, int spins) {
+        if (!stuckSlots.isEmpty() && stuckSlots.getOrDefault(slot, 0L) == seq) {
+            return false;
+        }
+        if (spins < SPINS_BEFORE_YIELD) {
+            return true;
+        }
+        if (spins > MAX_READ_SPINS) {
+            if (stuckSlots.put(slot, seq) == null) {
+                log.warn("flag {} of {} is being written for too long, it's read as unset until repaired",
+                        readName(slot), path);
+            }
+            return false;
+        }
+        Thread.yield();
+        return true;
+    }
+
+    /**
+     * Repair the slot of a flag left by a crashed writer, the flag becomes unset.
+     * Only call it when the writer is known to be dead, a live writer would be corrupted.
+     *
+     * @param name flag name
+     * @return true if the slot was being written and it's repaired
+     */
+    public synchronized boolean repair(String name) {
+        int slot = slotOf(name);
+        if (slot < 0) {
+            return false;
+        }
+        int offset = slotOffset(slot);
+        long seq = buffer.getLong(offset + SEQ_OFFSET);
+        if ((seq & 1L) == 0) {
+            return false;
+        }
+        buffer.put(offset + TYPE_OFFSET, TYPE_UNSET);
+        buffer.putLong(offset + VALUE_OFFSET, 0L);
+        storeFence();
+        buffer.putLong(offset + SEQ_OFFSET, seq + 1);
+        stuckSlots.remove(slot);
+        log.info("flag {} of {} is repaired", name, path);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static Object toValue(byte type, long bits) {
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return bits != 0L;
+            case TYPE_LONG:
+                return bits;
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(bits);
+            default:
+                return null;
+        }
+    }
+
+    private void write(String name, byte type, long bits) {
+        int slot = slotOf(name);
+        if (slot < 0) {
+            slot = allocate(normalizeName(name));
+        }
+        writeSlot(slot, type, bits);
+    }
+
+    private synchronized void writeSlot(int slot, byte type, long bits) {
+        int offset = slotOffset(slot);
+        long seq = buffer.getLong(offset + SEQ_OFFSET);
+        if ((seq & 1L) != 0) {
+            // left by a crashed writer, the new value repairs it
+            seq++;
+            stuckSlots.remove(slot);
+        }
+        buffer.putLong(offset + SEQ_OFFSET, seq + 1);
+        storeFence();
+        buffer.put(offset + TYPE_OFFSET, type);
+        buffer.putLong(offset + VALUE_OFFSET, bits);
+        storeFence();
+        buffer.putLong(offset + SEQ_OFFSET, seq + 2);
+    }
+
+    private synchronized int allocate(String name) {
+        indexNewSlots();
+        Integer existing = slotIndex.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("flag name is longer than " + MAX_NAME_LENGTH + " bytes: " + name);
+        }
+        int slot = buffer.getInt(ALLOCATED_OFFSET);
+        if (slot >= slotCount) {
+            throw new IllegalStateException("no free slot in flag file " + path + ", slots: " + slotCount);
+        }
+        int offset = slotOffset(slot);
+        buffer.put(offset + TYPE_OFFSET, TYPE_UNSET);
+        buffer.put(offset + NAME_LENGTH_OFFSET, (byte) nameBytes.length);
+        for (int i = 0; i < nameBytes.length; i++) {
+            buffer.put(offset + NAME_OFFSET + i, nameBytes[i]);
+        }
+        // publish the slot after its name is written
+        storeFence();
+        buffer.putInt(ALLOCATED_OFFSET, slot + 1);
+        slotIndex.put(name, slot);
+        indexedSlots = Math.max(indexedSlots, slot + 1);
+        aliasIndex.clear();
+        return slot;
+    }
+
+    /**
+     * @return true if any slot is newly indexed
+     */
+    private boolean indexNewSlots() {
+        if (getAllocatedSlots() <= indexedSlots) {
+            return false;
+        }
+        return indexNewSlotsLocked();
+    }
+
+    private synchronized boolean indexNewSlotsLocked() {
+        int allocated = getAllocatedSlots();
+        if (allocated <= indexedSlots) {
+            return false;
+        }
+        loadFence();
+        for (int slot = indexedSlots; slot < allocated; slot++) {
+            slotIndex.putIfAbsent(readName(slot), slot);
+        }
+        indexedSlots = allocated;
+        aliasIndex.clear();
+        return true;
+    }
+
+    private static String normalizeName(String name) {
+        String normalized = normalizePropKey(name);
+        if (normalized == null) {
+            throw new IllegalArgumentException("flag name should not be empty");
+        }
+        return normalized;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static void loadFence() {
+        invokeFence(LOAD_FENCE);
+    }
+
+    private static void storeFence() {
+        invokeFence(STORE_FENCE);
+    }
+
+    private static void invokeFence(MethodHandle fenceHandle) {
+        if (fenceHandle == null) {
+            fallbackFence();
+            return;
+        }
+        try {
+            fenceHandle.invokeExact();
+        } catch (Throwable ex) {
+            throw new IllegalStateException("memory fence failed", ex);
+        }
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    private static int fallbackFence() {
+        fence = 1;
+        return fence;
+    }
+
+    private static MethodHandle findFence(String name) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup().findVirtual(unsafeClass, name, MethodType.methodType(void.class)).bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.warn("Unsafe.{} is not accessible, fall back to volatile fences, error: {}", name, ex.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Change or show flags from shell.
+     * usage: SharedFlagRegion {@literal <}file{@literal >} [slots=N] list | get {@literal <}name{@literal >} |
+     * set {@literal <}name{@literal >} {@literal <}true|false|long|double{@literal >} | remove {@literal <}name{@literal >} |
+     * repair {@literal <}name{@literal >}, repair only after the crashed writer is gone
+     *
+     * @param args command line arguments
+     * @throws IOException if the flag file can not be mapped
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: SharedFlagRegion <file> [slots=N] list | get <name> | set <name> <value> | remove <name> | repair <name>");
+            System.exit(1);
+            return;
+        }
+        int slots = 1024;
+        int commandIndex = 1;
+        if (args[1].startsWith("slots=")) {
+            slots = Integer.parseInt(args[1].substring("slots=".length()));
+            commandIndex = 2;
+        }
+        try (SharedFlagRegion region = open(Paths.get(args[0]), slots)) {
+            String command = args.length > commandIndex ? args[commandIndex] : "list";
+            String name = args.length > commandIndex + 1 ? args[commandIndex + 1] : null;
+            switch (command) {
+                case "list":
+                    region.getValues().forEach((k, v) -> System.out.println(k + "=" + v));
+                    break;
+                case "get":
+                    System.out.println(region.getValue(requireArg(name, "name")));
+                    break;
+                case "set":
+                    String value = requireArg(args.length > commandIndex + 2 ? args[commandIndex + 2] : null, "value");
+                    region.setValue(requireArg(name, "name"), value);
+                    break;
+                case "remove":
+                    region.remove(requireArg(name, "name"));
+                    break;
+                case "repair":
+                    System.out.println(region.repair(requireArg(name, "name")) ? "repaired" : "not being written");
+                    break;
+                default:
+                    System.err.println("unknown command: " + command);
+                    System.exit(1);
+            }
+            region.buffer.force();
+        }
+    }
+
+    /**
+     * Set a flag from its text form, 'true' / 'false' as boolean, integers as long, other numbers as double
+     *
+     * @param name  flag name
+     * @param value text of the value
+     */
+    public void setValue(String name, String value) {
+        String trimmed = value.trim();
+        if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+            setBoolean(name, Boolean.parseBoolean(trimmed));
+            return;
+        }
+        try {
+            setLong(name, Long.parseLong(trimmed));
+        } catch (NumberFormatException ex) {
+            setDouble(name, Double.parseDouble(trimmed));
+        }
+    }
+
+    private static String requireArg(String arg, String argName) {
+        if (arg == null) {
+            throw new IllegalArgumentException(argName + " is required");
+        }
+        return arg;
+    }
+
+    /**
+     * Handle of one flag, bound to its slot, reads are direct loads of the mapped memory
+     */
+    public final class Flag {
+
+        private final int slot;
+
+        private Flag(int slot) {
+            this.slot = slot;
+        }
+
+        public String getName() {
+            return readName(slot);
+        }
+
+        public boolean getBoolean(boolean defaultValue) {
+            return readBits(slot, TYPE_BOOLEAN, defaultValue ? 1L : 0L) != 0L;
+        }
+
+        public long getLong(long defaultValue) {
+            return readBits(slot, TYPE_LONG, defaultValue);
+        }
+
+        public double getDouble(double defaultValue) {
+            return Double.longBitsToDouble(readBits(slot, TYPE_DOUBLE, Double.doubleToRawLongBits(defaultValue)));
+        }
+
+        /**
+         * @return Boolean, Long or Double, null if the flag is removed
+         */
+        public Object getValue() {
+            return readValue(slot);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.StandardEnvironment;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PLACEHOLDER_DEPENDENCY_INDEX;
+
+/**
+ * Map the shared flag file specified by 'dynamic-config.shared-flags.file' into the Environment,
+ * and poll sequence numbers of its slots, changed flags are applied and published as normal ConfigurationChangedEvent
+ * through the apply and notify stages of the watcher, so that {@literal @}Value fields, listeners and snapshots
+ * see them in order with other changes.
+ * Hot paths could skip the Environment and read flags directly from {@link #getRegion()}, or by FeatureGate.
+ *
+ * @author Code2Life
+ * @see SharedFlagRegion
+ */
+@Slf4j
+@ConditionalOnProperty(name = SharedFlagWatcher.SHARED_FLAGS_FILE_PROPERTY)
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class SharedFlagWatcher implements DisposableBean {
+
+    static final String SHARED_FLAGS_FILE_PROPERTY = "dynamic-config.shared-flags.file";
+    static final String SHARED_FLAGS_SLOTS_PROPERTY = "dynamic-config.shared-flags.slots";
+    static final String SHARED_FLAGS_POLL_INTERVAL_PROPERTY = "dynamic-config.shared-flags.poll-interval";
+    static final int DEFAULT_SLOTS = 1024;
+
+    /**
+     * Reads go straight to the mapped file, polling only publishes events, no need to scan slots more often
+     */
+    static final long DEFAULT_POLL_INTERVAL = 100;
+
+    private static final String SHARED_FLAGS_THREAD = "config-watcher-shared-flags";
+
+    private final StandardEnvironment env;
+    private final DynamicConfigPropertiesWatcher watcher;
+    private final SharedFlagRegion region;
+    private final long pollInterval;
+    private final Map<String, Object> values = new HashMap<>(64);
+    private long[] sequences = new long[0];
+    private ScheduledExecutorService executor;
+
+    SharedFlagWatcher(StandardEnvironment env, DynamicConfigPropertiesWatcher watcher) throws IOException {
+        this.env = env;
+        this.watcher = watcher;
+        int slots = env.getProperty(SHARED_FLAGS_SLOTS_PROPERTY, Integer.class, DEFAULT_SLOTS);
+        this.pollInterval = env.getProperty(SHARED_FLAGS_POLL_INTERVAL_PROPERTY, Long.class, DEFAULT_POLL_INTERVAL);
+        this.region = SharedFlagRegion.open(Paths.get(env.getRequiredProperty(SHARED_FLAGS_FILE_PROPERTY)), slots);
+    }
+
+    public SharedFlagRegion getRegion() {
+        return region;
+    }
+
+    @PostConstruct
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    public void start() {
+        installSharedFlagPropertySource();
+        // current flags are the baseline, only later writes are published as changes
+        pollChanges(false);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, SHARED_FLAGS_THREAD);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        log.info("shared flags of {} are mapped, flags: {}, poll interval: {}ms", region.getPath(), values.size(), pollInterval);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        env.getPropertySources().remove(SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME);
+        region.close();
+    }
+
+    private void poll() {
+        try {
+            pollChanges(true);
+        } catch (RuntimeException ex) {
+            // keep polling, a failed poll must not cancel the scheduled task
+            log.warn("can not poll shared flags of {}: ", region.getPath(), ex);
+        }
+    }
+
+    /**
+     * Compare sequence numbers of all slots with the last seen ones, and publish changed values
+     */
+    synchronized void pollChanges(boolean publish) {
+        int allocated = region.getAllocatedSlots();
+        if (allocated > sequences.length) {
+            long[] grown = Arrays.copyOf(sequences, allocated);
+            // new slots are compared with an odd sequence, which never equals a stable one
+            Arrays.fill(grown, sequences.length, allocated, -1L);
+            sequences = grown;
+        }
+        Map<String, Object> diff = null;
+        for (int slot = 0; slot < allocated; slot++) {
+            long seq = region.sequence(slot);
+            if (seq == sequences[slot] || (seq & 1L) != 0) {
+                continue;
+            }
+            sequences[slot] = seq;
+            String name = region.readName(slot);
+            Object value = region.readValue(slot);
+            if (Objects.equals(values.get(name), value)) {
+                continue;
+            }
+            if (diff == null) {
+                diff = new HashMap<>(4);
+            }
+            diff.put(name, value);
+        }
+        if (diff == null) {
+            return;
+        }
+        if (!publish) {
+            applyChanges(diff);
+            return;
+        }
+        Map<String, Object> changes = diff;
+        watcher.applyChanges(new ReloadRecord(SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME, region.getPath().toString()),
+                () -> applyChanges(changes));
+    }
+
+    /**
+     * Update values of last seen flags, the index, the cache and the config snapshot
+     *
+     * @return the event of changed flags
+     */
+    private ConfigurationChangedEvent applyChanges(Map<String, Object> diff) {
+        MapPropertySource previous = new MapPropertySource(SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME, new HashMap<>(values));
+        diff.forEach((key, value) -> {
+            if (value == null) {
+                values.remove(key);
+            } else {
+                values.put(key, value);
+            }
+        });
+        PLACEHOLDER_DEPENDENCY_INDEX.refresh(diff.keySet(), env.getPropertySources());
+        CachedPropertySource cache = CachedPropertySource.find(env);
+        if (cache != null) {
+            cache.invalidate(diff.keySet());
+        }
+        // a removed flag falls back to the value of other property sources
+        diff.replaceAll((key, value) -> value == null ? env.getProperty(key) : value);
+        ConfigSnapshot snapshot = watcher.publishSnapshot(diff.keySet());
+        MapPropertySource current = new MapPropertySource(SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME, new HashMap<>(values));
+        ConfigurationChangedEvent event = new ConfigurationChangedEvent(region.getPath().toString(), previous, current, diff);
+        event.setEpoch(snapshot.getEpoch());
+        log.debug("shared flags changed: {}", diff.keySet());
+        return event;
+    }
+
+    private void installSharedFlagPropertySource() {
+        MutablePropertySources propertySources = env.getPropertySources();
+        SharedFlagPropertySource flagSource = new SharedFlagPropertySource(region);
+        if (propertySources.contains(SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME)) {
+            propertySources.replace(SharedFlagPropertySource.SHARED_FLAG_PROPERTY_SOURCE_NAME, flagSource);
+        } else if (propertySources.contains(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME)) {
+            // keep the cache on top, so that flags are cached and invalidated as well
+            propertySources.addAfter(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME, flagSource);
+        } else {
+            propertySources.addFirst(flagSource);
+        }
+    }
+}
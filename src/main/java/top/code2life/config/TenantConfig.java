@@ -0,0 +1,170 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static top.code2life.config.ConfigurationUtils.normalizePropKey;
+
+/**
+ * Per-tenant configuration overlay, properties under 'tenants.{tenantId}.*' override the base properties
+ * for that tenant only. Each tenant is resolved into an immutable map on first access, and the map is
+ * rebuilt (copy-on-write) only when a ConfigurationChangedEvent touches keys of that tenant.
+ * <p>
+ * Example:
+ * tenants.acme.rate-limit=200
+ * rate-limit=100
+ * <p>
+ * tenantConfig.get("acme", "rate-limit", Integer.class) // 200
+ * tenantConfig.get("other", "rate-limit", Integer.class) // 100
+ * <p>
+ * The overlay prefix could be changed by 'dynamic-config.tenant.prefix', overlays could be disabled by
+ * 'dynamic-config.tenant.enabled=false'.
+ *
+ * @author Code2Life
+ **/
+@Slf4j
+@ConditionalOnProperty(name = TenantConfig.TENANT_ENABLED_PROPERTY, havingValue = "true", matchIfMissing = true)
+@ConditionalOnBean(DynamicConfigPropertiesWatcher.class)
+public class TenantConfig {
+
+    /**
+     * Property to disable tenant overlays
+     */
+    public static final String TENANT_ENABLED_PROPERTY = "dynamic-config.tenant.enabled";
+
+    /**
+     * Property to customize the root key of tenant overlays
+     */
+    public static final String TENANT_PREFIX_PROPERTY = "dynamic-config.tenant.prefix";
+
+    private static final String DEFAULT_TENANT_PREFIX = "tenants";
+    private static final String DOT_SYMBOL = ".";
+
+    private final Environment environment;
+    private final ConversionService conversionService;
+    private final String tenantPrefix;
+    private final Map<String, Map<String, Object>> tenantOverlays = new ConcurrentHashMap<>(16);
+
+    public TenantConfig(Environment environment) {
+        this.environment = environment;
+        this.conversionService = environment instanceof ConfigurableEnvironment ?
+                ((ConfigurableEnvironment) environment).getConversionService() : DefaultConversionService.getSharedInstance();
+        this.tenantPrefix = environment.getProperty(TENANT_PREFIX_PROPERTY, DEFAULT_TENANT_PREFIX) + DOT_SYMBOL;
+    }
+
+    /**
+     * Get the value of a key for certain tenant, fallback to base properties when tenant has no override
+     *
+     * @param tenantId the tenant identifier, the segment after 'tenants.'
+     * @param key      property key without tenant prefix
+     * @param type     expected value type
+     * @param <T>      expected value type
+     * @return converted value, null if neither tenant overlay nor base properties contain the key
+     */
+    public <T> T get(String tenantId, String key, Class<T> type) {
+        return get(tenantId, key, type, null);
+    }
+
+    /**
+     * Get the value of a key for certain tenant, with default value
+     *
+     * @param tenantId     the tenant identifier
+     * @param key          property key without tenant prefix
+     * @param type         expected value type
+     * @param defaultValue the value returned if the key could not be resolved
+     * @param <T>          expected value type
+     * @return converted value or default value
+     */
+    public <T> T get(String tenantId, String key, Class<T> type, T defaultValue) {
+        if (StringUtils.hasText(tenantId)) {
+            Object overlayVal = getOverlay(tenantId).get(normalizePropKey(key));
+            if (overlayVal != null) {
+                return conversionService.convert(overlayVal, type);
+            }
+        }
+        return environment.getProperty(key, type, defaultValue);
+    }
+
+    /**
+     * Get the precomputed overlay of a tenant
+     *
+     * @param tenantId the tenant identifier
+     * @return immutable map, keys are normalized relative keys, values are resolved values
+     */
+    public Map<String, Object> getOverlay(String tenantId) {
+        return tenantOverlays.computeIfAbsent(tenantId, this::buildOverlay);
+    }
+
+    /**
+     * Rebuild overlays of tenants whose keys appear in the diff, other tenants are untouched
+     *
+     * @param event ConfigurationChangedEvent
+     */
+    @EventListener(ConfigurationChangedEvent.class)
+    public void handleEvent(ConfigurationChangedEvent event) {
+        Set<String> changedTenants = new HashSet<>(4);
+        for (String key : event.getDiff().keySet()) {
+            String tenantId = extractTenantId(key);
+            if (tenantId != null && tenantOverlays.containsKey(tenantId)) {
+                changedTenants.add(tenantId);
+            }
+        }
+        for (String tenantId : changedTenants) {
+            tenantOverlays.put(tenantId, buildOverlay(tenantId));
+            log.debug("tenant overlay has been rebuilt: {}", tenantId);
+        }
+    }
+
+    private String extractTenantId(String key) {
+        if (!key.startsWith(tenantPrefix)) {
+            return null;
+        }
+        int end = key.indexOf(DOT_SYMBOL, tenantPrefix.length());
+        return end == -1 ? null : key.substring(tenantPrefix.length(), end);
+    }
+
+    private Map<String, Object> buildOverlay(String tenantId) {
+        if (!(environment instanceof ConfigurableEnvironment)) {
+            return Collections.emptyMap();
+        }
+        String keyPrefix = tenantPrefix + tenantId + DOT_SYMBOL;
+        Map<String, Object> overlay = new HashMap<>(8);
+        // property sources are ordered by precedence, the first found value wins
+        for (PropertySource<?> ps : ((ConfigurableEnvironment) environment).getPropertySources()) {
+            if (!(ps instanceof EnumerablePropertySource)) {
+                continue;
+            }
+            for (String name : ((EnumerablePropertySource<?>) ps).getPropertyNames()) {
+                if (!name.startsWith(keyPrefix)) {
+                    continue;
+                }
+                String relativeKey = normalizePropKey(name.substring(keyPrefix.length()));
+                if (relativeKey == null || overlay.containsKey(relativeKey)) {
+                    continue;
+                }
+                Object val = ps.getProperty(name);
+                if (val instanceof String) {
+                    val = environment.resolvePlaceholders((String) val);
+                } else if (val != null) {
+                    val = val.toString();
+                }
+                if (val != null) {
+                    overlay.put(relativeKey, val);
+                }
+            }
+        }
+        return overlay.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(overlay);
+    }
+}
@@ -0,0 +1,117 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class AccessTrackingPropertySourceTest {
+
+    @Test
+    public void testTopKeysAndNeverReadKeys() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("myProp.hot", "h");
+        props.put("myProp.warm", "w");
+        props.put("myProp.dead", "d");
+        MapPropertySource fileSource = new MapPropertySource("test", props);
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(fileSource);
+        ConfigurationPropertySources.attach(env);
+        CachedPropertySource cache = new CachedPropertySource(env, 16, ps -> true);
+        env.getPropertySources().addFirst(cache);
+        AccessTrackingPropertySource tracker = new AccessTrackingPropertySource(env, 1, 16, cache);
+        env.getPropertySources().addFirst(tracker);
+        assertSame(tracker, AccessTrackingPropertySource.find(env));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("h", env.getProperty("my-prop.hot"));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals("w", env.getProperty("myProp.warm"));
+        }
+        for (int i = 0; i < 2; i++) {
+            assertNull(env.getProperty("my-prop.missing"));
+        }
+        List<AccessTrackingPropertySource.KeyReads> topKeys = tracker.getTopKeys(3);
+        assertEquals(3, topKeys.size());
+        assertEquals("my-prop.hot", topKeys.get(0).getKey());
+        // cache misses delegated to other property sources are not counted twice
+        assertEquals(10, topKeys.get(0).getEstimatedReads());
+        assertEquals("my-prop.warm", topKeys.get(1).getKey());
+        assertEquals(3, topKeys.get(1).getEstimatedReads());
+        // negative results of the cache reach the attached source, counted once as well
+        assertEquals("my-prop.missing", topKeys.get(2).getKey());
+        assertEquals(2, topKeys.get(2).getEstimatedReads());
+
+        Set<String> neverRead = tracker.getNeverReadKeys(Collections.singletonList(fileSource));
+        assertEquals(Collections.singleton("my-prop.dead"), neverRead);
+
+        tracker.reset();
+        assertTrue(tracker.getTopKeys(10).isEmpty());
+    }
+
+    @Test
+    public void testLookupThroughAttachedSourceCountedOnce() {
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", Collections.singletonMap("myProp.hot", "h")));
+        ConfigurationPropertySources.attach(env);
+        AccessTrackingPropertySource tracker = new AccessTrackingPropertySource(env, 1, 16, null);
+        env.getPropertySources().addFirst(tracker);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("h", env.getProperty("my-prop.hot"));
+        }
+        // the tracker only counts, even for sampled lookups of existing keys
+        assertNull(tracker.getProperty("my-prop.hot"));
+        List<AccessTrackingPropertySource.KeyReads> topKeys = tracker.getTopKeys(10);
+        assertEquals(1, topKeys.size());
+        assertEquals("my-prop.hot", topKeys.get(0).getKey());
+        assertEquals(6, topKeys.get(0).getEstimatedReads());
+
+        // the absent key is looked up through the attached source again by the environment
+        tracker.reset();
+        for (int i = 0; i < 3; i++) {
+            assertNull(env.getProperty("my-prop.missing"));
+        }
+        // binding visits the tracker through the attached source only
+        ConfigurationPropertySources.get(env).forEach(cps -> cps.getConfigurationProperty(ConfigurationPropertyName.of("my-prop.bound")));
+        topKeys = tracker.getTopKeys(10);
+        assertEquals(2, topKeys.size());
+        assertEquals("my-prop.missing", topKeys.get(0).getKey());
+        assertEquals(3, topKeys.get(0).getEstimatedReads());
+        assertEquals("my-prop.bound", topKeys.get(1).getKey());
+        assertEquals(1, topKeys.get(1).getEstimatedReads());
+    }
+
+    @Test
+    public void testBoundedKeysAndSampling() {
+        StandardEnvironment env = new StandardEnvironment();
+        AccessTrackingPropertySource tracker = new AccessTrackingPropertySource(env, 1, 2, null);
+        env.getPropertySources().addFirst(tracker);
+        env.getProperty("a.one");
+        env.getProperty("a.two");
+        env.getProperty("a.three");
+        assertEquals(2, tracker.getTopKeys(10).size());
+        assertEquals(1, tracker.getOverflowReads());
+
+        AccessTrackingPropertySource sampled = new AccessTrackingPropertySource(env, 10, 16, null);
+        for (int i = 0; i < 16000; i++) {
+            sampled.record("a.key");
+        }
+        // sample rate rounded up to 16, estimation should be close to real reads
+        long estimated = sampled.getTopKeys(1).get(0).getEstimatedReads();
+        assertTrue(estimated > 12000 && estimated < 20000, "estimated reads: " + estimated);
+    }
+}
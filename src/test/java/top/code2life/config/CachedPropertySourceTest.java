@@ -0,0 +1,131 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.RandomValuePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class CachedPropertySourceTest {
+
+    @Test
+    public void testCachedLookupAndInvalidation() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("myProp.str", "v1");
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", props));
+        ConfigurationPropertySources.attach(env);
+        CachedPropertySource cache = new CachedPropertySource(env, 16, ps -> "test".equals(ps.getName()));
+        env.getPropertySources().addFirst(cache);
+
+        assertEquals("v1", env.getProperty("my-prop.str"));
+        assertNull(env.getProperty("my-prop.missing"));
+        assertTrue(cache.isKnownMissing("my-prop.missing"));
+
+        props.put("myProp.str", "v2");
+        props.put("myProp.missing", "found");
+        // not invalidated yet, still served by cache
+        assertEquals("v1", env.getProperty("my-prop.str"));
+
+        cache.invalidate(Collections.singletonList("myProp.str"));
+        assertEquals("v2", env.getProperty("my-prop.str"));
+        assertTrue(cache.isKnownMissing("my-prop.missing"));
+        cache.invalidate(Collections.singletonList("myProp.missing"));
+        assertEquals("found", env.getProperty("my-prop.missing"));
+        assertFalse(cache.isKnownMissing("my-prop.missing"));
+    }
+
+    @Test
+    public void testRandomAndUndiffedValuesAreNotCached() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("myProp.str", "v1");
+        Map<String, Object> systemProps = new HashMap<>();
+        systemProps.put("myProp.sys", "s1");
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", props));
+        env.getPropertySources().addLast(new MapPropertySource("system", systemProps));
+        env.getPropertySources().addLast(new RandomValuePropertySource());
+        ConfigurationPropertySources.attach(env);
+        CachedPropertySource cache = new CachedPropertySource(env, 16, ps -> "test".equals(ps.getName()));
+        env.getPropertySources().addFirst(cache);
+
+        assertNotEquals(env.getProperty("random.uuid"), env.getProperty("random.uuid"));
+        assertEquals("v1", env.getProperty("my-prop.str"));
+        // changed without a diff, it's resolved on every lookup
+        assertEquals("s1", env.getProperty("my-prop.sys"));
+        systemProps.put("myProp.sys", "s2");
+        assertEquals("s2", env.getProperty("my-prop.sys"));
+        assertFalse(cache.isKnownMissing("my-prop.sys"));
+        assertEquals(1, cache.getSource().size());
+
+        // without the attached source
+        env.getPropertySources().remove("configurationProperties");
+        assertNotEquals(env.getProperty("random.uuid"), env.getProperty("random.uuid"));
+        systemProps.put("myProp.sys", "s3");
+        assertEquals("s3", env.getProperty("myProp.sys"));
+    }
+
+    @Test
+    public void testLookupWithoutAttachedSource() {
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", Collections.singletonMap("dynamicEnvTest", "v1")));
+        CachedPropertySource cache = new CachedPropertySource(env, 1, ps -> "test".equals(ps.getName()));
+        env.getPropertySources().addFirst(cache);
+
+        assertEquals("v1", env.getProperty("dynamicEnvTest"));
+        assertNull(env.getProperty("notExists"));
+        // exceeds max size, previous entries evicted
+        assertFalse(cache.isKnownMissing("dynamicEnvTest"));
+        assertTrue(cache.isKnownMissing("notExists"));
+    }
+
+    @Test
+    public void testExactNamesAreCachedSeparately() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("foo_bar", "underscore");
+        props.put("foobar", "plain");
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", props));
+        ConfigurationPropertySources.attach(env);
+        CachedPropertySource cache = new CachedPropertySource(env, 16, ps -> "test".equals(ps.getName()));
+        env.getPropertySources().addFirst(cache);
+
+        // 'foo_bar' is not a valid ConfigurationPropertyName, it's resolved and cached by exact name
+        assertEquals("underscore", env.getProperty("foo_bar"));
+        assertEquals("plain", env.getProperty("foobar"));
+        assertEquals("underscore", env.getProperty("foo_bar"));
+
+        props.put("foo_bar", "changed");
+        cache.invalidate(Collections.singletonList("foo_bar"));
+        assertEquals("changed", env.getProperty("foo_bar"));
+        assertEquals("plain", env.getProperty("foobar"));
+
+    }
+
+    @Test
+    public void testRelaxedNamesWithoutAttachedSource() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("foo-bar", "kebab");
+        props.put("foobar", "plain");
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", props));
+        CachedPropertySource cache = new CachedPropertySource(env, 16, ps -> "test".equals(ps.getName()));
+        env.getPropertySources().addFirst(cache);
+
+        // resolved by exact name without the attached source, so they are cached by exact name as well
+        assertEquals("kebab", env.getProperty("foo-bar"));
+        assertEquals("plain", env.getProperty("foobar"));
+        assertNull(env.getProperty("fooBar"));
+        assertTrue(cache.isKnownMissing("fooBar"));
+        assertFalse(cache.isKnownMissing("foo-bar"));
+    }
+}
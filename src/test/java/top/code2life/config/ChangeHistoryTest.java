@@ -0,0 +1,65 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class ChangeHistoryTest {
+
+    @Test
+    public void testInverseDiff() {
+        ChangeHistory history = new ChangeHistory(10);
+        // v1: a changed, b added
+        Map<String, Object> old1 = new HashMap<>();
+        old1.put("a", "a0");
+        old1.put("b", null);
+        Map<String, Object> new1 = new HashMap<>();
+        new1.put("a", "a1");
+        new1.put("b", "b1");
+        assertEquals(1, history.record(old1, new1, "file"));
+        // v2: a changed again, c removed
+        Map<String, Object> old2 = new HashMap<>();
+        old2.put("a", "a1");
+        old2.put("c", "c0");
+        Map<String, Object> new2 = new HashMap<>();
+        new2.put("a", "a2");
+        new2.put("c", null);
+        assertEquals(2, history.record(old2, new2, "file"));
+
+        Map<String, Object> toV1 = history.inverseDiffTo(1);
+        assertEquals(2, toV1.size());
+        assertEquals("a1", toV1.get("a"));
+        assertEquals("c0", toV1.get("c"));
+
+        Map<String, Object> toV0 = history.inverseDiffTo(0);
+        assertEquals(3, toV0.size());
+        assertEquals("a0", toV0.get("a"));
+        assertTrue(toV0.containsKey("b"));
+        assertNull(toV0.get("b"));
+        assertEquals("c0", toV0.get("c"));
+
+        assertThrows(IllegalArgumentException.class, () -> history.inverseDiffTo(2));
+        assertThrows(IllegalArgumentException.class, () -> history.inverseDiffTo(-1));
+    }
+
+    @Test
+    public void testBoundedVersions() {
+        ChangeHistory history = new ChangeHistory(3);
+        for (int i = 1; i <= 5; i++) {
+            history.record(Collections.singletonMap("k", "v" + (i - 1)), Collections.singletonMap("k", "v" + i), "file");
+        }
+        assertEquals(5, history.getCurrentVersion());
+        assertEquals(3, history.getVersions().size());
+        assertEquals(3, history.getVersions().get(0).getVersion());
+        // versions 3, 4, 5 kept, so the content of version 2 can still be restored
+        assertEquals("v2", history.inverseDiffTo(2).get("k"));
+        assertThrows(IllegalArgumentException.class, () -> history.inverseDiffTo(1));
+    }
+}
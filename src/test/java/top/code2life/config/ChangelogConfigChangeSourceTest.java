@@ -0,0 +1,188 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class ChangelogConfigChangeSourceTest extends WatcherTestSupport {
+
+    private Path logFile;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        logFile = confDir.resolve("limits.log");
+        Files.write(confDir.resolve("application.properties"), "limit.orders=1\nlimit.unrelated=1\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBatchesArePatchedAndCompacted() throws IOException {
+        // the last batch is not committed yet
+        Files.write(logFile, "SET limit.orders=10\nCOMMIT\nSET limit.search=5\n".getBytes(StandardCharsets.UTF_8));
+        context = run();
+        Environment env = context.getEnvironment();
+        LimitCollector collector = context.getBean(LimitCollector.class);
+        awaitTrue(() -> "10".equals(env.getProperty("limit.orders")));
+        assertNull(env.getProperty("limit.search"));
+
+        ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.search", 7));
+        // only keys of the batch are diffed
+        awaitTrue(() -> collector.events.stream().anyMatch(e -> e.getDiff().containsKey("limit.search")));
+        ConfigurationChangedEvent event = collector.events.get(collector.events.size() - 1);
+        assertEquals(ChangelogConfigChangeSource.NAME, event.getPath());
+        assertEquals(Collections.singleton("limit.search"), event.getDiff().keySet());
+
+        // changes outside the prefix are not delivered to the collector
+        ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("other.flag", "on"));
+        awaitTrue(() -> "on".equals(env.getProperty("other.flag")));
+
+        Map<String, Object> patch = new HashMap<>(4);
+        patch.put("limit.orders", null);
+        patch.put("limit.search", 8);
+        ChangelogConfigChangeSource.append(logFile, patch);
+        // removed key falls back to config files
+        awaitTrue(() -> "8".equals(env.getProperty("limit.search")) && "1".equals(env.getProperty("limit.orders")));
+        awaitTrue(() -> collector.events.stream().anyMatch(e -> "8".equals(String.valueOf(e.getDiff().get("limit.search")))));
+        assertTrue(collector.events.stream().noneMatch(e -> e.getDiff().containsKey("other.flag")));
+
+        for (int i = 0; i < 20; i++) {
+            ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.search", 100 + i));
+        }
+        awaitTrue(() -> "119".equals(env.getProperty("limit.search")));
+        awaitTrue(() -> Files.exists(snapshotFile()) && size(logFile) == 0);
+        ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.orders", 30));
+        awaitTrue(() -> "30".equals(env.getProperty("limit.orders")));
+        context.close();
+
+        // snapshot and the log tail are loaded after restarting
+        TestUtils.clearWatcherState();
+        context = run();
+        Environment restarted = context.getEnvironment();
+        awaitTrue(() -> "119".equals(restarted.getProperty("limit.search")) && "30".equals(restarted.getProperty("limit.orders")));
+        assertThrows(IllegalArgumentException.class, () -> ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("a=b", 1)));
+    }
+
+    @Test
+    public void testPatchKeepsRolledBackValues() throws IOException {
+        Files.write(logFile, "SET limit.orders=10\nCOMMIT\n".getBytes(StandardCharsets.UTF_8));
+        context = run();
+        Environment env = context.getEnvironment();
+        DynamicConfigPropertiesWatcher watcher = context.getBean(DynamicConfigPropertiesWatcher.class);
+        awaitTrue(() -> "10".equals(env.getProperty("limit.orders")));
+        ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.search", 7));
+        awaitTrue(() -> "7".equals(env.getProperty("limit.search")));
+        int version = watcher.getChangeHistory(ChangelogConfigChangeSource.NAME, 0).getCurrentVersion();
+        ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.orders", 20));
+        awaitTrue(() -> "20".equals(env.getProperty("limit.orders")));
+
+        watcher.rollback(ChangelogConfigChangeSource.NAME, 0, version);
+        awaitTrue(() -> "10".equals(env.getProperty("limit.orders")));
+        // the next batch is applied on the rolled back content, other keys are not reverted
+        ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.search", 9));
+        awaitTrue(() -> "9".equals(env.getProperty("limit.search")));
+        assertEquals("10", env.getProperty("limit.orders"));
+    }
+
+    @Test
+    public void testCompactionByAnotherConsumerIsNotLost() throws IOException {
+        Map<String, Object> consumed = new HashMap<>(4);
+        // polled by the test only
+        ChangelogConfigChangeSource consumer = new ChangelogConfigChangeSource(logFile, Long.MAX_VALUE, 0);
+        ChangelogConfigChangeSource compactor = new ChangelogConfigChangeSource(logFile, Long.MAX_VALUE, 1);
+        consumer.start(new MapSink(consumed));
+        compactor.start(new MapSink(new HashMap<>(4)));
+        try {
+            ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.orders", 10));
+            compactor.poll();
+            assertEquals(0, size(logFile));
+            // the new batch lies at the offset consumed so far, the compacted one is only in the snapshot
+            ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.search", 5));
+            consumer.poll();
+            assertEquals("10", consumed.get("limit.orders"));
+            assertEquals("5", consumed.get("limit.search"));
+
+            ChangelogConfigChangeSource.append(logFile, Collections.singletonMap("limit.search", 6));
+            consumer.poll();
+            assertEquals("6", consumed.get("limit.search"));
+            assertFalse(new String(Files.readAllBytes(snapshotFile()), StandardCharsets.UTF_8).contains("OFFSET"));
+        } finally {
+            consumer.stop();
+            compactor.stop();
+        }
+    }
+
+    private Path snapshotFile() {
+        return logFile.resolveSibling(logFile.getFileName() + ChangelogConfigChangeSource.SNAPSHOT_SUFFIX);
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private ConfigurableApplicationContext run() {
+        return run(Collections.singletonList(LimitCollector.class), "--spring.config.location=" + confDir.toAbsolutePath() + "/",
+                "--" + ChangelogConfigChangeSource.CHANGELOG_FILE_PROPERTY + "=" + logFile,
+                "--" + ChangelogConfigChangeSource.CHANGELOG_POLL_INTERVAL_PROPERTY + "=10",
+                "--" + ChangelogConfigChangeSource.CHANGELOG_COMPACT_THRESHOLD_PROPERTY + "=256");
+    }
+
+    private static class MapSink implements ConfigChangeSink {
+
+        private final Map<String, Object> properties;
+
+        MapSink(Map<String, Object> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public void publish(Map<String, ?> newProperties) {
+            properties.clear();
+            properties.putAll(newProperties);
+        }
+
+        @Override
+        public void patch(Map<String, ?> changes) {
+            changes.forEach((key, value) -> {
+                if (value == null) {
+                    properties.remove(key);
+                } else {
+                    properties.put(key, value);
+                }
+            });
+        }
+
+        @Override
+        public void reload(String location) {
+        }
+    }
+
+    static class LimitCollector {
+
+        final List<ConfigurationChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @OnConfigChange(prefix = "limit")
+        public void onChange(ConfigurationChangedEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class ConfigChangeSourceTest extends WatcherTestSupport {
+
+    private static final List<Class<?>> COMPONENTS = Arrays.asList(OverridesSource.class, TestUtils.ChangeCollector.class);
+
+    @Test
+    public void testInMemorySourceOverridesConfigFiles() throws IOException {
+        Files.write(confDir.resolve("application.properties"), "source.value=file\nsource.limit=1\n".getBytes(StandardCharsets.UTF_8));
+        context = run(COMPONENTS, "--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        Environment env = context.getEnvironment();
+        InMemoryConfigChangeSource source = context.getBean(InMemoryConfigChangeSource.class);
+        TestUtils.ChangeCollector collector = context.getBean(TestUtils.ChangeCollector.class);
+        // initial properties are delivered on start
+        awaitTrue(() -> "10".equals(env.getProperty("source.limit")));
+        assertEquals("file", env.getProperty("source.value"));
+
+        source.put("source.value", "memory");
+        awaitTrue(() -> collector.events.stream().anyMatch(e -> "overrides".equals(e.getPath()) && e.getDiff().containsKey("source.value")));
+        assertEquals("memory", env.getProperty("source.value"));
+
+        // removed keys fall back to config files
+        source.remove("source.value");
+        awaitTrue(() -> "file".equals(env.getProperty("source.value")));
+
+        Map<String, Object> all = new HashMap<>(4);
+        all.put("source.value", "replaced");
+        source.publish(all);
+        awaitTrue(() -> "replaced".equals(env.getProperty("source.value")) && "1".equals(env.getProperty("source.limit")));
+
+        DynamicConfigPropertiesWatcher watcher = context.getBean(DynamicConfigPropertiesWatcher.class);
+        assertEquals("replaced", watcher.getSnapshot().get("source.value"));
+        assertTrue(watcher.getChangeHistory("overrides", 0).getCurrentVersion() >= 3);
+        assertThrows(IllegalArgumentException.class, () -> watcher.startChangeSource(new InMemoryConfigChangeSource("overrides")));
+    }
+
+    @Test
+    public void testSinkReloadsConfigFile() throws IOException {
+        Path confFile = confDir.resolve("application.properties");
+        Files.write(confFile, "source.value=v1\nsource.limit=1\n".getBytes(StandardCharsets.UTF_8));
+        FileTime modifiedTime = Files.getLastModifiedTime(confFile);
+        context = run("--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        CapturingSource capturing = new CapturingSource();
+        context.getBean(DynamicConfigPropertiesWatcher.class).startChangeSource(capturing);
+
+        // rewritten with the same modified time, only a forced reload picks it up
+        Files.write(confFile, "source.value=v2\nsource.limit=1\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(confFile, modifiedTime);
+        capturing.sink.reload(confFile.toAbsolutePath().toString());
+        awaitTrue(() -> "v2".equals(context.getEnvironment().getProperty("source.value")));
+        assertThrows(IllegalArgumentException.class, () -> capturing.sink.reload("/not-watched/application.yml"));
+    }
+
+    @Test
+    public void testSourcesWithoutConfigLocation() {
+        context = builder(Collections.singletonList(OverridesSource.class))
+                .properties("source.value=default", "source.limit=0")
+                .run("--" + DynamicConfigPropertiesWatcher.CHANGE_SOURCES_ENABLED_PROPERTY + "=true");
+        Environment env = context.getEnvironment();
+        awaitTrue(() -> "10".equals(env.getProperty("source.limit")));
+        context.getBean(InMemoryConfigChangeSource.class).put("source.value", "memory");
+        awaitTrue(() -> "memory".equals(env.getProperty("source.value")));
+    }
+
+    static class OverridesSource extends InMemoryConfigChangeSource {
+
+        OverridesSource() {
+            super("overrides");
+            put("source.limit", 10);
+        }
+    }
+
+    static class CapturingSource implements ConfigChangeSource {
+
+        volatile ConfigChangeSink sink;
+
+        @Override
+        public String getName() {
+            return "capturing";
+        }
+
+        @Override
+        public void start(ConfigChangeSink sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class ConfigManifestTest extends WatcherTestSupport {
+
+    @Test
+    public void testParseAndCompare() {
+        ConfigManifest previous = ConfigManifest.parse(Arrays.asList("# generated", "version 1",
+                "aaa  application.yml", "bbb *secrets/db-password", "ccc  removed.yml"), 1L, 10L);
+        assertEquals("1", previous.getVersion());
+        assertEquals("bbb", previous.getHashes().get("secrets/db-password"));
+        assertTrue(previous.isSameFile(1L, 10L));
+        assertFalse(previous.isSameFile(2L, 10L));
+
+        ConfigManifest current = ConfigManifest.parse(Arrays.asList("version 2",
+                "aaa  application.yml", "bbc  secrets/db-password", "ddd  added.yml"), 2L, 10L);
+        assertEquals(Arrays.asList("secrets/db-password", "added.yml"), current.changedFiles(previous));
+
+        ConfigManifest sameVersion = ConfigManifest.parse(Arrays.asList("version 1", "zzz  application.yml"), 3L, 10L);
+        assertEquals(Collections.emptyList(), sameVersion.changedFiles(previous));
+
+        ConfigManifest noVersion = ConfigManifest.parse(Collections.singletonList("zzz  application.yml"), 4L, 10L);
+        assertEquals(Collections.singletonList("application.yml"), noVersion.changedFiles(previous));
+        assertThrows(IllegalArgumentException.class, () -> ConfigManifest.parse(Collections.singletonList("no-path"), 0L, 0L));
+    }
+
+    @Test
+    public void testOnlyManifestTriggersReload() throws IOException {
+        Path confFile = confDir.resolve("application.properties");
+        Path manifestFile = confDir.resolve("config.manifest");
+        Files.write(confFile, "manifest.value=v1\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(manifestFile, "version 1\nh1  application.properties\n".getBytes(StandardCharsets.UTF_8));
+        context = run("--spring.config.location=" + confDir.toAbsolutePath() + "/",
+                "--" + ConfigManifest.MANIFEST_FILE_PROPERTY + "=config.manifest",
+                "--" + ConfigManifest.MANIFEST_POLL_INTERVAL_PROPERTY + "=50");
+        Environment env = context.getEnvironment();
+        awaitTrue(() -> WATCHABLE_TARGETS.values().stream().allMatch(t -> t.getWatchMode() == FileSystemWatchTarget.WatchMode.MANIFEST));
+
+        // config files are not watched in manifest mode
+        Files.write(confFile, "manifest.value=v2\n".getBytes(StandardCharsets.UTF_8));
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals("v1", env.getProperty("manifest.value"));
+
+        Files.write(manifestFile, "version 2\nh2  application.properties\n".getBytes(StandardCharsets.UTF_8));
+        awaitTrue(() -> "v2".equals(env.getProperty("manifest.value")));
+
+        // same version, nothing to reload
+        Files.write(confFile, "manifest.value=v3\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(manifestFile, "version 2\nhash-3  application.properties\n".getBytes(StandardCharsets.UTF_8));
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals("v2", env.getProperty("manifest.value"));
+    }
+}
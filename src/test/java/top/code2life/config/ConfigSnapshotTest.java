@@ -0,0 +1,99 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class ConfigSnapshotTest {
+
+    @Test
+    public void testSnapshotPrecedenceAndNextEpoch() {
+        Map<String, Object> high = new HashMap<>();
+        high.put("myProp.str", "high");
+        high.put("base.url", "${base.host}/api");
+        Map<String, Object> low = new HashMap<>();
+        low.put("my-prop.str", "low");
+        low.put("base.host", "http://localhost");
+        low.put("rate-limit", 100);
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("low", low));
+        env.getPropertySources().addFirst(new MapPropertySource("high", high));
+
+        ConfigSnapshot snapshot = ConfigSnapshot.of(env.getPropertySources(), env);
+        assertEquals(0L, snapshot.getEpoch());
+        assertEquals("high", snapshot.getString("my-prop.str"));
+        assertEquals("high", snapshot.getString("myProp.str"));
+        assertEquals("http://localhost/api", snapshot.getString("base.url"));
+        assertEquals(100, snapshot.get("rate-limit", Integer.class));
+        assertEquals(100L, snapshot.get("rateLimit", Long.class));
+        assertEquals("default", snapshot.getString("not-exists", "default"));
+
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("rateLimit", "200");
+        changes.put("base.host", null);
+        ConfigSnapshot next = snapshot.next(changes);
+        assertEquals(1L, next.getEpoch());
+        assertEquals(200, next.get("rate-limit", Integer.class));
+        assertFalse(next.containsKey("base.host"));
+        // previous snapshot is not modified
+        assertEquals(100, snapshot.get("rate-limit", Integer.class));
+        assertTrue(snapshot.containsKey("base.host"));
+        assertThrows(UnsupportedOperationException.class, () -> next.asMap().putAll(Collections.singletonMap("k", "v")));
+    }
+
+    @Test
+    public void testLayeredEpochsMatchFullCopies() {
+        Map<String, Object> initial = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            initial.put("key" + i, "v" + i);
+        }
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("initial", initial));
+        ConfigSnapshot snapshot = ConfigSnapshot.of(Collections.singletonList(env.getPropertySources().get("initial")), env);
+
+        Random random = new Random(42);
+        Map<String, Object> expected = new HashMap<>(initial);
+        List<ConfigSnapshot> snapshots = new ArrayList<>();
+        List<Map<String, Object>> expectedMaps = new ArrayList<>();
+        for (int epoch = 1; epoch <= 300; epoch++) {
+            Map<String, Object> changes = new HashMap<>();
+            // mostly a few keys, sometimes a bulk change, some keys are new or removed
+            int count = epoch % 50 == 0 ? 400 : 1 + random.nextInt(5);
+            for (int i = 0; i < count; i++) {
+                String key = "key" + random.nextInt(600);
+                Object value = random.nextInt(4) == 0 ? null : "e" + epoch;
+                changes.put(key, value);
+                if (value == null) {
+                    expected.remove(key);
+                } else {
+                    expected.put(key, value);
+                }
+            }
+            snapshot = snapshot.next(changes);
+            assertEquals(epoch, snapshot.getEpoch());
+            snapshots.add(snapshot);
+            expectedMaps.add(new HashMap<>(expected));
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            ConfigSnapshot s = snapshots.get(i);
+            Map<String, Object> values = expectedMaps.get(i);
+            assertEquals(values, s.asMap());
+            assertEquals("ConfigSnapshot{epoch=" + (i + 1) + ", keys=" + values.size() + "}", s.toString());
+            for (int k = 0; k < 600; k++) {
+                assertEquals(values.get("key" + k), s.get("key" + k));
+            }
+        }
+    }
+}
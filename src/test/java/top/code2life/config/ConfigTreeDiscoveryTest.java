@@ -0,0 +1,63 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class ConfigTreeDiscoveryTest extends WatcherTestSupport {
+
+    @BeforeEach
+    public void setup() throws IOException {
+        write(confDir.resolve("module-a/app.yaml"), "value: a1\n");
+    }
+
+    @Test
+    public void testFilesAndDirectoriesAreDiscovered() throws IOException {
+        context = run(Collections.singletonList(TestUtils.ChangeCollector.class), "--spring.config.import=configtree:" + confDir.toAbsolutePath() + "/",
+                "--" + FileSystemConfigChangeSource.CONFIG_TREE_MAX_DEPTH_PROPERTY + "=4");
+        TestUtils.ChangeCollector collector = context.getBean(TestUtils.ChangeCollector.class);
+        Environment env = context.getEnvironment();
+        assertEquals("a1", env.getProperty("module-a.app.value"));
+        assertNull(env.getProperty("module-b.extra.value"));
+
+        // new subdirectory and new file
+        Path extraFile = confDir.resolve("module-b/extra.yaml");
+        write(extraFile, "value: b1\n");
+        awaitTrue(() -> "b1".equals(env.getProperty("module-b.extra.value")));
+        String extraDir = extraFile.getParent().toAbsolutePath().toString();
+        assertTrue(WATCHABLE_TARGETS.containsKey(extraDir));
+
+        // the new directory is watched for changes like others
+        write(extraFile, "value: b2\n");
+        awaitTrue(() -> "b2".equals(env.getProperty("module-b.extra.value")));
+
+        // deeper than default max depth
+        write(confDir.resolve("a/b/c/deep.yaml"), "value: d1\n");
+        awaitTrue(() -> "d1".equals(env.getProperty("a.b.c.deep.value")));
+
+        // vanished file publishes removed keys, its directory is not watched anymore
+        Files.delete(extraFile);
+        awaitTrue(() -> env.getProperty("module-b.extra.value") == null && !WATCHABLE_TARGETS.containsKey(extraDir));
+        awaitTrue(() -> collector.events.stream().anyMatch(e -> e.getDiff().containsKey("module-b.extra.value")
+                && e.getDiff().get("module-b.extra.value") == null));
+        assertEquals("a1", env.getProperty("module-a.app.value"));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
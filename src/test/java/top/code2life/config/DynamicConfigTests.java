@@ -1,30 +1,51 @@
 package top.code2life.config;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvocationContext;
+import org.springframework.boot.actuate.endpoint.SecurityContext;
+import org.springframework.boot.actuate.endpoint.invoke.convert.ConversionServiceParameterValueMapper;
+import org.springframework.boot.actuate.endpoint.web.EndpointMediaTypes;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointHttpMethod;
+import org.springframework.boot.actuate.endpoint.web.WebOperation;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpointDiscoverer;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
 import org.springframework.test.context.TestPropertySource;
 import top.code2life.config.sample.TestApplication;
 import top.code2life.config.sample.TestBeanConfiguration;
 import top.code2life.config.sample.TestComponent;
+import top.code2life.config.sample.TestConfigChangeListener;
 import top.code2life.config.sample.TestConfigurationProperties;
 
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static top.code2life.config.TestUtils.*;
 
 @TestPropertySource(
-        properties = {"spring.config.location=" + DynamicConfigTests.CONFIG_LOCATION}
+        properties = {
+                "spring.config.location=" + DynamicConfigTests.CONFIG_LOCATION,
+                "spring.config.import=configtree:" + ImportConfigTreeTests.IMPORT_LOCATION,
+                "dynamic-config.trace.file=" + DynamicConfigTests.TRACE_FILE
+        }
 )
 @SpringBootTest(classes = {TestApplication.class})
 public class DynamicConfigTests {
 
     public static final String CONFIG_LOCATION = "./build/resources/test/";
     public static final String NO_CONFIG_LOCATION = "./build/resources/test/no-config-location/";
+    public static final String TRACE_FILE = "./build/tmp/dynamic-config-trace.bin";
 
     @Autowired
     private ApplicationContext context;
@@ -47,6 +68,15 @@ public class DynamicConfigTests {
     @Autowired
     private Environment env;
 
+    @Autowired
+    private DynamicConfigMetrics metrics;
+
+    @Autowired
+    private DynamicConfigEndpoint endpoint;
+
+    @Autowired
+    private ConfigurationChangedEventHandler handler;
+
     @Test
     public void testBeanLoaded() {
         DynamicConfigPropertiesWatcher bean = context.getBean(DynamicConfigPropertiesWatcher.class);
@@ -101,6 +131,280 @@ public class DynamicConfigTests {
         assertEquals(testVal, testComponent.getPlainValue());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDynamicValueReferencedByPlaceholder() throws Exception {
+        assertEquals("http://localhost/x", testComponent.getDerivedUrl());
+
+        String testVal = randomStr(8);
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        Map<String, Object> internal = (Map<String, Object>) data.get("dynamic");
+        internal.put("base-host", testVal);
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+        assertEquals("http://" + testVal + "/x", testComponent.getDerivedUrl());
+    }
+
+    @Test
+    public void testOverriddenValueNotApplied() throws Exception {
+        String currentVal = testComponent.getPlainValue();
+
+        // application-dynamic.yml has higher precedence than application.yml
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application.yml");
+        data.put("dynamicTestPlain", randomStr(8));
+        writeYmlData(data, CONFIG_LOCATION, "application.yml");
+        Thread.sleep(1000);
+        assertEquals(currentVal, testComponent.getPlainValue());
+        assertEquals(currentVal, env.getProperty("dynamic-test-plain"));
+
+        data.remove("dynamicTestPlain");
+        writeYmlData(data, CONFIG_LOCATION, "application.yml");
+        Thread.sleep(1000);
+        assertEquals(currentVal, testComponent.getPlainValue());
+    }
+
+    @Test
+    public void testMultiDocumentConfigFile() throws Exception {
+        assertEquals("a", env.getProperty("multi-doc.first"));
+        assertEquals("b", env.getProperty("multi-doc.second"));
+        PropertySource<?> firstDoc = findPropertySource("application-multi.yml", "(document #0)");
+        PropertySource<?> secondDoc = findPropertySource("application-multi.yml", "(document #1)");
+
+        String testVal = randomStr(8);
+        Path path = Paths.get(CONFIG_LOCATION, "application-multi.yml");
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        Files.write(path, content.replace("second: b", "second: " + testVal).getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(1000);
+
+        assertEquals("a", env.getProperty("multi-doc.first"));
+        assertEquals(testVal, env.getProperty("multi-doc.second"));
+        // unchanged document should not be replaced
+        assertSame(firstDoc, findPropertySource("application-multi.yml", "(document #0)"));
+        assertNotSame(secondDoc, findPropertySource("application-multi.yml", "(document #1)"));
+    }
+
+    private PropertySource<?> findPropertySource(String file, String document) {
+        for (PropertySource<?> ps : ((ConfigurableEnvironment) env).getPropertySources()) {
+            if (ps.getName().contains(file) && ps.getName().endsWith(document)) {
+                return ps;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testReloadMetrics() throws Exception {
+        // no reload yet, the age is unknown rather than healthy
+        assertTrue(Double.isNaN(new DynamicConfigMetrics().getLastSuccessfulReloadAge()));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+        assertTrue(registry.get("dynamic.config.binders.live").gauge().value() > 0);
+
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        data.put("dynamicTestPlain", randomStr(8));
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+
+        assertTrue(registry.get("dynamic.config.reload.parse").timer().count() > 0);
+        assertTrue(registry.get("dynamic.config.reload.bind").timer().count() > 0);
+        assertTrue(registry.get("dynamic.config.binders.updated").counter().count() > 0);
+        assertTrue(registry.get("dynamic.config.reload.last.success.age").gauge().value() < 5);
+    }
+
+    @Test
+    public void testTraceRecordAndReplay() throws Exception {
+        String testVal = randomStr(8);
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        data.put("traceTestKey", testVal);
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+
+        List<ConfigChangeTrace.Entry> entries = ConfigChangeTrace.read(Paths.get(TRACE_FILE));
+        ConfigChangeTrace.Entry recorded = entries.get(entries.size() - 1);
+        assertTrue(recorded.getPath().endsWith("application-dynamic.yml"));
+        assertEquals(testVal, recorded.getDiff().get("traceTestKey"));
+
+        String original = testComponent.getPlainValue();
+        ConfigChangeTraceReplayer replayer = new ConfigChangeTraceReplayer((ConfigurableEnvironment) env, handler);
+        ConfigChangeTrace.Entry replayed = new ConfigChangeTrace.Entry(recorded.getTimestamp() + 100, recorded.getPath(), 0, 0, 0,
+                Collections.singletonMap("dynamicTestPlain", "replayed"));
+        List<ReloadRecord> records = replayer.replay(Arrays.asList(recorded, replayed), 10);
+        assertEquals(2, records.size());
+        assertTrue(records.get(1).getUpdatedFields() > 0);
+        assertEquals("replayed", testComponent.getPlainValue());
+        assertEquals(testVal, env.getProperty("traceTestKey"));
+
+        // restore the original value
+        ConfigChangeTrace.Entry restore = new ConfigChangeTrace.Entry(recorded.getTimestamp() + 200, recorded.getPath(), 0, 0, 0,
+                Collections.singletonMap("dynamicTestPlain", original));
+        replayer.replay(Collections.singletonList(restore), 0);
+        replayer.reset();
+        assertEquals(original, testComponent.getPlainValue());
+        assertEquals(original, env.getProperty("dynamicTestPlain"));
+    }
+
+    @Test
+    public void testReplayResetRestoresCacheAndIndex() throws Exception {
+        ConfigurableEnvironment environment = (ConfigurableEnvironment) env;
+        CachedPropertySource cache = new CachedPropertySource(environment, 16, DynamicConfigPropertiesWatcher::isDiffedPropertySource);
+        environment.getPropertySources().addFirst(cache);
+        try {
+            ConfigChangeTraceReplayer replayer = new ConfigChangeTraceReplayer(environment, handler);
+            Map<String, Object> diff = new HashMap<>();
+            diff.put("replayOnlyKey", "replayed");
+            diff.put("replayRef", "${dynamicTestPlain}");
+            replayer.replay(Collections.singletonList(new ConfigChangeTrace.Entry(System.currentTimeMillis(), "replay", 0, 0, 0, diff)), 0);
+            assertEquals("replayed", env.getProperty("replayOnlyKey"));
+            assertTrue(DynamicConfigPropertiesWatcher.PLACEHOLDER_DEPENDENCY_INDEX
+                    .findDependents(Collections.singleton("dynamicTestPlain")).contains("replay-ref"));
+
+            replayer.reset();
+            assertNull(env.getProperty("replayOnlyKey"));
+            assertFalse(DynamicConfigPropertiesWatcher.PLACEHOLDER_DEPENDENCY_INDEX
+                    .findDependents(Collections.singleton("dynamicTestPlain")).contains("replay-ref"));
+        } finally {
+            environment.getPropertySources().remove(CachedPropertySource.CACHED_PROPERTY_SOURCE_NAME);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnConfigChangeListener() throws Exception {
+        TestConfigChangeListener listener = context.getBean(TestConfigChangeListener.class);
+        listener.getListenerTestChanges().clear();
+        listener.getAllChanges().clear();
+        String testVal = randomStr(8);
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        Map<String, Object> group = new HashMap<>();
+        group.put("a", testVal);
+        group.put("b", testVal);
+        Map<String, Object> listenerTest = new HashMap<>();
+        listenerTest.put("group", group);
+        listenerTest.put("group-other", testVal);
+        data.put("listenerTest", listenerTest);
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+
+        assertEquals(1, listener.getListenerTestChanges().size());
+        Map<String, Object> slice = listener.getListenerTestChanges().get(0);
+        assertEquals(2, slice.size());
+        assertEquals(testVal, slice.get("listenerTest.group.a"));
+        assertEquals(testVal, slice.get("listenerTest.group.b"));
+        assertFalse(listener.getAllChanges().isEmpty());
+        assertTrue(listener.getAllChanges().get(0).getDiff().containsKey("listenerTest.group-other"));
+
+        // unrelated changes are not dispatched to the prefix listener
+        data.put("listenerUnrelatedKey", testVal);
+        ((Map<String, Object>) data.get("listenerTest")).remove("group");
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+        assertEquals(2, listener.getListenerTestChanges().size());
+        Map<String, Object> removed = listener.getListenerTestChanges().get(1);
+        assertTrue(removed.containsKey("listenerTest.group.a"));
+        assertNull(removed.get("listenerTest.group.a"));
+        assertFalse(removed.containsKey("listenerUnrelatedKey"));
+    }
+
+    @Test
+    public void testConfigSnapshot() throws Exception {
+        DynamicConfigPropertiesWatcher watcher = context.getBean(DynamicConfigPropertiesWatcher.class);
+        List<Long> eventEpochs = new ArrayList<>();
+        ((ConfigurableApplicationContext) context).addApplicationListener((ApplicationListener<ConfigurationChangedEvent>) e -> eventEpochs.add(e.getEpoch()));
+        ConfigSnapshot pinned = watcher.getSnapshot();
+        assertEquals(env.getProperty("dynamicTestPlain"), pinned.getString("dynamic-test-plain"));
+        assertEquals(env.getProperty("dynamicTestPlain"), pinned.getString("dynamicTestPlain"));
+
+        String testVal = randomStr(8);
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        data.put("snapshotTestKey", testVal);
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+
+        ConfigSnapshot current = watcher.getSnapshot();
+        assertTrue(current.getEpoch() > pinned.getEpoch());
+        assertEquals(testVal, current.getString("snapshot-test-key"));
+        assertFalse(eventEpochs.isEmpty());
+        assertEquals(current.getEpoch(), eventEpochs.get(eventEpochs.size() - 1));
+        // pinned snapshot never changes
+        assertNotEquals(testVal, pinned.getString("snapshot-test-key"));
+        assertThrows(UnsupportedOperationException.class, () -> current.asMap().put("snapshot-test-key", "x"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRollback() throws Exception {
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        data.put("rollbackTestKey", "v1");
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+        Map<String, Object> file = ((List<Map<String, Object>>) endpoint.state().get("files")).stream()
+                .filter(f -> f.get("path").toString().endsWith("application-dynamic.yml")).findFirst().orElseThrow(AssertionError::new);
+        String path = file.get("path").toString();
+        int v1 = (Integer) file.get("version");
+        assertTrue(v1 > 0);
+
+        data.put("rollbackTestKey", "v2");
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+        assertEquals("v2", env.getProperty("rollbackTestKey"));
+
+        // invoked the way the web endpoint does, version from the URL, path from the request body
+        WebOperation rollback = new WebEndpointDiscoverer(context, new ConversionServiceParameterValueMapper(),
+                EndpointMediaTypes.DEFAULT, Collections.emptyList(), Collections.emptyList(), Collections.emptyList())
+                .getEndpoints().stream().filter(e -> "dynamicconfig".equals(e.getEndpointId().toString()))
+                .flatMap(e -> e.getOperations().stream())
+                .filter(o -> o.getRequestPredicate().getHttpMethod() == WebEndpointHttpMethod.POST
+                        && o.getRequestPredicate().getPath().startsWith("dynamicconfig/"))
+                .findFirst().orElseThrow(AssertionError::new);
+        assertEquals("dynamicconfig/{version}", rollback.getRequestPredicate().getPath());
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("version", String.valueOf(v1));
+        arguments.put("path", path);
+        ReloadRecord record = (ReloadRecord) rollback.invoke(new InvocationContext(SecurityContext.NONE, arguments));
+        assertEquals(ReloadRecord.Outcome.APPLIED, record.getOutcome());
+        assertEquals("v1", env.getProperty("rollbackTestKey"));
+        // the file itself is not touched
+        assertEquals("v2", readYmlData(CONFIG_LOCATION, "application-dynamic.yml").get("rollbackTestKey"));
+        ChangeHistory history = context.getBean(DynamicConfigPropertiesWatcher.class).getChangeHistory(path, 0);
+        assertEquals(v1 + 2, history.getCurrentVersion());
+        assertEquals("rollback", history.getVersions().get(history.getVersions().size() - 1).getOrigin());
+        assertThrows(IllegalArgumentException.class, () -> endpoint.rollback(history.getCurrentVersion(), path, 0));
+        assertThrows(IllegalArgumentException.class, () -> endpoint.rollback(0, "not-exists.yml", 0));
+
+        // a real file change still wins after the rollback
+        data.put("rollbackTestKey", "v3");
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+        assertEquals("v3", env.getProperty("rollbackTestKey"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEndpointState() throws Exception {
+        Map<String, Object> state = endpoint.state();
+        List<Map<String, Object>> targets = (List<Map<String, Object>>) state.get("targets");
+        assertFalse(targets.isEmpty());
+        assertNotNull(targets.get(0).get("watchMode"));
+        assertFalse(((List<?>) state.get("files")).isEmpty());
+        assertTrue((Integer) ((Map<String, Object>) state.get("binders")).get("valueFields") > 0);
+
+        Map<String, Object> data = readYmlData(CONFIG_LOCATION, "application-dynamic.yml");
+        data.put("dynamicTestPlain", randomStr(8));
+        writeYmlData(data, CONFIG_LOCATION, "application-dynamic.yml");
+        Thread.sleep(1000);
+
+        List<ReloadRecord> reloads = (List<ReloadRecord>) endpoint.state().get("recentReloads");
+        assertFalse(reloads.isEmpty());
+        assertEquals(ReloadRecord.Outcome.APPLIED, reloads.get(0).getOutcome());
+        // nothing changed since last reload, every document is skipped
+        List<ReloadRecord> rescanned = endpoint.rescan();
+        assertFalse(rescanned.isEmpty());
+        rescanned.forEach(r -> assertEquals(ReloadRecord.Outcome.NO_OP, r.getOutcome()));
+        // files of config tree targets are rescanned as well
+        assertTrue(rescanned.stream().anyMatch(r -> r.getPath().endsWith("module_a/xyz.yaml")));
+        assertTrue(rescanned.stream().anyMatch(r -> r.getPath().endsWith("moduleB/abc.yaml")));
+    }
+
     @Test
     public void testDynamicValuePlainTextWithKebabCase() throws Exception {
         String testVal = randomStr(8);
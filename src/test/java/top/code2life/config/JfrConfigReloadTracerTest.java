@@ -0,0 +1,50 @@
+package top.code2life.config;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class JfrConfigReloadTracerTest {
+
+    @Test
+    public void testStageEventsRecorded() throws Exception {
+        JfrConfigReloadTracer tracer = new JfrConfigReloadTracer();
+        // no recording, stages should not be timed
+        assertFalse(tracer.isEnabled());
+        Path dump = Files.createTempFile("dynamic-config", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("top.code2life.config.ConfigParsed");
+            recording.enable("top.code2life.config.DynamicFieldBound");
+            recording.disable("top.code2life.config.ConfigDiffComputed");
+            recording.start();
+            assertTrue(tracer.isEnabled());
+            tracer.parsed("/tmp/application.yml", 128, 2000);
+            tracer.fieldBound("my-prop.str", "testComponent", "str", 500);
+            // disabled in this recording
+            tracer.diffComputed("/tmp/application.yml", 1, 0, 100);
+            recording.stop();
+            assertFalse(tracer.isEnabled());
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.deleteIfExists(dump);
+        assertEquals(2, events.size());
+        RecordedEvent parsed = events.stream().filter(e -> e.getEventType().getName().endsWith("ConfigParsed")).findFirst().orElse(null);
+        assertNotNull(parsed);
+        assertEquals("/tmp/application.yml", parsed.getString("path"));
+        assertEquals(128, parsed.getLong("bytes"));
+        assertEquals(Duration.ofNanos(2000), parsed.getDuration("parseTime"));
+        assertTrue(events.stream().anyMatch(e -> e.hasField("fieldName") && "str".equals(e.getString("fieldName"))));
+    }
+}
@@ -0,0 +1,50 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class MultiDocumentReloadTest extends WatcherTestSupport {
+
+    @Test
+    public void testShiftedDocumentsAreNotApplied() throws IOException {
+        Path confFile = confDir.resolve("application.yml");
+        write(confFile, "doc:\n  first: a\n---\ndoc:\n  second: b\n---\nspring.config.activate.on-profile: inactive\ndoc:\n  second: inactive\n");
+        context = run(MultiDocumentApplication.class, "--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        Environment env = context.getEnvironment();
+        assertEquals("b", env.getProperty("doc.second"));
+
+        // a profile-gated document is inserted before the second one
+        write(confFile, "doc:\n  first: a2\n---\nspring.config.activate.on-profile: inactive\ndoc:\n  second: inactive\n---\ndoc:\n  second: b2\n");
+        awaitTrue(() -> "a2".equals(env.getProperty("doc.first")));
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals("b", env.getProperty("doc.second"));
+
+        // documents are in place again
+        write(confFile, "doc:\n  first: a3\n---\ndoc:\n  second: b3\n");
+        awaitTrue(() -> "a3".equals(env.getProperty("doc.first")) && "b3".equals(env.getProperty("doc.second")));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class MultiDocumentApplication {
+    }
+}
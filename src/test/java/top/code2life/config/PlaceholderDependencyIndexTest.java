@@ -0,0 +1,45 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class PlaceholderDependencyIndexTest {
+
+    @Test
+    public void testEffectiveValueIsIndexed() {
+        Map<String, Object> high = new HashMap<>();
+        high.put("a.url", "${base.host}/x");
+        Map<String, Object> low = new HashMap<>();
+        low.put("a.url", "${other.host}");
+        low.put("base.host", "localhost");
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("low", low));
+        env.getPropertySources().addFirst(new MapPropertySource("high", high));
+        PlaceholderDependencyIndex index = new PlaceholderDependencyIndex();
+        index.rebuild(env.getPropertySources());
+        assertEquals(Collections.singleton("a.url"), index.findDependents(Collections.singleton("base.host")));
+        assertTrue(index.findDependents(Collections.singleton("other.host")).isEmpty());
+
+        // overridden value changed, the edge of the effective value is kept
+        low.put("a.url", "plain");
+        index.refresh(Collections.singleton("a.url"), env.getPropertySources());
+        assertEquals(Collections.singleton("a.url"), index.findDependents(Collections.singleton("base.host")));
+
+        // effective value removed, falls back to the lower precedence one
+        high.remove("a.url");
+        low.put("a.url", "${other.host}");
+        index.refresh(Collections.singleton("a.url"), env.getPropertySources());
+        assertTrue(index.findDependents(Collections.singleton("base.host")).isEmpty());
+        assertEquals(Collections.singleton("a.url"), index.findDependents(Collections.singleton("other.host")));
+    }
+}
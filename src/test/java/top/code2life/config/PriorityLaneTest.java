@@ -0,0 +1,143 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * Kill switch changes are bound on the priority lane while a large diff is still being processed
+ *
+ * @author Code2Life
+ **/
+public class PriorityLaneTest extends WatcherTestSupport {
+
+    private static final int BULK_KEYS = 5000;
+    private static final long MAX_KILL_SWITCH_LATENCY_MS = 1000;
+    private static final List<Class<?>> COMPONENTS = Arrays.asList(KillSwitches.class, OpsLimits.class, SlowBulkListener.class);
+
+    @Test
+    public void killSwitchBypassesBulkChange() throws Exception {
+        writeConfig("v0", false);
+        context = run(COMPONENTS, "--spring.config.location=" + confDir.toAbsolutePath() + "/",
+                "--" + DynamicConfigPropertiesWatcher.PRIORITY_PREFIXES_PROPERTY + "=ops.circuit");
+        KillSwitches switches = context.getBean(KillSwitches.class);
+        SlowBulkListener listener = context.getBean(SlowBulkListener.class);
+        assertFalse(switches.killSwitch);
+        assertFalse(switches.circuitOpen);
+
+        // a large diff is in flight, its listener is blocked
+        writeConfig("v1", false);
+        assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+        try {
+            long begin = System.nanoTime();
+            writeConfig("v1", true);
+            awaitTrue(() -> switches.killSwitch && switches.circuitOpen);
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            assertTrue(latencyMs <= MAX_KILL_SWITCH_LATENCY_MS, "kill switch latency: " + latencyMs + "ms");
+            assertFalse(listener.finished, "bulk change should still be in flight");
+        } finally {
+            listener.release.countDown();
+        }
+        awaitTrue(() -> listener.finished);
+        // the coalesced normal change doesn't override values bound on the priority lane
+        Thread.sleep(200);
+        assertTrue(switches.killSwitch);
+        assertTrue(switches.circuitOpen);
+    }
+
+    @Test
+    public void highPriorityPropertiesBypassBulkChange() throws Exception {
+        writeConfig("v0", false);
+        context = run(COMPONENTS, "--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        OpsLimits limits = context.getBean(OpsLimits.class);
+        SlowBulkListener listener = context.getBean(SlowBulkListener.class);
+        assertEquals(100, limits.getMaxQps());
+        assertEquals(1, limits.bindCount.get());
+
+        writeConfig("v1", false);
+        assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+        try {
+            writeConfig("v1", true);
+            awaitTrue(() -> limits.getMaxQps() == 0);
+            assertFalse(listener.finished, "bulk change should still be in flight");
+        } finally {
+            listener.release.countDown();
+        }
+        awaitTrue(() -> listener.finished);
+        Thread.sleep(200);
+        // rebound once on the priority lane, skipped by the normal lane
+        assertEquals(0, limits.getMaxQps());
+        assertEquals(2, limits.bindCount.get());
+    }
+
+    private void writeConfig(String bulkValue, boolean killSwitch) throws IOException {
+        StringBuilder sb = new StringBuilder(BULK_KEYS * 24);
+        for (int i = 0; i < BULK_KEYS; i++) {
+            sb.append("bulk.k").append(i).append('=').append(bulkValue).append('\n');
+        }
+        sb.append("ops.kill-switch=").append(killSwitch).append('\n');
+        sb.append("ops.circuit.open=").append(killSwitch).append('\n');
+        sb.append("ops.limits.max-qps=").append(killSwitch ? 0 : 100).append('\n');
+        Path tmp = confDir.resolve("application.properties.tmp");
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, confDir.resolve("application.properties"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @DynamicConfig
+    static class KillSwitches {
+
+        @DynamicConfig(highPriority = true)
+        @Value("${ops.kill-switch}")
+        volatile boolean killSwitch;
+
+        @Value("${ops.circuit.open}")
+        volatile boolean circuitOpen;
+    }
+
+    @DynamicConfig(highPriority = true)
+    @ConfigurationProperties(prefix = "ops.limits")
+    static class OpsLimits {
+
+        final AtomicInteger bindCount = new AtomicInteger();
+
+        private volatile int maxQps;
+
+        public int getMaxQps() {
+            return maxQps;
+        }
+
+        public void setMaxQps(int maxQps) {
+            this.maxQps = maxQps;
+            bindCount.incrementAndGet();
+        }
+    }
+
+    static class SlowBulkListener {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean finished;
+
+        @OnConfigChange(prefix = "bulk")
+        public void onBulkChanged(Map<String, Object> changes) throws InterruptedException {
+            started.countDown();
+            release.await(30, TimeUnit.SECONDS);
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import top.code2life.config.sample.TestApplication;
+import top.code2life.config.sample.TestComponent;
+import top.code2life.config.sample.TestConfigurationProperties;
+import top.code2life.config.sample.configtree.TestConfigTreeComponent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PROPERTY_SOURCE_META_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
+
+/**
+ * End-to-end propagation latency, from a config file write to the new value being visible in a bean.
+ * Excluded from the default test task, run it by: ./gradlew propagationBenchmark
+ * <p>
+ * System properties:
+ * propagation.iterations - changes of each file based scenario, default 50;
+ * propagation.symlink-iterations - changes of the ..data symlink swap scenario, default 6;
+ * propagation.interval-ms - pause between two changes, default 200.
+ * <p>
+ * HDR histograms are printed and written to build/reports/propagation/{scenario}.hgrm, values in milliseconds.
+ *
+ * @author Code2Life
+ **/
+@Slf4j
+@Tag("benchmark")
+public class PropagationLatencyBenchmark {
+
+    private static final int ITERATIONS = Integer.getInteger("propagation.iterations", 50);
+    private static final int SYMLINK_ITERATIONS = Integer.getInteger("propagation.symlink-iterations", 6);
+    private static final long INTERVAL_MS = Long.getLong("propagation.interval-ms", 200L);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final Path REPORT_DIR = Paths.get("build", "reports", "propagation");
+
+    private Path tempDir;
+    private ConfigurableApplicationContext context;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        // watch targets are static, resolved once per JVM, reset them for each booted context
+        WATCHABLE_TARGETS.clear();
+        PROPERTY_SOURCE_META_MAP.clear();
+        tempDir = Files.createTempDirectory("dynamic-config-propagation");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        WATCHABLE_TARGETS.clear();
+        PROPERTY_SOURCE_META_MAP.clear();
+        deleteRecursively(tempDir);
+    }
+
+    @Test
+    public void plainFile() throws Exception {
+        Path confDir = Files.createDirectories(tempDir.resolve("conf"));
+        writeConfig(confDir.resolve("application.yml"), "v0");
+        context = boot("--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        TestComponent component = context.getBean(TestComponent.class);
+        TestConfigurationProperties properties = context.getBean(TestConfigurationProperties.class);
+
+        Histogram valueHistogram = newHistogram();
+        Histogram propsHistogram = newHistogram();
+        for (int i = 1; i <= ITERATIONS; i++) {
+            String value = "v" + i;
+            long begin = System.nanoTime();
+            writeConfig(confDir.resolve("application.yml"), value);
+            recordLatency(valueHistogram, begin, component::getPlainValue, value);
+            recordLatency(propsHistogram, begin, properties::getStr, value);
+            Thread.sleep(INTERVAL_MS);
+        }
+        report("plain-file-value", valueHistogram);
+        report("plain-file-configuration-properties", propsHistogram);
+    }
+
+    @Test
+    public void configTreeImport() throws Exception {
+        Path confDir = Files.createDirectories(tempDir.resolve("conf"));
+        Path treeFile = Files.createDirectories(tempDir.resolve("tree").resolve("module_a")).resolve("xyz.yaml");
+        Files.write(confDir.resolve("application.yml"), "dummy: true\n".getBytes(StandardCharsets.UTF_8));
+        writeConfig(treeFile, "v0");
+        context = boot("--spring.config.location=" + confDir.toAbsolutePath() + "/",
+                "--spring.config.import=configtree:" + tempDir.resolve("tree").toAbsolutePath() + "/");
+        TestConfigTreeComponent component = context.getBean(TestConfigTreeComponent.class);
+
+        Histogram histogram = newHistogram();
+        for (int i = 1; i <= ITERATIONS; i++) {
+            String value = "v" + i;
+            long begin = System.nanoTime();
+            writeConfig(treeFile, value);
+            recordLatency(histogram, begin, component::getPlainValue, value);
+            Thread.sleep(INTERVAL_MS);
+        }
+        report("config-tree-value", histogram);
+    }
+
+    @Test
+    public void kubernetesSymlinkSwap() throws Exception {
+        // layout of a mounted ConfigMap: application.yml -> ..data/application.yml, ..data -> ..{version}
+        Path confDir = Files.createDirectories(tempDir.resolve("conf"));
+        Path dataLink = confDir.resolve("..data");
+        Path version = Files.createDirectories(confDir.resolve("..version_0"));
+        writeConfig(version.resolve("application.yml"), "v0");
+        Files.createSymbolicLink(dataLink, version.getFileName());
+        Files.createSymbolicLink(confDir.resolve("application.yml"), Paths.get("..data", "application.yml"));
+        context = boot("--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        TestComponent component = context.getBean(TestComponent.class);
+
+        Histogram histogram = newHistogram();
+        for (int i = 1; i <= SYMLINK_ITERATIONS; i++) {
+            String value = "v" + i;
+            Path nextVersion = Files.createDirectories(confDir.resolve("..version_" + i));
+            writeConfig(nextVersion.resolve("application.yml"), value);
+            long begin = System.nanoTime();
+            // atomic swap like kubelet does
+            Path tmpLink = Files.createSymbolicLink(confDir.resolve("..data_tmp"), nextVersion.getFileName());
+            Files.move(tmpLink, dataLink, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            recordLatency(histogram, begin, component::getPlainValue, value);
+            Thread.sleep(INTERVAL_MS);
+        }
+        report("symlink-swap-value", histogram);
+    }
+
+    private ConfigurableApplicationContext boot(String... args) {
+        return new SpringApplicationBuilder(TestApplication.class)
+                .properties("logging.level.top.code2life=warn")
+                .run(args);
+    }
+
+    private void writeConfig(Path file, String value) throws IOException {
+        String content = "dynamicTestPlain: " + value + "\nmyProp:\n  str: " + value + "\n";
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Histogram newHistogram() {
+        return new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+    }
+
+    private void recordLatency(Histogram histogram, long begin, Supplier<String> reader, String expected) {
+        while (!expected.equals(reader.get())) {
+            if (System.nanoTime() - begin > TIMEOUT_NANOS) {
+                throw new AssertionError("change not propagated in time, expected value: " + expected);
+            }
+            LockSupport.parkNanos(50_000);
+        }
+        histogram.recordValue(System.nanoTime() - begin);
+    }
+
+    private void report(String scenario, Histogram histogram) throws IOException {
+        assertTrue(histogram.getTotalCount() > 0);
+        log.warn("propagation latency of {}: count={}, p50={}ms, p99={}ms, max={}ms", scenario, histogram.getTotalCount(),
+                toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getMaxValue()));
+        Files.createDirectories(REPORT_DIR);
+        File reportFile = REPORT_DIR.resolve(scenario + ".hgrm").toFile();
+        try (PrintStream out = new PrintStream(reportFile, StandardCharsets.UTF_8.name())) {
+            histogram.outputPercentileDistribution(out, 1_000_000.0);
+        }
+        histogram.outputPercentileDistribution(System.out, 1_000_000.0);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    deleteRecursively(child);
+                } else {
+                    Files.delete(child);
+                }
+            }
+        }
+        Files.delete(dir);
+    }
+}
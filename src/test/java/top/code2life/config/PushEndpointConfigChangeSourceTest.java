@@ -0,0 +1,109 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class PushEndpointConfigChangeSourceTest extends WatcherTestSupport {
+
+    private Path confFile;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        confFile = confDir.resolve("application.properties");
+        Files.write(confFile, "push.value=file\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPatchOverLoopbackPort() throws IOException {
+        context = run("--" + PushEndpointConfigChangeSource.PUSH_PORT_PROPERTY + "=0");
+        Environment env = context.getEnvironment();
+        SocketAddress address = context.getBean(PushEndpointConfigChangeSource.class).getLocalAddress();
+        assertTrue(address instanceof InetSocketAddress);
+
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            List<String> replies = send(channel, "SET push.value=pushed", "SET push.extra = a=b ", "COMMIT");
+            assertEquals(3, replies.size());
+            assertTrue(replies.stream().allMatch("OK"::equals));
+            awaitTrue(() -> "pushed".equals(env.getProperty("push.value")));
+            assertEquals("a=b ", env.getProperty("push.extra"));
+
+            replies = send(channel, "UNSET push.value", "COMMIT", "BOGUS", "SET missing-value", "RELOAD /not-watched/application.yml");
+            assertEquals("OK", replies.get(1));
+            assertTrue(replies.get(2).startsWith("ERR unknown command"));
+            assertTrue(replies.get(3).startsWith("ERR"));
+            assertTrue(replies.get(4).startsWith("ERR config file is not under any watched location"));
+            awaitTrue(() -> "file".equals(env.getProperty("push.value")));
+        }
+    }
+
+    @Test
+    public void testReloadOverUnixDomainSocket() throws Exception {
+        Path socketFile = confDir.resolve("push.sock");
+        context = run("--" + PushEndpointConfigChangeSource.PUSH_SOCKET_PROPERTY + "=" + socketFile);
+        Environment env = context.getEnvironment();
+        SocketAddress address = context.getBean(PushEndpointConfigChangeSource.class).getLocalAddress();
+        Assumptions.assumeFalse(address instanceof InetSocketAddress, "Unix domain socket is not supported");
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(socketFile));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(confDir, ".push-*")) {
+            assertFalse(files.iterator().hasNext());
+        }
+
+        // rewritten with the same modified time, WatchService events won't reload it
+        FileTime modifiedTime = Files.getLastModifiedTime(confFile);
+        Files.write(confFile, "push.value=rewritten\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(confFile, modifiedTime);
+        ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+        try (SocketChannel channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix)) {
+            channel.connect(address);
+            assertEquals("OK", send(channel, "RELOAD " + confFile.toAbsolutePath()).get(0));
+            awaitTrue(() -> "rewritten".equals(env.getProperty("push.value")));
+        }
+        context.close();
+        context = null;
+        assertFalse(Files.exists(socketFile));
+    }
+
+    private ConfigurableApplicationContext run(String endpointArg) {
+        return run("--spring.config.location=" + confDir.toAbsolutePath() + "/", endpointArg);
+    }
+
+    private List<String> send(SocketChannel channel, String... lines) throws IOException {
+        Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.flush();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        List<String> replies = new ArrayList<>(lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            replies.add(reader.readLine());
+        }
+        return replies;
+    }
+}
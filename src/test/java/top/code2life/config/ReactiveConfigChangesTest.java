@@ -0,0 +1,91 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class ReactiveConfigChangesTest {
+
+    private final Map<String, Object> props = new HashMap<>();
+    private final StandardEnvironment env = new StandardEnvironment();
+    private final ReactiveConfigChanges changes = new ReactiveConfigChanges(env);
+
+    ReactiveConfigChangesTest() {
+        props.put("payments.limits.max", "100");
+        env.getPropertySources().addFirst(new MapPropertySource("test", props));
+    }
+
+    @Test
+    public void testPrefixFilterAndTypedValues() {
+        List<ConfigChange> received = new CopyOnWriteArrayList<>();
+        List<Integer> values = new CopyOnWriteArrayList<>();
+        Disposable prefixSubscription = changes.changes("payments.limits").subscribe(received::add);
+        Disposable valueSubscription = changes.values("payments.limits.max", Integer.class).subscribe(values::add);
+        assertEquals(Collections.singletonList(100), values);
+        assertEquals(100, changes.value("payments.limits.max", Integer.class).block());
+
+        change("payments.limits.max", "200");
+        change("payments.limits-other", "x");
+        change("payments.limits.min", "1");
+        assertEquals(2, received.size());
+        assertEquals("payments.limits.max", received.get(0).getKey());
+        assertEquals("200", received.get(0).getValue());
+        assertEquals("payments.limits.min", received.get(1).getKey());
+        assertEquals(Arrays.asList(100, 200), values);
+
+        // deletion is emitted as a change, but not as a typed value
+        change("payments.limits.max", null);
+        assertEquals(3, received.size());
+        assertNull(received.get(2).getValue());
+        assertEquals(Arrays.asList(100, 200), values);
+        prefixSubscription.dispose();
+        valueSubscription.dispose();
+    }
+
+    @Test
+    public void testSlowSubscriberKeepsLatest() {
+        List<Integer> received = new ArrayList<>();
+        BaseSubscriber<Integer> slow = new BaseSubscriber<Integer>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(Integer value) {
+                received.add(value);
+            }
+        };
+        changes.values("payments.limits.max", Integer.class).subscribe(slow);
+        assertEquals(Collections.singletonList(100), received);
+        // no demand, the emitting thread is not blocked and pending changes are not queued
+        for (int i = 1; i <= 1000; i++) {
+            change("payments.limits.max", String.valueOf(100 + i));
+        }
+        slow.request(5);
+        assertEquals(Arrays.asList(100, 1100), received);
+        slow.dispose();
+    }
+
+    private void change(String key, Object value) {
+        if (value == null) {
+            props.remove(key);
+        } else {
+            props.put(key, value);
+        }
+        Map<String, Object> diff = new HashMap<>(2);
+        diff.put(key, value);
+        changes.onConfigurationChanged(new ConfigurationChangedEvent("test.yml", null, null, diff));
+    }
+}
@@ -0,0 +1,57 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class ReloadStageTest {
+
+    @Test
+    public void testLatestWinsWhileHandlerIsSlow() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+        AtomicInteger superseded = new AtomicInteger();
+        ReloadStage<Integer> stage = new ReloadStage<>("reload-stage-test", (older, newer) -> newer, older -> superseded.incrementAndGet(), item -> {
+            if (item == 0) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            handled.add(item);
+        });
+        try {
+            stage.offer("a.yml", 0);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // the handler is blocked, producers are not
+            long begin = System.nanoTime();
+            for (int i = 1; i <= 100; i++) {
+                stage.offer("a.yml", i);
+            }
+            stage.offer("b.yml", 1000);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+            release.countDown();
+            stage.awaitIdle(5000);
+
+            assertEquals(3, handled.size());
+            assertEquals(0, handled.get(0));
+            assertEquals(100, handled.get(1));
+            assertEquals(1000, handled.get(2));
+            assertEquals(99, superseded.get());
+        } finally {
+            stage.shutdown();
+        }
+    }
+}
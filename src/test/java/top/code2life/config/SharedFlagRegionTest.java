@@ -0,0 +1,167 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.TestUtils.awaitTrue;
+
+/**
+ * @author Code2Life
+ **/
+public class SharedFlagRegionTest extends WatcherTestSupport {
+
+    private Path flagFile;
+
+    @BeforeEach
+    public void setup() {
+        flagFile = confDir.resolve("flags");
+    }
+
+    @Test
+    public void testReadWriteAcrossMappings() throws IOException {
+        try (SharedFlagRegion writer = SharedFlagRegion.open(flagFile, 8);
+             SharedFlagRegion reader = SharedFlagRegion.open(flagFile, 1)) {
+            assertEquals(8, reader.getSlotCount());
+            assertEquals(-1, reader.slotOf("ops.kill-switch"));
+            SharedFlagRegion.Flag killSwitch = reader.flag("ops.kill-switch");
+            assertFalse(killSwitch.getBoolean(false));
+
+            writer.setBoolean("ops.kill-switch", true);
+            writer.setLong("ops.rateLimit", 200L);
+            writer.setDouble("ops.sample-ratio", 0.25);
+            assertTrue(killSwitch.getBoolean(false));
+            assertEquals(200L, reader.getLong("ops.rate-limit", 0L));
+            assertEquals(200L, reader.getLong("ops.rateLimit", 0L));
+            assertEquals(0.25, reader.getDouble("ops.sample-ratio", 0.0));
+            // type mismatch falls back to the default value
+            assertEquals(7L, reader.getLong("ops.sample-ratio", 7L));
+            assertEquals(3, reader.getValues().size());
+
+            long seq = reader.sequence(reader.slotOf("ops.rate-limit"));
+            writer.remove("ops.rate-limit");
+            assertEquals(seq + 2, reader.sequence(reader.slotOf("ops.rate-limit")));
+            assertNull(reader.getValue("ops.rate-limit"));
+            assertEquals(2, reader.getValues().size());
+
+            // an absent name is resolved once, the flag written later by another mapping is still found
+            assertNull(reader.find("ops.maxConn"));
+            assertNull(reader.getValue("ops.maxConn"));
+            writer.setLong("ops.max-conn", 8L);
+            assertEquals(8L, reader.getValue("ops.maxConn"));
+            assertEquals(8L, reader.find("ops.maxConn").getValue());
+        }
+        byte[] notFlagFile = "a=b".getBytes(StandardCharsets.UTF_8);
+        Files.write(flagFile, notFlagFile);
+        assertThrows(IOException.class, () -> SharedFlagRegion.open(flagFile, 8));
+    }
+
+    @Test
+    public void testReadersNeverSeeTornValues() throws Exception {
+        try (SharedFlagRegion writer = SharedFlagRegion.open(flagFile, 4);
+             SharedFlagRegion reader = SharedFlagRegion.open(flagFile, 4)) {
+            writer.setLong("counter", 0L);
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread writerThread = new Thread(() -> {
+                long i = 0;
+                while (running.get()) {
+                    // alternate types, a torn read would mix the type of one write with bits of another
+                    if ((++i & 1L) == 0) {
+                        writer.setLong("counter", i);
+                    } else {
+                        writer.setDouble("counter", -1.5);
+                    }
+                }
+            });
+            writerThread.start();
+            try {
+                int slot = reader.slotOf("counter");
+                for (int i = 0; i < 200_000; i++) {
+                    Object value = reader.readValue(slot);
+                    if (value instanceof Long) {
+                        assertEquals(0L, ((Long) value) & 1L);
+                    } else {
+                        assertEquals(-1.5, (Double) value);
+                    }
+                }
+            } finally {
+                running.set(false);
+                writerThread.join();
+            }
+        }
+    }
+
+    @Test
+    public void testSlotOfCrashedWriterReadsAsUnset() throws IOException {
+        try (SharedFlagRegion region = SharedFlagRegion.open(flagFile, 4);
+             FileChannel channel = FileChannel.open(flagFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            region.setLong("ops.limit", 5L);
+            int slot = region.slotOf("ops.limit");
+            // a writer crashed after making the sequence odd
+            MappedByteBuffer raw = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int seqOffset = SharedFlagRegion.HEADER_SIZE + slot * SharedFlagRegion.SLOT_SIZE;
+            raw.putLong(seqOffset, raw.getLong(seqOffset) + 1);
+
+            assertNull(region.getValue("ops.limit"));
+            assertEquals(7L, region.getLong("ops.limit", 7L));
+            assertFalse(region.getValues().containsKey("ops.limit"));
+
+            assertTrue(region.repair("ops.limit"));
+            assertFalse(region.repair("ops.limit"));
+            assertNull(region.getValue("ops.limit"));
+            region.setLong("ops.limit", 6L);
+            assertEquals(6L, region.getValue("ops.limit"));
+
+            // writing a stuck slot repairs it as well
+            raw.putLong(seqOffset, raw.getLong(seqOffset) + 1);
+            assertNull(region.getValue("ops.limit"));
+            region.setLong("ops.limit", 8L);
+            assertEquals(0L, region.sequence(slot) & 1L);
+            assertEquals(8L, region.getValue("ops.limit"));
+        }
+    }
+
+    @Test
+    public void testFlagChangesArePublished() throws IOException {
+        Files.write(confDir.resolve("application.properties"), "ops.kill-switch=false\nops.threshold=${ops.limit:1}\n".getBytes(StandardCharsets.UTF_8));
+        context = run(Collections.singletonList(TestUtils.ChangeCollector.class), "--spring.config.location=" + confDir.toAbsolutePath() + "/",
+                "--" + SharedFlagWatcher.SHARED_FLAGS_FILE_PROPERTY + "=" + flagFile.toAbsolutePath(),
+                "--" + SharedFlagWatcher.SHARED_FLAGS_SLOTS_PROPERTY + "=16");
+        TestUtils.ChangeCollector collector = context.getBean(TestUtils.ChangeCollector.class);
+        FeatureGate featureGate = context.getBean(FeatureGate.class);
+        DynamicConfigPropertiesWatcher watcher = context.getBean(DynamicConfigPropertiesWatcher.class);
+        assertFalse(featureGate.isFeatureEnabled("ops.kill-switch"));
+
+        // another process writes the flag file
+        try (SharedFlagRegion region = SharedFlagRegion.open(flagFile, 16)) {
+            region.setBoolean("ops.kill-switch", true);
+            region.setLong("ops.limit", 5L);
+            // the Environment and FeatureGate read the mapped memory, no need to wait for the poller
+            assertTrue(featureGate.isFeatureEnabled("ops.kill-switch"));
+            assertEquals("5", context.getEnvironment().getProperty("ops.limit"));
+            awaitTrue(() -> collector.events.stream().anyMatch(e -> e.getDiff().containsKey("ops.limit")));
+            // keys referencing the flag by placeholders are published as well
+            awaitTrue(() -> "5".equals(watcher.getSnapshot().get("ops.threshold")));
+            assertEquals("true", watcher.getSnapshot().get("ops.kill-switch"));
+
+            region.remove("ops.kill-switch");
+            awaitTrue(() -> "false".equals(watcher.getSnapshot().get("ops.kill-switch")));
+        }
+        ConfigurationChangedEvent event = collector.events.get(0);
+        assertEquals(flagFile.toString(), event.getPath());
+        assertTrue(event.getEpoch() > 0);
+        // delivered through the apply and notify stages like other changes
+        assertNotNull(event.getReloadRecord());
+        assertEquals(ReloadRecord.Outcome.APPLIED, event.getReloadRecord().getOutcome());
+    }
+}
@@ -0,0 +1,297 @@
+package top.code2life.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_CONFIG_PROPS_BINDER_MAP;
+import static top.code2life.config.DynamicConfigBeanPostProcessor.DYNAMIC_FIELD_BINDER_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PROPERTY_SOURCE_META_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
+
+/**
+ * Soak and scale suite: a large synthetic config file, hundreds of dynamic beans and ConfigurationProperties prefixes,
+ * changed at a sustained rate, asserting bounded heap growth, thread count, binder count and reload latency.
+ * Excluded from the default test task, run it by: ./gradlew soakTest
+ * <p>
+ * System properties:
+ * soak.keys - number of synthetic keys, default 10000;
+ * soak.duration-seconds - how long to keep changing the config, default 120;
+ * soak.interval-ms - pause between two changes, default 200;
+ * soak.max-p99-ms - p99 latency limit from file write to bean updated, default 1000;
+ * soak.max-heap-growth-mb - heap growth limit after full GC, default 64.
+ *
+ * @author Code2Life
+ **/
+@Slf4j
+@Tag("soak")
+public class SoakScaleTest {
+
+    private static final int KEYS = Integer.getInteger("soak.keys", 10000);
+    private static final int DYNAMIC_BEANS = 500;
+    private static final int PROPS_PREFIXES = 200;
+    private static final int VALUE_KEYS = 10;
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("soak.duration-seconds", 120L));
+    private static final long INTERVAL_MS = Long.getLong("soak.interval-ms", 200L);
+    private static final long MAX_P99_MS = Long.getLong("soak.max-p99-ms", 1000L);
+    private static final long MAX_HEAP_GROWTH_MB = Long.getLong("soak.max-heap-growth-mb", 64L);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    private final Random random = new Random(42);
+    private final String[] propsNames = new String[PROPS_PREFIXES];
+    private Path confDir;
+    private ConfigurableApplicationContext context;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        for (int i = 0; i < PROPS_PREFIXES; i++) {
+            propsNames[i] = "name-" + i;
+        }
+        WATCHABLE_TARGETS.clear();
+        PROPERTY_SOURCE_META_MAP.clear();
+        confDir = Files.createTempDirectory("dynamic-config-soak");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (context != null && context.isActive()) {
+            context.close();
+        }
+        WATCHABLE_TARGETS.clear();
+        PROPERTY_SOURCE_META_MAP.clear();
+        Files.deleteIfExists(confDir.resolve("application.properties"));
+        Files.deleteIfExists(confDir);
+    }
+
+    @Test
+    public void sustainedChangesOnLargeConfig() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int threadsBeforeBoot = threads.getThreadCount();
+
+        int version = 0;
+        writeConfig(version, -1);
+        context = new SpringApplicationBuilder(SoakApplication.class)
+                .initializers(ctx -> registerDynamicBeans((GenericApplicationContext) ctx))
+                .properties("logging.level.top.code2life=warn")
+                .run("--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        SoakValueBean firstBean = context.getBean("soakBean0", SoakValueBean.class);
+        SoakValueBean lastBean = context.getBean("soakBean" + (DYNAMIC_BEANS - 1), SoakValueBean.class);
+        List<SoakProperties> propsBeans = new ArrayList<>(PROPS_PREFIXES);
+        for (int i = 0; i < PROPS_PREFIXES; i++) {
+            SoakProperties bean = context.getBean("soakProps" + i, SoakProperties.class);
+            assertEquals(propsNames[i], bean.getName());
+            propsBeans.add(bean);
+        }
+        assertEquals(PROPS_PREFIXES, DYNAMIC_CONFIG_PROPS_BINDER_MAP.size());
+
+        // warm up before taking baselines
+        for (int i = 0; i < 5; i++) {
+            version++;
+            writeAndAwait(version, firstBean, lastBean, propsBeans, null);
+        }
+        int bindersBaseline = countFieldBinders();
+        int threadsBaseline = threads.getThreadCount();
+        long heapBaseline = usedHeapAfterGc(memory);
+
+        Histogram histogram = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+        long begin = System.nanoTime();
+        while (System.nanoTime() - begin < DURATION_NANOS) {
+            version++;
+            writeAndAwait(version, firstBean, lastBean, propsBeans, histogram);
+            Thread.sleep(INTERVAL_MS);
+        }
+
+        long heapGrowthMb = (usedHeapAfterGc(memory) - heapBaseline) / 1024 / 1024;
+        long p99Ms = TimeUnit.NANOSECONDS.toMillis(histogram.getValueAtPercentile(99));
+        log.warn("soak finished: keys={}, changes={}, p50={}ms, p99={}ms, max={}ms, heap growth={}MB, threads={}/{}",
+                KEYS, histogram.getTotalCount(), TimeUnit.NANOSECONDS.toMillis(histogram.getValueAtPercentile(50)), p99Ms,
+                TimeUnit.NANOSECONDS.toMillis(histogram.getMaxValue()), heapGrowthMb, threads.getThreadCount(), threadsBaseline);
+        assertEquals(bindersBaseline, countFieldBinders(), "binder lists should not grow");
+        assertTrue(threads.getThreadCount() <= threadsBaseline + 2, "thread count should be bounded");
+        assertTrue(heapGrowthMb <= MAX_HEAP_GROWTH_MB, "heap growth should be bounded");
+        assertTrue(p99Ms <= MAX_P99_MS, "p99 reload latency should be bounded");
+        assertEquals(PROPS_PREFIXES, DYNAMIC_CONFIG_PROPS_BINDER_MAP.size(), "props binders should not grow");
+        for (int i = 0; i < PROPS_PREFIXES; i++) {
+            assertEquals(propsNames[i], propsBeans.get(i).getName(), "props bean should be rebound to the latest value");
+        }
+
+        context.close();
+        Thread.sleep(500);
+        assertTrue(threads.getThreadCount() <= threadsBeforeBoot + 2, "watcher threads should be stopped after context closed");
+    }
+
+    private void writeAndAwait(int version, SoakValueBean firstBean, SoakValueBean lastBean, List<SoakProperties> propsBeans, Histogram histogram) throws IOException {
+        int changedKey = random.nextInt(VALUE_KEYS);
+        String expected = "v" + version;
+        // every prefix is changed, the binding origins Spring Boot tracks per bound property keep
+        // the property source of the last rebind reachable, a prefix not rebound would pin an old version
+        Arrays.fill(propsNames, expected);
+        long begin = System.nanoTime();
+        writeConfig(version, changedKey);
+        while (!expected.equals(firstBean.getValue(changedKey)) || !expected.equals(lastBean.getValue(changedKey))
+                || !propsBeans.stream().allMatch(bean -> expected.equals(bean.getName()))) {
+            if (System.nanoTime() - begin > TIMEOUT_NANOS) {
+                fail("change not propagated in time, version: " + version);
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        if (histogram != null) {
+            histogram.recordValue(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Generate properties file: synthetic bulk keys partially changed each version,
+     * one changed key bound to all dynamic beans, and changes under all ConfigurationProperties prefixes
+     */
+    private void writeConfig(int version, int changedValueKey) throws IOException {
+        StringBuilder sb = new StringBuilder(KEYS * 40);
+        for (int i = 0; i < KEYS; i++) {
+            sb.append("soak.bulk.module-").append(i % 100).append(".key-").append(i).append('=')
+                    .append(i % 1000 == version % 1000 ? "changed-" + version : "value-" + i).append('\n');
+        }
+        for (int i = 0; i < VALUE_KEYS; i++) {
+            sb.append("soak.values.k").append(i).append('=').append(i == changedValueKey ? "v" + version : "initial").append('\n');
+        }
+        for (int i = 0; i < PROPS_PREFIXES; i++) {
+            sb.append("soak.props-").append(i).append(".name=").append(propsNames[i]).append('\n');
+        }
+        Path tmp = confDir.resolve("application.properties.tmp");
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, confDir.resolve("application.properties"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void registerDynamicBeans(GenericApplicationContext ctx) {
+        for (int i = 0; i < DYNAMIC_BEANS; i++) {
+            ctx.registerBean("soakBean" + i, SoakValueBean.class);
+        }
+        // distinct prefixes can only come from distinct classes, so they are generated,
+        // then bound and collected by the same post processors as any other @ConfigurationProperties bean
+        SoakPropertiesClassLoader classLoader = new SoakPropertiesClassLoader(SoakProperties.class.getClassLoader());
+        for (int i = 0; i < PROPS_PREFIXES; i++) {
+            ctx.registerBean("soakProps" + i, classLoader.define("top.code2life.config.soak.SoakProperties" + i, "soak.props-" + i));
+        }
+    }
+
+    private int countFieldBinders() {
+        return DYNAMIC_FIELD_BINDER_MAP.values().stream().mapToInt(List::size).sum();
+    }
+
+    private long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class SoakApplication {
+    }
+
+    @DynamicConfig
+    public static class SoakValueBean {
+
+        @Value("${soak.values.k0}")
+        private String k0;
+        @Value("${soak.values.k1}")
+        private String k1;
+        @Value("${soak.values.k2}")
+        private String k2;
+        @Value("${soak.values.k3}")
+        private String k3;
+        @Value("${soak.values.k4}")
+        private String k4;
+        @Value("${soak.values.k5}")
+        private String k5;
+        @Value("${soak.values.k6}")
+        private String k6;
+        @Value("${soak.values.k7}")
+        private String k7;
+        @Value("${soak.values.k8}")
+        private String k8;
+        @Value("${soak.values.k9}")
+        private String k9;
+
+        String getValue(int index) {
+            String[] values = {k0, k1, k2, k3, k4, k5, k6, k7, k8, k9};
+            return values[index];
+        }
+    }
+
+    /**
+     * Base of generated classes, each one is annotated with {@literal @}DynamicConfig and its own prefix
+     */
+    public static class SoakProperties {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    static class SoakPropertiesClassLoader extends ClassLoader {
+
+        private static final String BASE_CLASS = Type.getInternalName(SoakProperties.class);
+
+        SoakPropertiesClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @SuppressWarnings("unchecked")
+        Class<? extends SoakProperties> define(String className, String prefix) {
+            ClassWriter writer = new ClassWriter(0);
+            writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className.replace('.', '/'), null, BASE_CLASS, null);
+            writer.visitAnnotation(Type.getDescriptor(DynamicConfig.class), true).visitEnd();
+            AnnotationVisitor annotation = writer.visitAnnotation(Type.getDescriptor(ConfigurationProperties.class), true);
+            annotation.visit("prefix", prefix);
+            annotation.visitEnd();
+            MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            constructor.visitCode();
+            constructor.visitVarInsn(Opcodes.ALOAD, 0);
+            constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, BASE_CLASS, "<init>", "()V", false);
+            constructor.visitInsn(Opcodes.RETURN);
+            constructor.visitMaxs(1, 1);
+            constructor.visitEnd();
+            writer.visitEnd();
+            byte[] bytes = writer.toByteArray();
+            return (Class<? extends SoakProperties>) defineClass(className, bytes, 0, bytes.length);
+        }
+    }
+}
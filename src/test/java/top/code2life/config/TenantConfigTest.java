@@ -0,0 +1,91 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Code2Life
+ **/
+public class TenantConfigTest extends WatcherTestSupport {
+
+    @Test
+    public void testTenantOverlay() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("rate-limit", "100");
+        props.put("tenants.acme.rateLimit", "200");
+        props.put("tenants.acme.region", "${region:eu}");
+        StandardEnvironment env = createEnv(props);
+        TenantConfig tenantConfig = new TenantConfig(env);
+
+        assertEquals(200, tenantConfig.get("acme", "rate-limit", Integer.class));
+        assertEquals(100, tenantConfig.get("other", "rate-limit", Integer.class));
+        assertEquals("eu", tenantConfig.get("acme", "region", String.class));
+        assertNull(tenantConfig.get("other", "region", String.class));
+        assertEquals("us", tenantConfig.get("other", "region", String.class, "us"));
+        assertThrows(UnsupportedOperationException.class, () -> tenantConfig.getOverlay("acme").put("k", "v"));
+    }
+
+    @Test
+    public void testRebuildChangedTenantsOnly() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("tenants.acme.rate-limit", "200");
+        props.put("tenants.beta.rate-limit", "300");
+        StandardEnvironment env = createEnv(props);
+        TenantConfig tenantConfig = new TenantConfig(env);
+        Map<String, Object> acmeOverlay = tenantConfig.getOverlay("acme");
+        Map<String, Object> betaOverlay = tenantConfig.getOverlay("beta");
+
+        props.put("tenants.acme.rate-limit", "201");
+        props.put("tenants.beta.rate-limit", "301");
+        tenantConfig.handleEvent(new ConfigurationChangedEvent("test", null, null,
+                Collections.singletonMap("tenants.acme.rate-limit", "201")));
+
+        assertNotSame(acmeOverlay, tenantConfig.getOverlay("acme"));
+        assertSame(betaOverlay, tenantConfig.getOverlay("beta"));
+        assertEquals(201, tenantConfig.get("acme", "rate-limit", Integer.class));
+        assertEquals(300, tenantConfig.get("beta", "rate-limit", Integer.class));
+    }
+
+    @Test
+    public void testNoConflictWithApplicationBeanNames() throws IOException {
+        Files.write(confDir.resolve("application.properties"), "tenants.acme.rate-limit=200\n".getBytes(StandardCharsets.UTF_8));
+        context = run(TenantApplication.class, "--spring.config.location=" + confDir.toAbsolutePath() + "/");
+        assertEquals("application bean", context.getBean("tenantConfig"));
+        assertEquals(200, context.getBean(TenantConfig.class).get("acme", "rate-limit", Integer.class));
+        context.close();
+
+        TestUtils.clearWatcherState();
+        context = run(TenantApplication.class, "--spring.config.location=" + confDir.toAbsolutePath() + "/",
+                "--" + TenantConfig.TENANT_ENABLED_PROPERTY + "=false");
+        assertTrue(context.getBeansOfType(TenantConfig.class).isEmpty());
+    }
+
+    private StandardEnvironment createEnv(Map<String, Object> props) {
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", props));
+        return env;
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class TenantApplication {
+
+        @Bean
+        String tenantConfig() {
+            return "application bean";
+        }
+    }
+}
@@ -3,8 +3,22 @@ package top.code2life.config;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.fail;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.PROPERTY_SOURCE_META_MAP;
+import static top.code2life.config.DynamicConfigPropertiesWatcher.WATCHABLE_TARGETS;
 
 /**
  * @author Code2Life
@@ -40,4 +54,49 @@ public class TestUtils {
     public static Double randomDouble() {
         return RANDOM.nextDouble();
     }
+
+    /**
+     * Poll the condition until it's true, fail after 10 seconds
+     */
+    public static void awaitTrue(BooleanSupplier condition) {
+        long begin = System.nanoTime();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - begin > TimeUnit.SECONDS.toNanos(10)) {
+                fail("condition not met in time");
+            }
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * Watch targets and property source metas are static, resolved once per JVM, reset them for each booted context
+     */
+    public static void clearWatcherState() {
+        WATCHABLE_TARGETS.clear();
+        PROPERTY_SOURCE_META_MAP.clear();
+    }
+
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Collects every ConfigurationChangedEvent, register it as a bean of the tested application
+     */
+    public static class ChangeCollector {
+
+        final List<ConfigurationChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @OnConfigChange
+        public void onChange(ConfigurationChangedEvent event) {
+            events.add(event);
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package top.code2life.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base of tests booting applications against a temporary config directory,
+ * the static state of the watcher is cleared around each test
+ *
+ * @author Code2Life
+ **/
+abstract class WatcherTestSupport {
+
+    protected Path confDir;
+    protected ConfigurableApplicationContext context;
+
+    @BeforeEach
+    public void setupWatcherState() throws IOException {
+        TestUtils.clearWatcherState();
+        confDir = Files.createTempDirectory("dynamic-config-" + getClass().getSimpleName());
+    }
+
+    @AfterEach
+    public void tearDownWatcherState() throws IOException {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+        TestUtils.clearWatcherState();
+        TestUtils.deleteRecursively(confDir);
+    }
+
+    protected ConfigurableApplicationContext run(String... args) {
+        return run(Collections.emptyList(), args);
+    }
+
+    /**
+     * Boot the auto-configured application with the given components registered as beans
+     */
+    protected ConfigurableApplicationContext run(List<Class<?>> components, String... args) {
+        return builder(components).run(args);
+    }
+
+    protected SpringApplicationBuilder builder(List<Class<?>> components) {
+        List<Class<?>> sources = new ArrayList<>(components.size() + 1);
+        sources.add(WatcherTestApplication.class);
+        sources.addAll(components);
+        return new SpringApplicationBuilder(sources.toArray(new Class<?>[0]))
+                .properties("logging.level.top.code2life=warn");
+    }
+
+    protected ConfigurableApplicationContext run(Class<?> application, String... args) {
+        return new SpringApplicationBuilder(application)
+                .properties("logging.level.top.code2life=warn")
+                .run(args);
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class WatcherTestApplication {
+    }
+}
@@ -18,6 +18,9 @@ public class TestComponent {
     @Value("${dynamic-test-plain:default}")
     private String plainValue;
 
+    @Value("${dynamic.derived-url:none}")
+    private String derivedUrl;
+
     @Value("#{@featureGate.convert('${dynamic-feature-conf:}')}")
     private Set<String> someBetaFeatureConfig;
 
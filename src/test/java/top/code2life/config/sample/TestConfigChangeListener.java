@@ -0,0 +1,32 @@
+package top.code2life.config.sample;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import top.code2life.config.ConfigurationChangedEvent;
+import top.code2life.config.OnConfigChange;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Code2Life
+ **/
+@Getter
+@Component
+public class TestConfigChangeListener {
+
+    private final List<Map<String, Object>> listenerTestChanges = new CopyOnWriteArrayList<>();
+
+    private final List<ConfigurationChangedEvent> allChanges = new CopyOnWriteArrayList<>();
+
+    @OnConfigChange(prefix = "listenerTest.group")
+    public void onGroupChanged(Map<String, Object> changes) {
+        listenerTestChanges.add(changes);
+    }
+
+    @OnConfigChange
+    public void onAnyChanged(ConfigurationChangedEvent event) {
+        allChanges.add(event);
+    }
+}